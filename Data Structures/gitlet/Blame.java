@@ -0,0 +1,149 @@
+package gitlet;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+/** The commit each line of a file comes from.
+ *  Blame walks first parents back from a commit, tracking where each line
+ *  not yet attributed sits in the version of the file being looked at.
+ *  Commits that leave the file's blob unchanged are passed over without
+ *  reading it; where the blob changes, the two versions are diffed once,
+ *  and the lines the newer one added are attributed to its commit. The
+ *  walk stops as soon as every line is attributed. The result for the
+ *  starting commit is stored in .gitlet/blame, so that blaming the file
+ *  again at that commit or a later one stops the walk there.
+ *  @author Erin Lee
+ */
+class Blame {
+
+    /** Folder of stored results. */
+    static final File BLAME_FOLDER = Utils.join(Gitlet.GITLET_FOLDER,
+            "blame");
+
+    /**
+     * The blame of the file FILENAME as of the commit HEAD, which must
+     * contain it.
+     */
+    Blame(Commit head, String fileName) {
+        _fileName = fileName;
+        _lines = LineDiff.lines(head.getFileHash(fileName));
+        _origins = stored(head);
+        if (_origins == null) {
+            _origins = new String[_lines.length];
+            walk(head);
+            store(head, _origins);
+        }
+    }
+
+    /**
+     * Attributes every line by walking back from COMMIT.
+     */
+    private void walk(Commit commit) {
+        int[] positions = new int[_lines.length];
+        List<Integer> pending = new ArrayList<>();
+        for (int i = 0; i < positions.length; i += 1) {
+            positions[i] = i;
+            pending.add(i);
+        }
+        String fileHash = commit.getFileHash(_fileName);
+        String[] lines = _lines;
+        while (!pending.isEmpty()) {
+            Commit parent = commit.getParent() == null ? null
+                    : Commit.load(commit.getParent());
+            String parentHash = parent == null ? null
+                    : parent.getFileHash(_fileName);
+            if (parentHash == null) {
+                for (int i : pending) {
+                    _origins[i] = commit.getHash();
+                }
+                return;
+            }
+            if (!parentHash.equals(fileHash)) {
+                String[] parentLines = LineDiff.lines(parentHash);
+                int[] matches = LineDiff.match(parentLines, lines);
+                List<Integer> stillPending = new ArrayList<>();
+                for (int i : pending) {
+                    positions[i] = matches[positions[i]];
+                    if (positions[i] < 0) {
+                        _origins[i] = commit.getHash();
+                    } else {
+                        stillPending.add(i);
+                    }
+                }
+                pending = stillPending;
+                lines = parentLines;
+                fileHash = parentHash;
+            }
+            String[] known = stored(parent);
+            if (known != null) {
+                for (int i : pending) {
+                    _origins[i] = known[positions[i]];
+                }
+                return;
+            }
+            commit = parent;
+        }
+    }
+
+    /**
+     * Returns the stored blame of the file as of COMMIT, or null if there
+     * is none.
+     */
+    private String[] stored(Commit commit) {
+        File file = resultFile(commit);
+        if (!Utils.exists(file)) {
+            return null;
+        }
+        String contents = Utils.readContentsAsString(file);
+        return contents.isEmpty() ? new String[0] : contents.split("\n");
+    }
+
+    /**
+     * Stores ORIGINS as the blame of the file as of COMMIT.
+     */
+    private void store(Commit commit, String[] origins) {
+        BLAME_FOLDER.mkdir();
+        StringBuilder contents = new StringBuilder();
+        for (String origin : origins) {
+            contents.append(origin).append('\n');
+        }
+        Utils.writeContents(resultFile(commit), contents.toString());
+    }
+
+    /**
+     * Returns the file holding the blame of the file as of COMMIT, named by
+     * the commit, the file name and the blob, so that it never goes stale.
+     */
+    private File resultFile(Commit commit) {
+        return Utils.join(BLAME_FOLDER, HashAlgorithm.objects().hash(
+                commit.getHash(), "\0", _fileName, "\0",
+                commit.getFileHash(_fileName)));
+    }
+
+    /**
+     * Returns a string with the lines of the file, each preceded by the
+     * abbreviated commit it comes from and its line number.
+     */
+    @Override
+    public String toString() {
+        StringBuilder result = new StringBuilder();
+        int width = Integer.toString(_lines.length).length();
+        for (int i = 0; i < _lines.length; i += 1) {
+            result.append(_origins[i], 0, Math.min(8, _origins[i].length()))
+                    .append(' ')
+                    .append(String.format("%" + width + "d", i + 1))
+                    .append(") ").append(_lines[i]).append('\n');
+        }
+        return result.toString();
+    }
+
+    /** Name of the blamed file. */
+    private final String _fileName;
+
+    /** Lines of the file. */
+    private final String[] _lines;
+
+    /** Hash of the commit each line comes from. */
+    private String[] _origins;
+}
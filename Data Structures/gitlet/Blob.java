@@ -2,36 +2,152 @@ package gitlet;
 
 import java.io.File;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.List;
 
 
 /** Blob class for Gitlet.
+ *  Large blobs are stored as a list of content-defined chunks (see
+ *  Chunker), each kept once in the chunks folder next to the objects
+ *  folder, so that near-identical large files share most of their storage.
+ *  Chunk files hold raw bytes, so the contents of a large blob are read as
+ *  buffers mapped from its chunks (getBuffers) and checked out by copying
+ *  chunk files into the target file (writeTo), never as one array.
+ *  Repositories made before blob hashes left the file name out hold blobs
+ *  named by legacyHash, the hash of the name and the contents. Those ids
+ *  stay valid: a working file matches a tracked legacy id if its name and
+ *  contents hash to it (see matches), and add keeps such an id rather
+ *  than storing the same contents again, so upgrading rewrites nothing.
  *  @author Erin Lee
  */
 public class Blob implements Serializable {
 
+    /** Version of the serialized form, that of the original class. */
+    private static final long serialVersionUID = 4483307088114493268L;
+
     /**
-     * A new blob in the current system with FILE.
+     * A new blob in the current system with the contents of FILE.
      */
     Blob(File file) {
-        _fileName = file.getName();
-        _fileContents = Utils.readContents(file);
-        _hash = Utils.sha1(_fileName, _fileContents);
+        this(Utils.readContents(file));
+    }
+
+    /**
+     * A new blob holding CONTENTS. The hash depends on the contents only, so
+     * identical files under different names share a single blob.
+     */
+    Blob(byte[] contents) {
+        _fileContents = contents;
+        _size = contents.length;
+        _hash = hashContents(contents);
+    }
+
+    /**
+     * A stored chunked blob with the given HASH, SIZE and CHUNKS.
+     */
+    private Blob(String hash, int size, String[] chunks) {
+        _hash = hash;
+        _size = size;
+        _chunks = chunks;
+    }
+
+    /**
+     * Returns the blob hash of CONTENTS without building a blob.
+     */
+    static String hashContents(byte[] contents) {
+        return HashAlgorithm.objects().hash(contents);
+    }
+
+    /**
+     * Returns the hash that a blob of the file FILENAME holding CONTENTS had
+     * before blob hashes left the file name out.
+     */
+    static String legacyHash(String fileName, byte[] contents) {
+        return Utils.sha1(fileName, contents);
+    }
+
+    /**
+     * Returns true if the blob HASH holds CONTENTS, as the file FILENAME if
+     * HASH is a legacy id.
+     */
+    static boolean matches(String hash, String fileName, byte[] contents) {
+        return hash.equals(hashContents(contents))
+                || hash.equals(legacyHash(fileName, contents));
     }
 
     /**
-     * Returns the string name of the file.
+     * Returns the chunks folder that goes with OBJECTFOLDER.
      */
-    String getFileName() {
-        return _fileName;
+    static File chunksFolder(File objectFolder) {
+        return Utils.join(objectFolder.getParentFile(), "chunks");
     }
 
     /**
-     * Returns the contents of the file in the blob.
+     * Returns the contents of the file in the blob, reassembling them from
+     * chunks if the blob is chunked.
      */
     byte[] getFileContents() {
+        if (_fileContents == null) {
+            byte[] contents = new byte[_size];
+            int offset = 0;
+            for (String chunk : _chunks) {
+                byte[] bytes = Utils.readContents(
+                        Utils.join(_chunksFolder, chunk));
+                System.arraycopy(bytes, 0, contents, offset, bytes.length);
+                offset += bytes.length;
+            }
+            _fileContents = contents;
+        }
         return _fileContents;
     }
 
+    /**
+     * Returns the contents of the file in the blob as read-only buffers, in
+     * order: the chunks of a chunked blob mapped from their files, or else
+     * the contents held in the blob.
+     */
+    ByteBuffer[] getBuffers() {
+        if (_chunks == null || _fileContents != null) {
+            return new ByteBuffer[] {
+                ByteBuffer.wrap(_fileContents).asReadOnlyBuffer()
+            };
+        }
+        ByteBuffer[] buffers = new ByteBuffer[_chunks.length];
+        for (int i = 0; i < _chunks.length; i += 1) {
+            buffers[i] = Utils.mapContents(Utils.join(_chunksFolder,
+                    _chunks[i]));
+        }
+        return buffers;
+    }
+
+    /**
+     * Replaces the contents of FILE with those of the blob. The chunks of a
+     * chunked blob are transferred from their files by the file system.
+     */
+    void writeTo(File file) {
+        if (_chunks == null || _fileContents != null) {
+            Utils.replaceContents(file, _fileContents);
+            return;
+        }
+        Utils.replaceContents(file, channel -> {
+            for (String chunk : _chunks) {
+                try (FileChannel in = FileChannel.open(Utils.join(
+                        _chunksFolder, chunk).toPath(),
+                        StandardOpenOption.READ)) {
+                    long size = in.size();
+                    long position = 0;
+                    while (position < size) {
+                        position += in.transferTo(position, size - position,
+                                channel);
+                    }
+                }
+            }
+        });
+    }
+
     /**
      * Returns the hash of the blob.
      */
@@ -39,25 +155,123 @@ public class Blob implements Serializable {
         return _hash;
     }
 
+    /**
+     * Returns the length of the contents in bytes.
+     */
+    int getSize() {
+        return _fileContents != null ? _fileContents.length : _size;
+    }
+
+    /**
+     * Returns the hashes of the chunks of this blob, none if not chunked.
+     */
+    String[] getChunks() {
+        return _chunks == null ? new String[0] : _chunks;
+    }
+
+    /**
+     * Returns true if this blob is stored as chunks.
+     */
+    boolean isChunked() {
+        return _chunks != null;
+    }
+
     /**
      * Saves the blob.
      */
     void save() {
-        Utils.writeObject(Utils.join(Gitlet.OBJS_FOLDER, _hash), this);
+        save(Gitlet.OBJS_FOLDER);
     }
 
     /**
-     * Saves the blob that corresponds to the given OBJECTFOLDER.
+     * Saves the blob that corresponds to the given OBJECTFOLDER. Large
+     * contents are split into chunks, and only chunks missing from the
+     * folder are written. A chunked blob loaded from another repository is
+     * copied chunk by chunk without being reassembled.
      */
     void save(File objectFolder) {
-        Utils.writeObject(Utils.join(objectFolder, _hash), this);
+        File file = Utils.join(objectFolder, _hash);
+        if (file.exists()) {
+            return;
+        }
+        File chunksFolder = chunksFolder(objectFolder);
+        if (_chunks != null) {
+            for (String chunk : _chunks) {
+                File chunkFile = Utils.join(chunksFolder, chunk);
+                if (!chunkFile.exists()) {
+                    chunksFolder.mkdir();
+                    Utils.writeContents(chunkFile, Utils.readContents(
+                            Utils.join(_chunksFolder, chunk)));
+                }
+            }
+            Utils.writeObject(file, new Blob(_hash, _size, _chunks));
+        } else if (Chunker.shouldChunk(_fileContents)) {
+            chunksFolder.mkdir();
+            List<Integer> ends = Chunker.boundaries(_fileContents);
+            String[] chunks = new String[ends.size()];
+            int start = 0;
+            for (int i = 0; i < chunks.length; i += 1) {
+                byte[] bytes = new byte[ends.get(i) - start];
+                System.arraycopy(_fileContents, start, bytes, 0,
+                        bytes.length);
+                chunks[i] = HashAlgorithm.objects().hash(bytes);
+                File chunkFile = Utils.join(chunksFolder, chunks[i]);
+                if (!chunkFile.exists()) {
+                    Utils.writeContents(chunkFile, bytes);
+                }
+                start = ends.get(i);
+            }
+            Utils.writeObject(file, new Blob(_hash, _size, chunks));
+        } else {
+            Utils.writeObject(file, this);
+        }
     }
 
     /**
-     * Returns blob with string HASH.
+     * Returns the blob stored as the bytes STORED, whose chunks are read from
+     * the chunks folder that goes with OBJECTFOLDER.
+     */
+    static Blob read(byte[] stored, File objectFolder) {
+        Blob blob = Utils.deserialize(stored, Blob.class);
+        blob._chunksFolder = chunksFolder(objectFolder);
+        return blob;
+    }
+
+    /**
+     * Returns true if the contents of the blob, read from its chunks if it
+     * is chunked, have its size and hash to its hash under ALGORITHM.
+     */
+    boolean hasValidHash(HashAlgorithm algorithm) {
+        ByteBuffer[] buffers = getBuffers();
+        long size = 0;
+        for (ByteBuffer buffer : buffers) {
+            size += buffer.remaining();
+        }
+        return size == getSize() && _hash.equals(hashOf(buffers, algorithm));
+    }
+
+    /**
+     * Returns the hash under ALGORITHM of BUFFERS, the contents of this
+     * blob, or their legacyHash if this is a legacy blob.
+     */
+    String hashOf(ByteBuffer[] buffers, HashAlgorithm algorithm) {
+        if (_fileName != null) {
+            return legacyHash(_fileName, getFileContents());
+        }
+        return algorithm.hashBuffers(buffers);
+    }
+
+    /**
+     * Returns blob with string HASH, fetching it from a promisor remote if
+     * this is a partial clone that lacks it.
      */
     static Blob load(String hash) {
-        return load(hash, null);
+        Blob blob = load(hash, null);
+        if (blob == null
+                && Promisor.fetchBlobs(Collections.singleton(hash))) {
+            blob = load(hash, null);
+        }
+        return blob;
     }
 
     /**
@@ -71,9 +285,25 @@ public class Blob implements Serializable {
         if (!file.exists()) {
             return null;
         }
-        return Utils.readObject(file, Blob.class);
+        Blob blob = Utils.readObject(file, Blob.class);
+        blob._chunksFolder = chunksFolder(objectFolder);
+        return blob;
     }
 
+    /**
+     * Copies the blob with the given HASH from the objects folder FROM to the
+     * objects folder TO, unless TO already has it. Chunked blobs only carry
+     * over the chunks TO is missing.
+     */
+    static void copy(String hash, File from, File to) {
+        if (Utils.join(to, hash).exists()) {
+            return;
+        }
+        Blob blob = load(hash, from);
+        if (blob != null) {
+            blob.save(to);
+        }
+    }
 
     /**
      * Returns true if this blob equals the OTHER blob.
@@ -89,14 +319,22 @@ public class Blob implements Serializable {
         return otherHash.compareTo(_hash) == 0;
     }
 
-    /** String name of file. */
+    /** Name of the file, kept only by legacy blobs, else null. */
     private String _fileName;
 
-    /** Byte array of file contents. */
+    /** Byte array of file contents, or null until a chunked blob is read. */
     private byte[] _fileContents;
 
+    /** Hashes of the chunks of a chunked blob, or null if not chunked. */
+    private String[] _chunks;
+
+    /** Length of the contents in bytes. */
+    private int _size;
+
+    /** Folder the chunks of a loaded blob are read from. */
+    private transient File _chunksFolder;
+
     /** String hash. */
     private String _hash;
 
 }
-
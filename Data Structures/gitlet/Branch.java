@@ -1,8 +1,15 @@
 package gitlet;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
 
 /** Branch class for Gitlet.
+ *  The head of a branch is kept either in its own file under heads, named
+ *  by fileName, or in the packed-refs file (see PackedRefs); the file under
+ *  heads wins when both exist.
  *  @author Erin Lee
  */
 public class Branch {
@@ -44,11 +51,33 @@ public class Branch {
     }
 
     /**
-     * Saves the HEADSFOLDER of the branch.
+     * Saves the HEADSFOLDER of the branch. If the branch was loaded from disk,
+     * this is a compare-and-swap: it fails unless the stored head is still the
+     * one that was loaded. A move of a branch of this repository is recorded
+     * in its reflog, and in that of HEAD if it is the current branch.
      */
     void saveHead(File headsFolder) {
-        Utils.writeContents(Utils.join(headsFolder,
-                _name.replace('/', '-')), _head);
+        File file = Utils.join(headsFolder, fileName(_name));
+        String storedHead = _expectedHead;
+        if (_expectedHead != null) {
+            storedHead = readHead(_name, headsFolder);
+            if (!_expectedHead.equals(storedHead)) {
+                throw new GitletException("Branch " + _name
+                        + " was updated by another process.");
+            }
+        } else if (headsFolder.equals(Gitlet.HEADS_FOLDER)) {
+            storedHead = readHead(_name, headsFolder);
+        }
+        Utils.writeContents(file, _head);
+        _expectedHead = _head;
+        if (headsFolder.equals(Gitlet.HEADS_FOLDER)
+                && !_head.equals(storedHead)) {
+            Reflog.record(_name, storedHead, _head);
+            if (Utils.exists(Gitlet.HEAD_FILE) && _name.equals(
+                    Utils.readContentsAsString(Gitlet.HEAD_FILE))) {
+                Reflog.record(Reflog.HEAD, storedHead, _head);
+            }
+        }
     }
 
     /**
@@ -78,16 +107,13 @@ public class Branch {
      * Returns information of a branch with the given NAME and HEADSFOLDER.
      */
     static Branch load(String name, File headsFolder) {
-        File file = Utils.join(headsFolder,
-                name.replace('/', '-'));
-        if (!file.exists()) {
-            return null;
-        }
-        String head = Utils.readContentsAsString(file);
+        String head = readHead(name, headsFolder);
         if (head == null) {
             return null;
         }
-        return new Branch(name, head);
+        Branch branch = new Branch(name, head);
+        branch._expectedHead = head;
+        return branch;
     }
 
     /**
@@ -103,26 +129,137 @@ public class Branch {
      * Returns removal of a branch with the given NAME.
      */
     static boolean remove(String name) {
-        File headFile = Utils.join(Gitlet.HEADS_FOLDER,
-                name.replace('/', '-'));
-        File stageFile = Utils.join(Gitlet.STAGE_FOLDER,
-                name.replace('/', '-'));
-        if (!headFile.exists()) {
+        File headFile = Utils.join(Gitlet.HEADS_FOLDER, fileName(name));
+        File stageFile = Utils.join(Gitlet.STAGE_FOLDER, fileName(name));
+        TreeMap<String, String> packed =
+                PackedRefs.readAll(Gitlet.GITLET_FOLDER);
+        if (!Utils.exists(headFile) && !packed.containsKey(name)) {
             return false;
         }
-        if (!stageFile.exists()) {
+        if (!Utils.exists(stageFile)) {
             return false;
         }
-        return headFile.delete() && stageFile.delete();
+        if (packed.remove(name) != null) {
+            PackedRefs.write(Gitlet.GITLET_FOLDER, packed);
+        }
+        if (Utils.exists(headFile)) {
+            Utils.delete(headFile);
+        }
+        Reflog.delete(name);
+        return Utils.delete(stageFile);
+    }
+
+    /**
+     * Returns every branch of the repository, sorted by name.
+     */
+    static List<Branch> loadAll() {
+        List<Branch> branches = new ArrayList<>();
+        for (Map.Entry<String, String> ref : readAll().entrySet()) {
+            Branch branch = new Branch(ref.getKey(), ref.getValue());
+            branch._expectedHead = ref.getValue();
+            branches.add(branch);
+        }
+        return branches;
     }
 
     /**
      * Returns true if a branch with the given NAME exists.
      */
     static boolean exists(String name) {
-        File file = Utils.join(Gitlet.HEADS_FOLDER,
-                name.replace('/', '-'));
-        return file.exists();
+        return readHead(name, Gitlet.HEADS_FOLDER) != null;
+    }
+
+    /**
+     * Moves every branch head of the repository into the packed-refs file
+     * and deletes the files under heads.
+     */
+    static void packAll() {
+        TreeMap<String, String> refs = readAll();
+        PackedRefs.write(Gitlet.GITLET_FOLDER, refs);
+        for (String fileName : Utils.plainFilenamesIn(Gitlet.HEADS_FOLDER)) {
+            Utils.delete(Utils.join(Gitlet.HEADS_FOLDER, fileName));
+        }
+    }
+
+    /**
+     * Renames the head and stage files of the remote-tracking branches of
+     * a repository made before branch names were escaped, which kept
+     * REMOTE/BRANCH as REMOTE-BRANCH, to fileName(REMOTE/BRANCH). A file
+     * counts as remote-tracking if its name starts with the name of a
+     * remote and a dash. Does nothing once the repository is converted;
+     * the caller holds the lock, and no journal is open, so that a
+     * conversion cut short is finished by the next.
+     */
+    static void migrate() {
+        Config config = Config.load();
+        if (config.hasEscapedRefs()) {
+            return;
+        }
+        for (String remoteName : config.getRemotes().keySet()) {
+            String prefix = remoteName + "-";
+            for (File folder : new File[] {
+                Gitlet.HEADS_FOLDER, Gitlet.STAGE_FOLDER
+            }) {
+                for (String oldName : Utils.plainFilenamesIn(folder)) {
+                    if (!oldName.startsWith(prefix)) {
+                        continue;
+                    }
+                    File oldFile = Utils.join(folder, oldName);
+                    Utils.writeContents(Utils.join(folder, fileName(
+                            remoteName + "/"
+                            + oldName.substring(prefix.length()))),
+                            Utils.readContents(oldFile));
+                    oldFile.delete();
+                }
+            }
+        }
+        config.setEscapedRefs(true);
+        config.save();
+    }
+
+    /**
+     * Returns the name of the file holding the branch NAME under heads or
+     * stage. Slashes and percent signs are escaped, so that every branch
+     * name gets a distinct plain file.
+     */
+    static String fileName(String name) {
+        return name.replace("%", "%25").replace("/", "%2F");
+    }
+
+    /**
+     * Returns the name of the branch held in the file FILENAME.
+     */
+    static String branchName(String fileName) {
+        return fileName.replace("%2F", "/").replace("%25", "%");
+    }
+
+    /**
+     * Returns every branch of the repository, packed or not, mapping names
+     * to heads, sorted by name.
+     */
+    private static TreeMap<String, String> readAll() {
+        TreeMap<String, String> refs =
+                PackedRefs.readAll(Gitlet.GITLET_FOLDER);
+        for (String fileName : Utils.plainFilenamesIn(Gitlet.HEADS_FOLDER)) {
+            File file = Utils.join(Gitlet.HEADS_FOLDER, fileName);
+            if (Utils.exists(file)) {
+                refs.put(branchName(fileName),
+                        Utils.readContentsAsString(file));
+            }
+        }
+        return refs;
+    }
+
+    /**
+     * Returns the head of the branch NAME of the repository whose heads are
+     * in HEADSFOLDER, or null if there is no such branch.
+     */
+    private static String readHead(String name, File headsFolder) {
+        File file = Utils.join(headsFolder, fileName(name));
+        if (Utils.exists(file)) {
+            return Utils.readContentsAsString(file);
+        }
+        return PackedRefs.read(headsFolder.getParentFile(), name);
     }
 
     /** String name of branch. */
@@ -130,4 +267,8 @@ public class Branch {
 
     /** String name of head of branch. */
     private String _head;
+
+    /** Head the stored branch must still have when saved, or null if the
+     *  branch is saved unconditionally. */
+    private String _expectedHead;
 }
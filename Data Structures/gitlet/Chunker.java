@@ -0,0 +1,90 @@
+package gitlet;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/** Content-defined chunking for Gitlet, after FastCDC.
+ *  Chunk boundaries are chosen by a rolling gear hash of the contents
+ *  rather than by offset, so inserting bytes into a large file only changes
+ *  the chunks around the edit and the rest are shared with the old version.
+ *  @author Erin Lee
+ */
+class Chunker {
+
+    /** Files at least this long, in bytes, are stored as chunks. */
+    static final int CHUNKING_THRESHOLD = 64 * 1024;
+
+    /** Smallest chunk, in bytes, other than the last one of a file. */
+    static final int MIN_SIZE = 2 * 1024;
+
+    /** Target average chunk size, in bytes. */
+    static final int AVG_SIZE = 8 * 1024;
+
+    /** Largest chunk, in bytes. */
+    static final int MAX_SIZE = 64 * 1024;
+
+    /** Mask used before the average size is reached: harder to match. */
+    private static final long MASK_SMALL = 0x0003590703530000L;
+
+    /** Mask used after the average size is reached: easier to match. */
+    private static final long MASK_LARGE = 0x0000d90003530000L;
+
+    /** Random value for each byte, fixed so that chunking is repeatable. */
+    private static final long[] GEAR = new long[256];
+
+    static {
+        Random random = new Random(0x67697440L);
+        for (int i = 0; i < GEAR.length; i += 1) {
+            GEAR[i] = random.nextLong();
+        }
+    }
+
+    /**
+     * Returns true if CONTENTS are large enough to be stored as chunks.
+     */
+    static boolean shouldChunk(byte[] contents) {
+        return contents.length >= CHUNKING_THRESHOLD;
+    }
+
+    /**
+     * Returns the end offsets of the chunks of CONTENTS, in order. The last
+     * offset is always the length of CONTENTS.
+     */
+    static List<Integer> boundaries(byte[] contents) {
+        List<Integer> result = new ArrayList<>();
+        int start = 0;
+        while (start < contents.length) {
+            start += nextChunkLength(contents, start);
+            result.add(start);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the length of the chunk of CONTENTS that starts at START.
+     */
+    private static int nextChunkLength(byte[] contents, int start) {
+        int remaining = contents.length - start;
+        if (remaining <= MIN_SIZE) {
+            return remaining;
+        }
+        int limit = Math.min(remaining, MAX_SIZE);
+        int normal = Math.min(limit, AVG_SIZE);
+        long hash = 0;
+        int i = MIN_SIZE;
+        for (; i < normal; i += 1) {
+            hash = (hash << 1) + GEAR[contents[start + i] & 0xff];
+            if ((hash & MASK_SMALL) == 0) {
+                return i + 1;
+            }
+        }
+        for (; i < limit; i += 1) {
+            hash = (hash << 1) + GEAR[contents[start + i] & 0xff];
+            if ((hash & MASK_LARGE) == 0) {
+                return i + 1;
+            }
+        }
+        return limit;
+    }
+}
@@ -4,12 +4,15 @@ import java.io.File;
 import java.io.Serializable;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
 import java.util.List;
 import java.util.Calendar;
 import java.util.ArrayList;
 import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 
 /** Commit class for Gitlet.
@@ -17,6 +20,17 @@ import java.util.Locale;
  */
 public class Commit implements Serializable {
 
+    /** Version of the serialized form, that of the original class. */
+    private static final long serialVersionUID = -5024682792249133449L;
+
+    /** Hash format of commits whose hash covers a sorted form of their
+     *  files and their parents; commits stored before it have format 0. */
+    private static final int CANONICAL_HASH = 1;
+
+    /** Names of reflog entries, REF@{N}. */
+    private static final Pattern REFLOG_REF =
+            Pattern.compile("(.+)@\\{(\\d{1,9})\\}");
+
     /**
      * A new commit in the current system with a string MESSAGE, a stage of
      * STAGE, and a parent PARENT.
@@ -37,19 +51,17 @@ public class Commit implements Serializable {
             _addedFileInfos = stage.getAdded();
             _removedFileInfos = stage.getRemoved();
         }
-        _hash = Utils.sha1(_timestamp.toString(),
-                (_message != null ? _message : ""),
-                (_trackedFileInfos.toString()),
-                (_addedFileInfos.toString()),
-                (_removedFileInfos.toString()));
         _parent = parent;
+        _hashFormat = CANONICAL_HASH;
+        _hash = computeHash(HashAlgorithm.objects());
     }
 
     /**
-     * A new commit merged with CURRENTCOMMIT and GIVENCOMMIT in the stage
-     * STAGE.
+     * A new commit merging GIVENCOMMITS, one or more, into CURRENTCOMMIT in
+     * the stage STAGE. Its parents are CURRENTCOMMIT and then GIVENCOMMITS,
+     * in order.
      */
-    Commit(Stage stage, Commit currentCommit, Commit givenCommit) {
+    Commit(Stage stage, Commit currentCommit, List<Commit> givenCommits) {
         _timestamp = new Date();
         _message = "Merged " + stage.getMergedBranchName()
                 + " into " + stage.getBranchName() + ".";
@@ -57,13 +69,78 @@ public class Commit implements Serializable {
         _addedFileInfos = stage.getAdded();
         _removedFileInfos = stage.getRemoved();
 
-        _hash = Utils.sha1(_timestamp.toString(),
+        _parent = currentCommit.getHash();
+        _givenParent = givenCommits.get(0).getHash();
+        if (givenCommits.size() > 1) {
+            _givenParents = new ArrayList<>();
+            for (Commit givenCommit : givenCommits.subList(1,
+                    givenCommits.size())) {
+                _givenParents.add(givenCommit.getHash());
+            }
+        }
+        _hashFormat = CANONICAL_HASH;
+        _hash = computeHash(HashAlgorithm.objects());
+    }
+
+    /**
+     * Returns true if the hash of this commit covers its parents and a
+     * sorted form of its files. Commits stored by older versions hashed
+     * the text of their tracked files' HashMap instead, whose order follows
+     * the size of a table that is not serialized, and left the parents out.
+     */
+    boolean coversParents() {
+        return _hashFormat >= CANONICAL_HASH;
+    }
+
+    /**
+     * Returns true if the contents of this commit hash to its recorded hash
+     * under ALGORITHM. An older commit (see coversParents) is hashed with
+     * its tracked files in the order they were read back in, which may not
+     * be the order they were hashed in, so its mismatch proves nothing.
+     */
+    boolean hasValidHash(HashAlgorithm algorithm) {
+        if (coversParents()) {
+            return _hash.equals(computeHash(algorithm));
+        }
+        return _hash.equals(algorithm.hash(_timestamp.toString(),
                 (_message != null ? _message : ""),
                 (_trackedFileInfos.toString()),
                 (_addedFileInfos.toString()),
-                (_removedFileInfos.toString()));
-        _parent = currentCommit.getHash();
-        _givenParent = givenCommit.getHash();
+                (_removedFileInfos.toString())));
+    }
+
+    /**
+     * Returns the hash under ALGORITHM of the time, message, files and
+     * parents of this commit. Each group of files is hashed sorted by name,
+     * as its size and then each name and blob hash, and the fields are
+     * separated by NULs, which neither messages from the command line nor
+     * file names can hold.
+     */
+    private String computeHash(HashAlgorithm algorithm) {
+        StringBuilder text = new StringBuilder();
+        text.append(_timestamp.getTime()).append('\0');
+        text.append(_message != null ? _message : "").append('\0');
+        appendFiles(text, _trackedFileInfos);
+        appendFiles(text, _addedFileInfos);
+        appendFiles(text, _removedFileInfos);
+        for (String parent : getParents()) {
+            text.append(parent).append('\0');
+        }
+        return algorithm.hash(text.toString());
+    }
+
+    /**
+     * Appends to TEXT the number of FILES and then the name and blob hash
+     * of each, sorted by name, as computeHash hashes them.
+     */
+    private static void appendFiles(StringBuilder text,
+                                    Map<String, String> files) {
+        text.append(files.size()).append('\0');
+        for (Map.Entry<String, String> file
+                : new TreeMap<>(files).entrySet()) {
+            text.append(file.getKey()).append('\0')
+                    .append(file.getValue()).append('\0');
+        }
     }
 
     /**
@@ -124,10 +201,21 @@ public class Commit implements Serializable {
     }
 
     /**
-     * Returns the HashCode for this given parent commit.
+     * Returns the HashCodes of all the parents of this commit, the first
+     * parent first and then the given parents of a merge in order.
      */
-    String getGivenParent() {
-        return _givenParent;
+    List<String> getParents() {
+        List<String> parents = new ArrayList<>();
+        if (_parent != null) {
+            parents.add(_parent);
+        }
+        if (_givenParent != null) {
+            parents.add(_givenParent);
+        }
+        if (_givenParents != null) {
+            parents.addAll(_givenParents);
+        }
+        return parents;
     }
 
     /** Returns the message for this particular commit. */
@@ -150,7 +238,9 @@ public class Commit implements Serializable {
     }
 
     /**
-     * Returns a commit with the given HASH.
+     * Returns a commit with the given HASH, which may also be abbreviated,
+     * the name of a tag, or a reflog entry such as master@{1}. Commits of
+     * stash entries are found as well.
      */
     static Commit load(String hash) {
         return load(hash, null);
@@ -164,8 +254,19 @@ public class Commit implements Serializable {
             commitFolder = Gitlet.COMMITS_FOLDER;
         }
         File file = Utils.join(commitFolder, hash);
+        if (!file.exists() && commitFolder.equals(Gitlet.COMMITS_FOLDER)
+                && Utils.join(Stash.COMMITS_FOLDER, hash).exists()) {
+            file = Utils.join(Stash.COMMITS_FOLDER, hash);
+        }
         if (!file.exists()) {
-            if (hash.length() >= 6) {
+            String tagged = commitFolder.equals(Gitlet.COMMITS_FOLDER)
+                    ? resolve(hash) : null;
+            if (tagged != null) {
+                return Utils.readObject(Utils.join(commitFolder, tagged),
+                        Commit.class);
+            }
+            if (hash.length() >= 6 && hash.length()
+                    < HashAlgorithm.objects().getHexLength()) {
                 List<String> commitFiles = Utils.plainFilenamesIn(commitFolder);
                 for (String commitFile : commitFiles) {
                     if (commitFile.startsWith(hash)) {
@@ -181,6 +282,20 @@ public class Commit implements Serializable {
         return Utils.readObject(file, Commit.class);
     }
 
+    /**
+     * Returns the commit the ref NAME of this repository stands for: a tag,
+     * or NAME@{N} for where a branch or HEAD pointed N moves ago. Returns
+     * null if NAME is neither.
+     */
+    private static String resolve(String name) {
+        Matcher reflog = REFLOG_REF.matcher(name);
+        if (reflog.matches()) {
+            return Reflog.find(reflog.group(1),
+                    Integer.parseInt(reflog.group(2)));
+        }
+        return Tag.peel(name);
+    }
+
     /**
      * Returns true if the commit references a file with FILENAME.
      */
@@ -231,11 +346,18 @@ public class Commit implements Serializable {
      * Prints the date and time of the commit.
      */
     void print() {
+        print("");
+    }
+
+    /**
+     * Prints the commit as print() does, with DECORATION after its hash.
+     */
+    void print(String decoration) {
         Calendar calendar = Calendar.getInstance(Locale.US);
         calendar.setTime(_timestamp);
 
         System.out.println("===");
-        System.out.println("commit " + _hash);
+        System.out.println("commit " + _hash + decoration);
         System.out.format("Date: %1$ta %1$tb %1$td %1$tT %1$tY %1$tz",
                 calendar);
         System.out.println();
@@ -286,10 +408,18 @@ public class Commit implements Serializable {
     /** The hash value of the commit using sha1. */
     protected String _hash;
 
+    /** Form of the contents _hash covers: CANONICAL_HASH, or 0 if this
+     *  commit was stored before it existed. */
+    private int _hashFormat;
+
     /** The parent commit of this commit. */
     protected String _parent;
 
     /** The head of the given branch on the command line to be merged. */
     private String _givenParent;
 
+    /** The heads of the given branches after the first merged in by an
+     *  octopus merge, or null if there are no more. */
+    private ArrayList<String> _givenParents;
+
 }
@@ -9,11 +9,15 @@ import java.util.Map;
  */
 public class Config implements Serializable {
 
+    /** Version of the serialized form, that of the original class. */
+    private static final long serialVersionUID = -537955362419299344L;
+
     /**
      * Creates a new config.
      */
     Config() {
         _remotes = new HashMap<>();
+        _escapedRefs = true;
     }
 
     /**
@@ -51,6 +55,22 @@ public class Config implements Serializable {
         _remotes.remove(remoteName);
     }
 
+    /**
+     * Returns true if the files of branches are named by Branch.fileName,
+     * as they are in repositories made since slashes were escaped.
+     */
+    boolean hasEscapedRefs() {
+        return _escapedRefs;
+    }
+
+    /**
+     * Records whether the files of branches are named by Branch.fileName,
+     * as ESCAPED says.
+     */
+    void setEscapedRefs(boolean escaped) {
+        _escapedRefs = escaped;
+    }
+
     /**
      * Saves the config.
      */
@@ -68,4 +88,9 @@ public class Config implements Serializable {
     /** Private map remotes. */
     private Map<String, Remote> _remotes;
 
+    /** True if branch files are named by Branch.fileName; false in a
+     *  repository whose remote-tracking branch REMOTE/BRANCH may still be
+     *  kept as REMOTE-BRANCH. */
+    private boolean _escapedRefs;
+
 }
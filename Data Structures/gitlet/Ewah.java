@@ -0,0 +1,89 @@
+package gitlet;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/** Word-aligned run-length compression of bitsets, after EWAH.
+ *  A compressed bitmap is a sequence of marker words, each followed by
+ *  literal words. A marker holds a run of all-zero or all-one words (bit 0
+ *  is the run's value, bits 1 to 32 its length) and the number of literal
+ *  words that follow it (bits 33 to 63). Reachability bitmaps are mostly
+ *  long runs, so they shrink to a few words.
+ *  @author Erin Lee
+ */
+class Ewah {
+
+    /** Largest run length a marker can hold. */
+    private static final long MAX_RUN = (1L << 32) - 1;
+
+    /** Largest literal count a marker can hold. */
+    private static final long MAX_LITERALS = (1L << 31) - 1;
+
+    /**
+     * Not instantiable.
+     */
+    private Ewah() {
+    }
+
+    /**
+     * Returns BITS compressed.
+     */
+    static long[] compress(BitSet bits) {
+        long[] words = bits.toLongArray();
+        long[] result = new long[words.length + words.length / 2 + 2];
+        int size = 0;
+        int i = 0;
+        while (i < words.length) {
+            long runValue = words[i] == -1L ? 1 : 0;
+            long run = 0;
+            while (i < words.length && run < MAX_RUN
+                    && (words[i] == 0 || words[i] == -1L)
+                    && (words[i] == -1L) == (runValue == 1)) {
+                run += 1;
+                i += 1;
+            }
+            int start = i;
+            while (i < words.length && i - start < MAX_LITERALS
+                    && words[i] != 0 && words[i] != -1L) {
+                i += 1;
+            }
+            long literals = i - start;
+            if (size + 1 + literals > result.length) {
+                result = Arrays.copyOf(result,
+                        (int) (result.length * 2 + literals + 1));
+            }
+            result[size] = runValue | (run << 1) | (literals << 33);
+            size += 1;
+            System.arraycopy(words, start, result, size, (int) literals);
+            size += (int) literals;
+        }
+        return Arrays.copyOf(result, size);
+    }
+
+    /**
+     * Returns the bitset compressed in WORDS.
+     */
+    static BitSet decompress(long[] words) {
+        int length = 0;
+        for (int i = 0; i < words.length; i += 1) {
+            long literals = words[i] >>> 33;
+            length += (int) ((words[i] >>> 1) & MAX_RUN) + (int) literals;
+            i += (int) literals;
+        }
+        long[] result = new long[length];
+        int size = 0;
+        for (int i = 0; i < words.length; i += 1) {
+            long marker = words[i];
+            int run = (int) ((marker >>> 1) & MAX_RUN);
+            int literals = (int) (marker >>> 33);
+            if ((marker & 1) == 1) {
+                Arrays.fill(result, size, size + run, -1L);
+            }
+            size += run;
+            System.arraycopy(words, i + 1, result, size, literals);
+            size += literals;
+            i += literals;
+        }
+        return BitSet.valueOf(result);
+    }
+}
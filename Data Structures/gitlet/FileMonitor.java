@@ -0,0 +1,356 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+/** Watcher of the working directory for Gitlet, in the manner of Git's
+ *  fsmonitor. While `gitlet watch` runs, it appends the name of every file
+ *  that changes to a log in .gitlet, so that status only needs to look at
+ *  the files named since the log position it last read. The watcher holds a
+ *  lock on a file for as long as it runs; when no one holds that lock, the
+ *  log is not trusted and status scans the whole directory. Since the
+ *  watcher learns of changes only some time after they are made, a reader
+ *  first creates a cookie file in a folder of .gitlet that the watcher
+ *  also watches, out of sight of status and checkout, and waits for the
+ *  watcher to log it; the changes made before are then in the log. The
+ *  reader then takes the log's lock, which the watcher holds while
+ *  appending, reads it to the end and truncates it, starting a new
+ *  generation of the session so that a reader still holding an old
+ *  position scans the whole directory instead.
+ *  @author Erin Lee
+ */
+class FileMonitor {
+
+    /** Log of changed file names, written by the watcher. The first line
+     *  names the watcher session and its generation; "*" means everything
+     *  may have changed. */
+    static final File LOG_FILE =
+            new File(Gitlet.GITLET_FOLDER, "fsmonitor-log");
+
+    /** File locked by the watcher while it runs. */
+    static final File LOCK_FILE =
+            new File(Gitlet.GITLET_FOLDER, "fsmonitor-lock");
+
+    /** Prefix of the first line of the log. */
+    private static final String SESSION = "session ";
+
+    /** Log line meaning that any file may have changed. */
+    static final String EVERYTHING = "*";
+
+    /** Folder of cookie files, watched along with the working directory.
+     *  Cookies are logged as its name, a slash and their own name, which
+     *  no working file name can be. */
+    static final File COOKIE_FOLDER =
+            new File(Gitlet.GITLET_FOLDER, "fsmonitor-cookies");
+
+    /** Longest wait for the watcher to log a cookie, in milliseconds. Some
+     *  watchers poll, every few seconds. */
+    private static final long COOKIE_WAIT = 15000;
+
+    /** Longest time between looks at the log for a cookie, in
+     *  milliseconds; the first look comes after one, and each wait is
+     *  twice the last. */
+    private static final long COOKIE_POLL = 64;
+
+    /** Held by a thread of this process while it holds the lock on the
+     *  log, which the file system grants once per process. */
+    private static final Object LOG_LOCK = new Object();
+
+    /** Changes reported by the watcher since some point of its log. */
+    static class Changes {
+        /** The watcher session the changes belong to. */
+        private String _session;
+        /** Log position just past the reported changes. */
+        private long _offset;
+        /** Names of the changed files. */
+        private TreeSet<String> _fileNames = new TreeSet<>();
+        /** True if any file may have changed. */
+        private boolean _everything;
+
+        /** Returns the session of the watcher. */
+        String getSession() {
+            return _session;
+        }
+
+        /** Returns the log position to ask from next time. */
+        long getOffset() {
+            return _offset;
+        }
+
+        /** Returns the names of the changed files. */
+        TreeSet<String> getFileNames() {
+            return _fileNames;
+        }
+
+        /** Returns true if any file may have changed. */
+        boolean isEverything() {
+            return _everything;
+        }
+    }
+
+    /**
+     * Not instantiable.
+     */
+    private FileMonitor() {
+    }
+
+    /**
+     * Watches the working directory, logging changed file names, until the
+     * process is stopped.
+     */
+    static void watch() {
+        try (FileChannel channel =
+                     new RandomAccessFile(LOCK_FILE, "rw").getChannel();
+             FileLock lock = channel.tryLock()) {
+            if (lock == null) {
+                throw new GitletException("A watcher is already running.");
+            }
+            WatchService service = FileSystems.getDefault().newWatchService();
+            Path directory = Gitlet.CWD.toPath().toAbsolutePath().normalize();
+            WatchKey workKey = directory.register(service, ENTRY_CREATE,
+                    ENTRY_DELETE, ENTRY_MODIFY);
+            COOKIE_FOLDER.mkdir();
+            COOKIE_FOLDER.toPath().register(service, ENTRY_CREATE);
+            String session = ProcessHandle.current().pid() + "-"
+                    + System.currentTimeMillis() + ".0";
+            Utils.replaceContents(LOG_FILE, (SESSION + session + "\n")
+                    .getBytes(StandardCharsets.UTF_8));
+            System.out.println("Watching " + directory + " for changes.");
+
+            try (FileChannel log = FileChannel.open(LOG_FILE.toPath(),
+                    StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+                while (true) {
+                    WatchKey key = service.take();
+                    StringBuilder lines = new StringBuilder();
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        String name = event.context() == null ? null
+                                : event.context().toString();
+                        if (key != workKey) {
+                            if (event.kind() != OVERFLOW) {
+                                lines.append(COOKIE_FOLDER.getName())
+                                        .append('/').append(name)
+                                        .append('\n');
+                            }
+                        } else if (event.kind() == OVERFLOW) {
+                            lines.append(EVERYTHING).append('\n');
+                        } else if (!name.equals(
+                                Gitlet.GITLET_FOLDER.getName())) {
+                            lines.append(name).append('\n');
+                        }
+                    }
+                    append(log, lines.toString());
+                    if (!key.reset()) {
+                        break;
+                    }
+                }
+            }
+        } catch (ClosedByInterruptException excp) {
+            return;
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        } catch (InterruptedException excp) {
+            return;
+        }
+    }
+
+    /**
+     * Appends LINES to the end of the log open as LOG, holding its lock.
+     */
+    private static void append(FileChannel log, String lines)
+            throws IOException {
+        if (lines.isEmpty()) {
+            return;
+        }
+        ByteBuffer bytes =
+                ByteBuffer.wrap(lines.getBytes(StandardCharsets.UTF_8));
+        synchronized (LOG_LOCK) {
+            FileLock lock = log.lock();
+            try {
+                while (bytes.hasRemaining()) {
+                    log.write(bytes);
+                }
+            } finally {
+                lock.release();
+            }
+        }
+    }
+
+    /**
+     * Returns true if a watcher is running on this repository.
+     */
+    static boolean isRunning() {
+        if (!LOG_FILE.exists()) {
+            return false;
+        }
+        try (FileChannel channel =
+                     new RandomAccessFile(LOCK_FILE, "rw").getChannel()) {
+            FileLock lock = channel.tryLock();
+            if (lock == null) {
+                return true;
+            }
+            lock.release();
+            return false;
+        } catch (OverlappingFileLockException excp) {
+            return true;
+        } catch (IOException excp) {
+            return false;
+        }
+    }
+
+    /**
+     * Returns the changes logged since position OFFSET of the log of watcher
+     * session SESSION, up to a cookie logged after this call began, or
+     * later. The log is then truncated, and the changes name the new
+     * generation of the session. If SESSION is not the running session, or
+     * the watcher does not log the cookie in time, everything is reported
+     * as changed.
+     */
+    static Changes changesSince(String session, long offset) {
+        Changes changes = new Changes();
+        try (RandomAccessFile log = new RandomAccessFile(LOG_FILE, "rw")) {
+            String header = log.readLine();
+            if (header == null || !header.startsWith(SESSION)) {
+                changes._everything = true;
+                return changes;
+            }
+            changes._session = header.substring(SESSION.length());
+            if (!changes._session.equals(session)) {
+                changes._everything = true;
+                changes._offset = log.length();
+                return changes;
+            }
+            if (!awaitCookie(log)) {
+                changes._everything = true;
+                changes._offset = log.length();
+                return changes;
+            }
+            synchronized (LOG_LOCK) {
+                FileLock lock = log.getChannel().lock();
+                try {
+                    log.seek(0);
+                    if (!header.equals(log.readLine())
+                            || offset > log.length()) {
+                        changes._everything = true;
+                        changes._offset = log.length();
+                        return changes;
+                    }
+                    log.seek(offset);
+                    for (String line : readLines(log)) {
+                        if (line.equals(EVERYTHING)) {
+                            changes._everything = true;
+                        } else if (line.indexOf('/') < 0) {
+                            changes._fileNames.add(line);
+                        }
+                    }
+                    changes._session = nextGeneration(changes._session);
+                    byte[] newHeader = (SESSION + changes._session + "\n")
+                            .getBytes(StandardCharsets.UTF_8);
+                    log.setLength(0);
+                    log.write(newHeader);
+                    changes._offset = newHeader.length;
+                } finally {
+                    lock.release();
+                }
+            }
+            return changes;
+        } catch (IOException | OverlappingFileLockException excp) {
+            changes = new Changes();
+            changes._everything = true;
+            return changes;
+        }
+    }
+
+    /**
+     * Returns the next generation of the watcher session SESSION, the
+     * first one if SESSION, as logged by an older watcher, has none.
+     */
+    private static String nextGeneration(String session) {
+        int dot = session.lastIndexOf('.');
+        if (dot < 0 || !session.substring(dot + 1).matches("\\d{1,18}")) {
+            return session + ".1";
+        }
+        return session.substring(0, dot + 1)
+                + (Long.parseLong(session.substring(dot + 1)) + 1);
+    }
+
+    /**
+     * Creates a cookie file in COOKIE_FOLDER, waits for the watcher to write
+     * its name to LOG, and deletes it. Looks at LOG after one millisecond
+     * and then after twice the last wait each time, up to COOKIE_POLL.
+     * Returns true if the name appeared in time.
+     */
+    private static boolean awaitCookie(RandomAccessFile log)
+            throws IOException {
+        long position = log.length();
+        File cookie = new File(COOKIE_FOLDER,
+                ProcessHandle.current().pid() + "-" + System.nanoTime());
+        if (!cookie.createNewFile()) {
+            return false;
+        }
+        String line = COOKIE_FOLDER.getName() + "/" + cookie.getName();
+        try {
+            long deadline = System.currentTimeMillis() + COOKIE_WAIT;
+            long wait = 1;
+            while (System.currentTimeMillis() < deadline) {
+                if (log.length() < position) {
+                    return false;
+                }
+                log.seek(position);
+                if (readLines(log).contains(line)) {
+                    return true;
+                }
+                position = log.getFilePointer();
+                Thread.sleep(wait);
+                wait = Math.min(wait * 2, COOKIE_POLL);
+            }
+            return false;
+        } catch (InterruptedException excp) {
+            return false;
+        } finally {
+            cookie.delete();
+        }
+    }
+
+    /**
+     * Returns the complete lines of LOG from its position to its end, as
+     * UTF-8, read in one piece, and leaves LOG just past the last of them.
+     */
+    private static List<String> readLines(RandomAccessFile log)
+            throws IOException {
+        long start = log.getFilePointer();
+        byte[] bytes = new byte[(int) Math.max(0, log.length() - start)];
+        log.readFully(bytes);
+        List<String> lines = new ArrayList<>();
+        int from = 0;
+        for (int i = 0; i < bytes.length; i += 1) {
+            if (bytes[i] == '\n') {
+                lines.add(new String(bytes, from, i - from,
+                        StandardCharsets.UTF_8));
+                from = i + 1;
+            }
+        }
+        log.seek(start + from);
+        return lines;
+    }
+}
@@ -0,0 +1,322 @@
+package gitlet;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/** A consistency check of the stored objects of a Gitlet repository.
+ *  Every object in the object index is read and checked on its own: a blob
+ *  or chunk must hash to its name, a commit's contents must hash to the
+ *  name it records, which must be its own (commits made by older versions
+ *  are only counted where that cannot be told, see
+ *  Commit.coversParents), and the parents, blobs and
+ *  chunks an object refers to must be stored. Objects do not depend on
+ *  each other's results, so the index is split into ranges of positions
+ *  that a fork-join pool checks in parallel, while the calling thread
+ *  reports progress.
+ *  @author Erin Lee
+ */
+class Fsck {
+
+    /** Number of objects below which a range is checked without splitting. */
+    private static final int BATCH_SIZE = 64;
+
+    /** Time between progress reports, in milliseconds. */
+    private static final long PROGRESS_MILLIS = 200;
+
+    /**
+     * A check of the repository in GITLETFOLDER. Blobs missing from a
+     * partial clone are counted rather than reported if PARTIAL.
+     */
+    Fsck(File gitletFolder, boolean partial) {
+        _index = ObjectIndex.load(gitletFolder);
+        _index.scan();
+        _commitsFolder = Utils.join(gitletFolder, ObjectIndex.COMMITS);
+        _objectsFolder = Utils.join(gitletFolder, ObjectIndex.OBJECTS);
+        _chunksFolder = Utils.join(gitletFolder, ObjectIndex.CHUNKS);
+        _partial = partial;
+        _hash = HashAlgorithm.objects();
+    }
+
+    /**
+     * Checks every object, printing progress if PROGRESS, and returns the
+     * problems found, sorted.
+     */
+    List<String> run(boolean progress) {
+        ForkJoinPool pool = new ForkJoinPool();
+        try {
+            Check check = new Check(0, _index.size());
+            pool.execute(check);
+            while (!pool.awaitQuiescence(PROGRESS_MILLIS,
+                    TimeUnit.MILLISECONDS)) {
+                if (progress) {
+                    reportProgress();
+                }
+            }
+            check.join();
+        } finally {
+            pool.shutdown();
+        }
+        if (progress) {
+            reportProgress();
+            System.err.println();
+        }
+        List<String> problems = new ArrayList<>(_problems);
+        Collections.sort(problems);
+        return problems;
+    }
+
+    /**
+     * Reports that the head of branch NAME, HEAD, is not stored, if so.
+     */
+    void checkBranch(String name, String head) {
+        if (!Utils.join(_commitsFolder, head).exists()) {
+            _problems.add("missing commit " + head + " at head of branch "
+                    + name);
+        }
+    }
+
+    /**
+     * Returns the number of objects checked.
+     */
+    int getChecked() {
+        return _checked.get();
+    }
+
+    /**
+     * Returns the number of commits checked.
+     */
+    int getCommits() {
+        return _commits.get();
+    }
+
+    /**
+     * Returns the number of blobs checked.
+     */
+    int getBlobs() {
+        return _blobs.get();
+    }
+
+    /**
+     * Returns the number of chunks checked.
+     */
+    int getChunks() {
+        return _chunks.get();
+    }
+
+    /**
+     * Returns the number of commits whose hashes do not cover their parents
+     * (see Commit.coversParents), so their parents were not checked.
+     */
+    int getLegacy() {
+        return _legacy.get();
+    }
+
+    /**
+     * Returns the number of those commits whose hashes could not be checked
+     * at all, since their files were read back in another order than they
+     * were hashed in.
+     */
+    int getUnchecked() {
+        return _unchecked.get();
+    }
+
+    /**
+     * Returns the number of blobs missing from a partial clone, which its
+     * promisor remotes are expected to hold.
+     */
+    int getPromised() {
+        return _promised.get();
+    }
+
+    /**
+     * Prints how many objects are checked so far, overwriting the last
+     * report.
+     */
+    private void reportProgress() {
+        int total = _index.size();
+        int checked = _checked.get();
+        System.err.printf("Checking objects: %3d%% (%d/%d)\r",
+                total == 0 ? 100 : 100L * checked / total, checked, total);
+    }
+
+    /**
+     * Checks the object at POSITION in the index.
+     */
+    private void check(int position) {
+        File file = _index.file(position);
+        String name = file.getName();
+        try {
+            if (_index.isCommit(position)) {
+                _commits.incrementAndGet();
+                checkCommit(name);
+            } else if (_index.isBlob(position)) {
+                _blobs.incrementAndGet();
+                checkBlob(name);
+            } else {
+                _chunks.incrementAndGet();
+                checkChunk(name, file);
+            }
+        } catch (IllegalArgumentException excp) {
+            _problems.add("unreadable object " + name);
+        } catch (RuntimeException excp) {
+            _problems.add("malformed object " + name);
+        }
+        _checked.incrementAndGet();
+    }
+
+    /**
+     * Checks the commit NAME and its links to its parents and blobs.
+     */
+    private void checkCommit(String name) {
+        Commit commit = Commit.load(name, _commitsFolder);
+        if (!name.equals(commit.getHash())) {
+            _problems.add("corrupt commit " + name + ": records hash "
+                    + commit.getHash());
+        } else if (!commit.hasValidHash(_hash)) {
+            if (commit.coversParents()) {
+                _problems.add("corrupt commit " + name + ": hash mismatch");
+            } else {
+                _unchecked.incrementAndGet();
+            }
+        }
+        if (!commit.coversParents()) {
+            _legacy.incrementAndGet();
+        }
+        for (String parent : commit.getParents()) {
+            if (!Utils.join(_commitsFolder, parent).exists()) {
+                _problems.add("missing commit " + parent
+                        + " as parent of " + name);
+            }
+        }
+        for (String blobHash : commit.getFileInfos().values()) {
+            if (!Utils.join(_objectsFolder, blobHash).exists()) {
+                if (_partial) {
+                    _promised.incrementAndGet();
+                } else {
+                    _problems.add("missing blob " + blobHash + " in commit "
+                            + name);
+                }
+            }
+        }
+    }
+
+    /**
+     * Checks the blob NAME, its chunks, and that its contents hash to NAME.
+     */
+    private void checkBlob(String name) {
+        Blob blob = Blob.load(name, _objectsFolder);
+        if (blob.isChunked()) {
+            for (String chunk : blob.getChunks()) {
+                if (!Utils.join(_chunksFolder, chunk).exists()) {
+                    _problems.add("missing chunk " + chunk + " in blob "
+                            + name);
+                    return;
+                }
+            }
+        }
+        ByteBuffer[] buffers = blob.getBuffers();
+        long size = 0;
+        for (ByteBuffer buffer : buffers) {
+            size += buffer.remaining();
+        }
+        if (size != blob.getSize()) {
+            _problems.add("corrupt blob " + name + ": holds " + size
+                    + " bytes instead of " + blob.getSize());
+        } else if (!name.equals(blob.hashOf(buffers, _hash))) {
+            _problems.add("corrupt blob " + name + ": hash mismatch");
+        }
+    }
+
+    /**
+     * Checks that the chunk NAME, stored in FILE, hashes to NAME.
+     */
+    private void checkChunk(String name, File file) {
+        if (!name.equals(_hash.hashBuffers(Utils.mapContents(file)))) {
+            _problems.add("corrupt chunk " + name + ": hash mismatch");
+        }
+    }
+
+    /** A check of a range of index positions. */
+    private class Check extends RecursiveAction {
+
+        /** Version of the serialized form. */
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * A check of positions FROM up to, but not including, TO.
+         */
+        Check(int from, int to) {
+            _from = from;
+            _to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (_to - _from <= BATCH_SIZE) {
+                for (int i = _from; i < _to; i += 1) {
+                    check(i);
+                }
+            } else {
+                int middle = _from + (_to - _from) / 2;
+                invokeAll(new Check(_from, middle), new Check(middle, _to));
+            }
+        }
+
+        /** First position to check. */
+        private final int _from;
+
+        /** Position after the last to check. */
+        private final int _to;
+    }
+
+    /** Index of the objects to check. */
+    private final ObjectIndex _index;
+
+    /** Folder of commits. */
+    private final File _commitsFolder;
+
+    /** Folder of blobs. */
+    private final File _objectsFolder;
+
+    /** Folder of chunks. */
+    private final File _chunksFolder;
+
+    /** True if this is a partial clone. */
+    private final boolean _partial;
+
+    /** Object hash of the repository. */
+    private final HashAlgorithm _hash;
+
+    /** Problems found so far, in no order. */
+    private final Queue<String> _problems = new ConcurrentLinkedQueue<>();
+
+    /** Number of objects checked so far. */
+    private final AtomicInteger _checked = new AtomicInteger();
+
+    /** Number of commits checked so far. */
+    private final AtomicInteger _commits = new AtomicInteger();
+
+    /** Number of blobs checked so far. */
+    private final AtomicInteger _blobs = new AtomicInteger();
+
+    /** Number of chunks checked so far. */
+    private final AtomicInteger _chunks = new AtomicInteger();
+
+    /** Number of commits so far whose hashes do not cover their parents. */
+    private final AtomicInteger _legacy = new AtomicInteger();
+
+    /** Number of those commits so far whose hashes could not be checked. */
+    private final AtomicInteger _unchecked = new AtomicInteger();
+
+    /** Number of blobs missing from a partial clone so far. */
+    private final AtomicInteger _promised = new AtomicInteger();
+}
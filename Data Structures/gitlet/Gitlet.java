@@ -1,10 +1,17 @@
 package gitlet;
 
 import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
 
 /** Gitlet class for Gitlet.
  *  @author Erin Lee
@@ -29,6 +36,9 @@ public class Gitlet {
     /** Folder of objects. */
     static final File OBJS_FOLDER = new File(GITLET_FOLDER, "objects");
 
+    /** Folder of chunks of large blobs. */
+    static final File CHUNKS_FOLDER = new File(GITLET_FOLDER, "chunks");
+
     /** Folder of staged files. */
     static final File STAGE_FOLDER = new File(GITLET_FOLDER, "stage");
 
@@ -54,8 +64,22 @@ public class Gitlet {
      * will have exactly the same content, it follows that all repositories
      * will automatically share this commit (they will all have the same UID)
      * and all commits in all repositories will trace back to it.
+     * With --hash=sha256, objects are named by SHA-256 instead of SHA-1;
+     * such a repository can only push to and fetch from others like it.
+     * Take ARGS as command.
      */
-    void init() {
+    void init(String... args) {
+        HashAlgorithm algorithm = HashAlgorithm.SHA1;
+        if (args.length == 2 && args[1].startsWith("--hash=")) {
+            algorithm = HashAlgorithm.forName(
+                    args[1].substring("--hash=".length()));
+            if (algorithm != HashAlgorithm.SHA1
+                    && algorithm != HashAlgorithm.SHA256) {
+                throw new GitletException("Unsupported hash algorithm.");
+            }
+        } else if (args.length > 1) {
+            throw new GitletException("Incorrect operands.");
+        }
         if (GITLET_FOLDER.exists()) {
             System.out.println("A gitlet version-control system already "
                     + "exists in the current directory.");
@@ -63,9 +87,13 @@ public class Gitlet {
         }
 
         GITLET_FOLDER.mkdir();
+        if (algorithm != HashAlgorithm.SHA1) {
+            HashAlgorithm.save(algorithm);
+        }
         HEADS_FOLDER.mkdir();
         STAGE_FOLDER.mkdir();
         OBJS_FOLDER.mkdir();
+        CHUNKS_FOLDER.mkdir();
         COMMITS_FOLDER.mkdir();
 
         Commit commit = new Commit("initial commit", null, null);
@@ -109,10 +137,16 @@ public class Gitlet {
         Branch branch = Branch.load();
         Stage stage = Stage.load(branch.getName());
 
-        Blob blob = new Blob(file);
-        blob.save();
-
-        stage.add(file.getName(), blob.getHash());
+        byte[] contents = Utils.readContents(file);
+        String trackedHash = stage.getTracked().get(file.getName());
+        if (trackedHash != null && trackedHash.equals(
+                Blob.legacyHash(file.getName(), contents))) {
+            stage.add(file.getName(), trackedHash);
+        } else {
+            Blob blob = new Blob(contents);
+            blob.save();
+            stage.add(file.getName(), blob.getHash());
+        }
 
         stage.save();
     }
@@ -185,16 +219,75 @@ public class Gitlet {
      * log --first-parent). This set of commit nodes is called the commit's
      * history. For every node in this history, the information it should
      * display is the commit id, the time the commit was made, and the commit
-     * message.
+     * message. With -S STRING, possibly repeated, only the commits that
+     * change the number of occurrences of a STRING in some file are shown.
+     * With --decorate, each commit is followed by the branches and tags
+     * that point to it.
+     * Take ARGS as command.
      */
-    void log() {
+    void log(String... args) {
+        List<String> patterns = new ArrayList<>();
+        boolean decorate = false;
+        for (int i = 1; i < args.length; i += 1) {
+            if (args[i].equals("--decorate")) {
+                decorate = true;
+            } else if (args[i].equals("-S") && i + 1 < args.length
+                    && !args[i + 1].isEmpty()) {
+                patterns.add(args[i + 1]);
+                i += 1;
+            } else {
+                throw new GitletException("Incorrect operands.");
+            }
+        }
         Branch branch = Branch.load();
+        List<Commit> history = new ArrayList<>();
         String commitHash = branch.getHead();
         while (commitHash != null) {
             Commit commit = Commit.load(commitHash);
-            commit.print();
+            history.add(commit);
             commitHash = commit.getParent();
         }
+        if (!patterns.isEmpty()) {
+            history = new Pickaxe(patterns).changing(history);
+        }
+        Map<String, String> decorations = decorate
+                ? decorations(branch.getName()) : Collections.emptyMap();
+        for (Commit commit : history) {
+            commit.print(decorations.getOrDefault(commit.getHash(), ""));
+        }
+    }
+
+    /**
+     * Returns the decoration of each commit some ref points to, listing the
+     * current branch CURRENTBRANCHNAME, then tags, then other branches, as
+     * in " (HEAD -> master, tag: v1, other)". The map is built once from
+     * all refs, so that decorating a commit is a lookup.
+     */
+    private Map<String, String> decorations(String currentBranchName) {
+        Map<String, List<String>> refs = new HashMap<>();
+        List<Branch> branches = Branch.loadAll();
+        for (Branch branch : branches) {
+            if (branch.getName().equals(currentBranchName)) {
+                refs.computeIfAbsent(branch.getHead(), h -> new ArrayList<>())
+                        .add("HEAD -> " + branch.getName());
+            }
+        }
+        for (Map.Entry<String, String> tag : Tag.peelAll().entrySet()) {
+            refs.computeIfAbsent(tag.getValue(), h -> new ArrayList<>())
+                    .add("tag: " + tag.getKey());
+        }
+        for (Branch branch : branches) {
+            if (!branch.getName().equals(currentBranchName)) {
+                refs.computeIfAbsent(branch.getHead(), h -> new ArrayList<>())
+                        .add(branch.getName());
+            }
+        }
+        Map<String, String> decorations = new HashMap<>();
+        for (Map.Entry<String, List<String>> ref : refs.entrySet()) {
+            decorations.put(ref.getKey(),
+                    " (" + String.join(", ", ref.getValue()) + ")");
+        }
+        return decorations;
     }
 
     /**
@@ -236,31 +329,208 @@ public class Gitlet {
      * Displays what branches currently exist, and marks the current branch
      * with a *. Also displays what files have been staged for addition or
      * removal. An example of the exact format it should follow is as follows.
+     * With --porcelain, prints instead one line per changed file in the
+     * format of StatusSnapshot.printPorcelain, for use by scripts.
+     * Take ARGS as command.
      */
-    void status() {
+    void status(String... args) {
+        boolean porcelain = args.length == 2 && args[1].equals("--porcelain");
+        if (args.length > 2 || (args.length == 2 && !porcelain)) {
+            throw new GitletException("Incorrect operands.");
+        }
         Branch branch = Branch.load();
         Stage stage = Stage.load(branch.getName());
+        WorkingTree tree = WorkingTree.load();
+        StatusSnapshot snapshot = new StatusSnapshot(stage, tree);
+        tree.save();
+        if (porcelain) {
+            snapshot.printPorcelain();
+            return;
+        }
 
         System.out.println("=== Branches ===");
         printBranches(branch.getName());
         System.out.println();
 
         System.out.println("=== Staged Files ===");
-        stage.printStagedFiles();
+        snapshot.printStagedFiles();
         System.out.println();
 
         System.out.println("=== Removed Files ===");
-        stage.printRemovedFiles();
+        snapshot.printRemovedFiles();
         System.out.println();
 
         System.out.println("=== Modifications Not Staged For Commit ===");
-        stage.printDeletedButNotStagedFiles();
-        stage.printModifiedButNotStagedFiles();
+        snapshot.printDeletedButNotStagedFiles();
+        snapshot.printModifiedButNotStagedFiles();
         System.out.println();
 
         System.out.println("=== Untracked Files ===");
-        stage.printUntrackedFiles();
+        snapshot.printUntrackedFiles();
         System.out.println();
+        System.out.println();
+    }
+
+    /**
+     * Prints the files that differ between two trees, one per line, as a
+     * status letter and the file name. Renames and copies are shown as R or C
+     * with their similarity, followed by the source and new names. With no
+     * operands, compares the head commit with the staging area; with one
+     * commit id, compares that commit with the head commit; with two, compares
+     * the first with the second.
+     * Take ARGS as command.
+     */
+    void diff(String... args) {
+        if (args.length > 3) {
+            throw new GitletException("Incorrect operands.");
+        }
+        Branch branch = Branch.load();
+        Map<String, String> before;
+        Map<String, String> after;
+        if (args.length == 1) {
+            before = Commit.load(branch.getHead()).getFileInfos();
+            after = Stage.load(branch.getName()).getFileInfos();
+        } else {
+            Commit oldCommit = Commit.load(args[1]);
+            Commit newCommit = Commit.load(args.length == 3 ? args[2]
+                    : branch.getHead());
+            if (oldCommit == null || newCommit == null) {
+                throw new GitletException("No commit with that id exists.");
+            }
+            before = oldCommit.getFileInfos();
+            after = newCommit.getFileInfos();
+        }
+
+        Set<String> changedHashes = new HashSet<>();
+        for (String fileName : before.keySet()) {
+            if (!before.get(fileName).equals(after.get(fileName))) {
+                changedHashes.add(before.get(fileName));
+            }
+        }
+        for (String fileName : after.keySet()) {
+            if (!after.get(fileName).equals(before.get(fileName))) {
+                changedHashes.add(after.get(fileName));
+            }
+        }
+        Promisor.fetchBlobs(changedHashes);
+
+        RenameDetector detector = new RenameDetector();
+        TreeMap<String, String> renames = detector.findRenames(before, after);
+        TreeMap<String, String> copies =
+                detector.findCopies(before, after, renames.keySet());
+        Set<String> renamedFrom = new HashSet<>(renames.values());
+        TreeSet<String> fileNames = new TreeSet<>(before.keySet());
+        fileNames.addAll(after.keySet());
+        for (String fileName : fileNames) {
+            String oldHash = before.get(fileName);
+            String newHash = after.get(fileName);
+            String source = renames.containsKey(fileName)
+                    ? renames.get(fileName) : copies.get(fileName);
+            if (source != null) {
+                System.out.printf("%s%03d\t%s\t%s%n",
+                        renames.containsKey(fileName) ? "R" : "C",
+                        detector.similarity(before.get(source), newHash),
+                        source, fileName);
+            } else if (newHash == null) {
+                if (!renamedFrom.contains(fileName)) {
+                    System.out.println("D\t" + fileName);
+                }
+            } else if (oldHash == null) {
+                System.out.println("A\t" + fileName);
+            } else if (!oldHash.equals(newHash)) {
+                System.out.println("M\t" + fileName);
+            }
+        }
+    }
+
+    /**
+     * Watches the working directory until stopped, so that status only
+     * examines files that changed since the previous status.
+     * Take ARGS as command.
+     */
+    void watch(String... args) {
+        if (args.length != 1) {
+            throw new GitletException("Incorrect operands.");
+        }
+        FileMonitor.watch();
+    }
+
+    /**
+     * Manages the sparse-checkout patterns, which limit the files checkout,
+     * reset, merge and status write to and look for in the working
+     * directory. "set PATTERN..." replaces the patterns, "add PATTERN..."
+     * appends to them, "list" prints them and "disable" removes them. After
+     * a change, included files missing from the working directory are
+     * written and excluded ones removed, unless they have local changes.
+     * Take ARGS as command.
+     */
+    void sparseCheckout(String... args) {
+        if (args.length < 2) {
+            throw new GitletException("Incorrect operands.");
+        }
+        SparseCheckout sparse = SparseCheckout.load();
+        List<String> patterns = new ArrayList<>(sparse.getPatterns());
+        switch (args[1]) {
+        case "list":
+            if (args.length != 2) {
+                throw new GitletException("Incorrect operands.");
+            }
+            for (String pattern : patterns) {
+                System.out.println(pattern);
+            }
+            return;
+        case "disable":
+            if (args.length != 2) {
+                throw new GitletException("Incorrect operands.");
+            }
+            patterns.clear();
+            break;
+        case "set":
+        case "add":
+            if (args.length < 3) {
+                throw new GitletException("Incorrect operands.");
+            }
+            if (args[1].equals("set")) {
+                patterns.clear();
+            }
+            for (int i = 2; i < args.length; i += 1) {
+                patterns.add(args[i]);
+            }
+            break;
+        default:
+            throw new GitletException("Incorrect operands.");
+        }
+        applySparseCheckout(SparseCheckout.save(patterns));
+    }
+
+    /**
+     * Brings the working directory in line with SPARSE: files of the
+     * staging area that it includes are written if missing, and those it
+     * excludes are deleted if they match their staged version.
+     */
+    private void applySparseCheckout(SparseCheckout sparse) {
+        Stage stage = Stage.load(Branch.load().getName());
+        Map<String, String> fileInfos = stage.getFileInfos();
+        List<String> blobHashes = new ArrayList<>();
+        for (String fileName : fileInfos.keySet()) {
+            if (sparse.includes(fileName)
+                    && !new File(CWD, fileName).exists()) {
+                blobHashes.add(fileInfos.get(fileName));
+            }
+        }
+        Stage.fetchBlobs(blobHashes);
+        for (String fileName : fileInfos.keySet()) {
+            File file = new File(CWD, fileName);
+            String fileHash = fileInfos.get(fileName);
+            if (sparse.includes(fileName)) {
+                if (!file.exists()) {
+                    Blob.load(fileHash, null).writeTo(file);
+                }
+            } else if (file.isFile() && Blob.matches(fileHash, fileName,
+                    Utils.readContents(file))) {
+                Utils.restrictedDelete(file);
+            }
+        }
     }
 
     /**
@@ -270,11 +540,11 @@ public class Gitlet {
      * string-comparison order (the asterisk doesn't count).
      */
     private void printBranches(String currentBranchName) {
-        for (String fileName: Utils.plainFilenamesIn(HEADS_FOLDER)) {
-            if (fileName.equals(currentBranchName)) {
+        for (Branch branch : Branch.loadAll()) {
+            if (branch.getName().equals(currentBranchName)) {
                 System.out.print('*');
             }
-            System.out.println(fileName);
+            System.out.println(branch.getName());
         }
     }
 
@@ -315,8 +585,13 @@ public class Gitlet {
             throw new GitletException("File does not exist in that commit.");
         }
 
+        if (!SparseCheckout.load().includes(fileName)) {
+            throw new GitletException(
+                    "File is excluded by the sparse-checkout patterns.");
+        }
+
         Stage stage = Stage.load(branch.getName());
-        stage.checkout(fileHash);
+        stage.checkout(fileName, fileHash);
         stage.save();
     }
 
@@ -353,6 +628,7 @@ public class Gitlet {
         stage.save();
 
         Utils.writeContents(HEAD_FILE, branchName);
+        Reflog.record(Reflog.HEAD, currentBranch.getHead(), givenCommitHash);
     }
 
     /**
@@ -380,6 +656,66 @@ public class Gitlet {
         stage.save();
     }
 
+    /**
+     * With no operands, lists the tags in name order. With a name and
+     * optionally a commit, creates a lightweight tag of that commit or of
+     * the head of the current branch. With -a NAME -m MESSAGE, creates an
+     * annotated tag instead. With -d NAME, deletes the tag. With -n, lists
+     * each tag with the first line of its message, or of its commit's if it
+     * is lightweight.
+     * Take ARGS as command.
+     */
+    void tag(String... args) {
+        if (args.length == 1 || (args.length == 2 && args[1].equals("-n"))) {
+            for (Map.Entry<String, String> tag : Tag.peelAll().entrySet()) {
+                if (args.length == 1) {
+                    System.out.println(tag.getKey());
+                    continue;
+                }
+                String hash = Tag.objectOf(tag.getKey());
+                String message = hash == null
+                        ? Commit.load(tag.getValue()).getMessage()
+                        : Tag.load(hash).getMessage();
+                System.out.printf("%-15s %s%n", tag.getKey(),
+                        message.split("\n", 2)[0]);
+            }
+            return;
+        }
+        if (args[1].equals("-d")) {
+            if (args.length != 3) {
+                throw new GitletException("Incorrect operands.");
+            }
+            if (!Tag.remove(args[2])) {
+                throw new GitletException("A tag with that name does not "
+                    + "exist.");
+            }
+            return;
+        }
+        boolean annotated = args[1].equals("-a");
+        int commitIndex = annotated ? 5 : 2;
+        if (args.length < commitIndex || args.length > commitIndex + 1
+                || (annotated && !args[3].equals("-m"))) {
+            throw new GitletException("Incorrect operands.");
+        }
+        String name = annotated ? args[2] : args[1];
+        if (name.isEmpty() || name.startsWith("-")) {
+            throw new GitletException("Incorrect operands.");
+        }
+        Commit commit = Commit.load(args.length > commitIndex
+                ? args[commitIndex] : Branch.load().getHead());
+        if (commit == null) {
+            throw new GitletException("No commit with that id exists.");
+        }
+        if (annotated) {
+            if (args[4].isEmpty()) {
+                throw new GitletException("Please enter a tag message.");
+            }
+            Tag.create(new Tag(name, commit.getHash(), args[4]));
+        } else {
+            Tag.create(name, commit.getHash());
+        }
+    }
+
     /**
      * Deletes the branch with the given BRANCHNAME. This only means to delete
      * the pointer associated with the branch; it does not mean to delete all
@@ -427,18 +763,22 @@ public class Gitlet {
         stage.checkout(commit);
         stage.save();
 
-        branch.saveHead(commitHash);
+        branch.saveHead(commit.getHash());
     }
 
     /**
      * Merges files from the given branch GIVENBRANCHNAME into the current
-     * branch.
+     * branch. Given several branches, makes an octopus merge of them all.
      * Take ARGS as command.
      */
     void merge(String... args) {
-        if (args.length != 2) {
+        if (args.length < 2) {
             throw new GitletException("Incorrect operands.");
         }
+        if (args.length > 2) {
+            mergeOctopus(args);
+            return;
+        }
         String givenBranchName = args[1];
         Branch currentBranch = Branch.load();
         Stage currentStage = Stage.load(currentBranch.getName());
@@ -488,12 +828,333 @@ public class Gitlet {
         }
 
         Commit mergeCommit = MergeOperations.merge(currentStage,
-                currentLastCommit, givenLastCommit, splitPointCommit);
+                currentLastCommit, Collections.singletonList(givenLastCommit),
+                splitPointCommit);
+
+        currentStage.save();
+        currentBranch.saveHead(mergeCommit.getHash());
+    }
+
+    /**
+     * Merges the given branches into the current branch in one commit whose
+     * parents are the current head and then the given heads, in order. All
+     * the trees are merged in memory from the split point they share and
+     * the result is checked out once. Given branches the current branch
+     * already contains are left out; if only one is left, it is merged as
+     * usual.
+     * Take ARGS as command.
+     */
+    private void mergeOctopus(String... args) {
+        Branch currentBranch = Branch.load();
+        Stage currentStage = Stage.load(currentBranch.getName());
+        if (currentStage.isChanged()) {
+            throw new GitletException("You have uncommitted changes.");
+        }
 
+        Commit currentLastCommit = Commit.load(currentBranch.getHead());
+        Map<String, Integer> currentCommitHistory = new HashMap<>();
+        MergeOperations.addToCommitHistory(currentCommitHistory,
+                currentLastCommit.getHash(), 1, COMMITS_FOLDER);
+        List<String> givenBranchNames = new ArrayList<>();
+        List<Commit> givenLastCommits = new ArrayList<>();
+        Set<String> givenHeads = new HashSet<>();
+        for (int i = 1; i < args.length; i += 1) {
+            Branch givenBranch = Branch.load(args[i]);
+            if (givenBranch == null) {
+                throw new GitletException("A branch with that name does not "
+                    + "exist.");
+            }
+            if (args[i].equals(currentBranch.getName())) {
+                throw new GitletException("Cannot merge a branch with "
+                    + "itself.");
+            }
+            String givenHead = givenBranch.getHead();
+            if (!currentCommitHistory.containsKey(givenHead)
+                    && givenHeads.add(givenHead)) {
+                givenBranchNames.add(args[i]);
+                givenLastCommits.add(Commit.load(givenHead));
+            }
+        }
+        if (givenBranchNames.isEmpty()) {
+            throw new GitletException("Given branch is an ancestor of the "
+                + "current branch.");
+        }
+        if (givenBranchNames.size() == 1) {
+            merge("merge", givenBranchNames.get(0));
+            return;
+        }
+
+        for (String fileName : Utils.plainFilenamesIn(CWD)) {
+            for (Commit givenLastCommit : givenLastCommits) {
+                if (!currentStage.getTracked().containsKey(fileName)
+                        && givenLastCommit.containsFile(fileName)) {
+                    throw new GitletException("There is an untracked file in "
+                        + "the way; delete it, or add and commit it first.");
+                }
+            }
+        }
+
+        List<Commit> lastCommits = new ArrayList<>(givenLastCommits);
+        lastCommits.add(0, currentLastCommit);
+        String splitPointHead =
+                MergeOperations.getSplitPointHeadMerged(lastCommits);
+        if (splitPointHead == null) {
+            return;
+        }
+
+        currentStage.setMergedBranchName(String.join(", ", givenBranchNames));
+        Commit mergeCommit = MergeOperations.merge(currentStage,
+                currentLastCommit, givenLastCommits,
+                Commit.load(splitPointHead));
         currentStage.save();
         currentBranch.saveHead(mergeCommit.getHash());
     }
 
+    /**
+     * Applies the changes the given commit made to its parent on top of the
+     * current branch, as a new commit with the same message. Conflicts are
+     * committed with markers, as in merge.
+     * Take ARGS as command.
+     */
+    void cherryPick(String... args) {
+        if (args.length != 2) {
+            throw new GitletException("Incorrect operands.");
+        }
+        Commit commit = Commit.load(args[1]);
+        if (commit == null) {
+            throw new GitletException("No commit with that id exists.");
+        }
+        if (commit.isMerged()) {
+            throw new GitletException("Cannot cherry-pick a merge commit.");
+        }
+        Branch branch = Branch.load();
+        Stage stage = Stage.load(branch.getName());
+        if (stage.isChanged()) {
+            throw new GitletException("You have uncommitted changes.");
+        }
+
+        Commit head = Commit.load(branch.getHead());
+        Commit result = replay(stage, head,
+                Collections.singletonList(commit));
+        if (result == head) {
+            throw new GitletException("No changes added to the commit.");
+        }
+        stage.moveTo(result);
+        stage.save();
+        branch.saveHead(result.getHash());
+    }
+
+    /**
+     * Replays the commits of the current branch that the given branch lacks
+     * on top of the given branch, following first parents, and moves the
+     * current branch to the last of them. The commits are merged in memory
+     * one after another and only the result is checked out; commits whose
+     * changes the given branch already has are dropped. A commit that
+     * conflicts is committed with markers, as in merge, and the rebase
+     * stops there, naming the commits left to cherry-pick once the
+     * conflict is resolved.
+     * Take ARGS as command.
+     */
+    void rebase(String... args) {
+        if (args.length != 2) {
+            throw new GitletException("Incorrect operands.");
+        }
+        String upstreamName = args[1];
+        Branch upstream = Branch.load(upstreamName);
+        if (upstream == null) {
+            throw new GitletException("A branch with that name does not "
+                + "exist.");
+        }
+        Branch branch = Branch.load();
+        if (upstreamName.equals(branch.getName())) {
+            throw new GitletException("Cannot rebase a branch onto itself.");
+        }
+        Stage stage = Stage.load(branch.getName());
+        if (stage.isChanged()) {
+            throw new GitletException("You have uncommitted changes.");
+        }
+
+        ObjectIndex index = ObjectIndex.load(GITLET_FOLDER);
+        BitSet upstreamObjects = index.reachableFrom(upstream.getHead());
+        List<Commit> commits = new ArrayList<>();
+        String hash = branch.getHead();
+        while (hash != null && !upstreamObjects.get(
+                index.position(ObjectIndex.COMMITS, hash))) {
+            Commit commit = Commit.load(hash);
+            commits.add(commit);
+            hash = commit.getParent();
+        }
+        if (upstream.getHead().equals(hash)) {
+            throw new GitletException("Current branch is up to date.");
+        }
+        Commit onto = Commit.load(upstream.getHead());
+        if (commits.isEmpty()) {
+            stage.moveTo(onto);
+            stage.save();
+            branch.saveHead(onto.getHash());
+            throw new GitletException("Current branch is fast-forwarded.");
+        }
+
+        Collections.reverse(commits);
+        Commit result = replay(stage, onto, commits);
+        stage.moveTo(result);
+        stage.save();
+        branch.saveHead(result.getHash());
+    }
+
+    /**
+     * Returns the last of the commits made by replaying COMMITS in order on
+     * top of ONTO, each as the changes from its first parent, or ONTO if
+     * none of them changes anything. The trees are merged in memory, without
+     * touching the working directory or any stage, and nothing is saved
+     * until the result is known not to overwrite a file STAGE does not
+     * track. Replaying stops after the first commit that conflicts, and the
+     * commits after it are listed.
+     */
+    private Commit replay(Stage stage, Commit onto, List<Commit> commits) {
+        Map<String, String> ontoFileInfos = onto.getFileInfos();
+        List<Commit> made = new ArrayList<>();
+        TreeMerge conflicted = null;
+        int stopped = commits.size();
+        for (int i = 0; i < commits.size(); i += 1) {
+            Commit commit = commits.get(i);
+            Map<String, String> parentFileInfos = new TreeMap<>();
+            if (commit.getParent() != null) {
+                parentFileInfos =
+                        Commit.load(commit.getParent()).getFileInfos();
+            }
+            TreeMerge merge = new TreeMerge(parentFileInfos, ontoFileInfos,
+                    commit.getFileInfos());
+            if (merge.getFileInfos().equals(ontoFileInfos)) {
+                continue;
+            }
+            Stage replayed = new Stage(null);
+            replayed.stageTree(ontoFileInfos, merge.getFileInfos());
+            onto = new Commit(commit.getMessage(), replayed, onto.getHash());
+            made.add(onto);
+            ontoFileInfos = merge.getFileInfos();
+            if (merge.isConflicted()) {
+                conflicted = merge;
+                stopped = i;
+                break;
+            }
+        }
+
+        stage.checkUntracked(ontoFileInfos);
+        if (conflicted != null) {
+            conflicted.saveBlobs();
+        }
+        for (Commit commit : made) {
+            commit.save();
+        }
+        if (conflicted != null) {
+            System.out.println("Encountered a merge conflict.");
+            if (stopped + 1 < commits.size()) {
+                System.out.println("Stopped after "
+                        + commits.get(stopped).getHash()
+                        + "; resolve the conflict, commit, and cherry-pick:");
+                for (Commit rest : commits.subList(stopped + 1,
+                        commits.size())) {
+                    System.out.println(rest.getHash());
+                }
+            }
+        }
+        return onto;
+    }
+
+    /**
+     * With no operands or push, sets the staged and working changes aside
+     * on the stash and brings the working directory back to the head commit.
+     * With pop, applies the newest stash entry and drops it. With list,
+     * prints the entries, newest first.
+     * Take ARGS as command.
+     */
+    void stash(String... args) {
+        String action = args.length == 1 ? "push" : args[1];
+        if (args.length > 2) {
+            throw new GitletException("Incorrect operands.");
+        }
+        Branch branch = Branch.load();
+        Stage stage = Stage.load(branch.getName());
+        Stash stash = Stash.load();
+        switch (action) {
+        case "push":
+            WorkingTree tree = WorkingTree.load();
+            if (!stash.push(branch, stage, tree)) {
+                System.out.println("No local changes to save.");
+                return;
+            }
+            break;
+        case "pop":
+            if (stash.getEntries().isEmpty()) {
+                throw new GitletException("No stash entries found.");
+            }
+            if (stage.isChanged()) {
+                throw new GitletException("You have uncommitted changes.");
+            }
+            if (stash.pop(Commit.load(branch.getHead()), stage,
+                    WorkingTree.load())) {
+                System.out.println("Encountered a merge conflict.");
+            }
+            break;
+        case "list":
+            List<String> entries = stash.getEntries();
+            for (int i = 0; i < entries.size(); i += 1) {
+                System.out.printf("stash@{%d}: %s%n", i,
+                        Commit.load(entries.get(i)).getMessage());
+            }
+            return;
+        default:
+            throw new GitletException("Incorrect operands.");
+        }
+        stage.save();
+        stash.save();
+    }
+
+    /**
+     * Prints where the given branch, or HEAD, has pointed, newest first, as
+     * the abbreviated commit, the name by which it can be given to other
+     * commands, and the command that moved it there.
+     * Take ARGS as command.
+     */
+    void reflog(String... args) {
+        if (args.length > 2) {
+            throw new GitletException("Incorrect operands.");
+        }
+        String name = args.length == 2 ? args[1] : Reflog.HEAD;
+        if (!name.equals(Reflog.HEAD) && !Branch.exists(name)) {
+            throw new GitletException("A branch with that name does not "
+                + "exist.");
+        }
+        List<Reflog.Entry> entries = Reflog.read(name, Integer.MAX_VALUE);
+        for (int i = 0; i < entries.size(); i += 1) {
+            System.out.printf("%s %s@{%d}: %s%n",
+                    entries.get(i).getNewHash().substring(0, 7), name, i,
+                    entries.get(i).getAction());
+        }
+    }
+
+    /**
+     * Prints each line of the given file as of the given commit, or the head
+     * of the current branch, with the commit it comes from.
+     * Take ARGS as command.
+     */
+    void blame(String... args) {
+        if (args.length != 2 && args.length != 3) {
+            throw new GitletException("Incorrect operands.");
+        }
+        String fileName = args[args.length - 1];
+        Commit commit = Commit.load(args.length == 3 ? args[1]
+                : Branch.load().getHead());
+        if (commit == null) {
+            throw new GitletException("No commit with that id exists.");
+        }
+        if (!commit.containsFile(fileName)) {
+            throw new GitletException("File does not exist in that commit.");
+        }
+        System.out.print(new Blame(commit, fileName));
+    }
+
     /**
      * Saves the given login information under the given REMOTENAME.
      * Attempts to push or pull from the given remote name will then attempt
@@ -555,126 +1216,87 @@ public class Gitlet {
         String branchName = args[2];
         Config config = Config.load();
         Remote remote = config.findRemote(remoteName);
-        String remoteDir = remote.getDirectory();
-        if (!new File(remoteDir).exists()) {
-            throw new GitletException("Remote directory not found.");
-        }
-        Branch currentBranch = Branch.load();
-        String head = currentBranch.getHead();
-        String givenBranchName = remoteName + "/" + branchName;
-        Branch givenBranch = Branch.load(givenBranchName);
-        if (givenBranch == null) {
-            throw new GitletException("Please pull down remote changes before"
-                + " pushing.");
-        }
-        HashMap<String, Integer> commitHistory = new HashMap<>();
-        MergeOperations.addToCommitHistory(commitHistory,
-                head, 1, COMMITS_FOLDER);
-        File remoteCommitsFolder = remote.getCommitsFolder();
-        File remoteObjsFolder = remote.getObjectsFolder();
-        Set<String> commitHashes = commitHistory.keySet();
-        for (String commitHash : commitHashes) {
-            Commit commit = Commit.load(commitHash, COMMITS_FOLDER);
-            if (commit != null) {
-                commit.save(remoteCommitsFolder);
-                HashMap<String, String> fileInfos = commit.getFileInfos();
-                Set<String> fileNameHashSet = fileInfos.keySet();
-                for (String fileName : fileNameHashSet) {
-                    Blob blob = Blob.load(fileInfos.get(fileName), OBJS_FOLDER);
-                    if (blob != null) {
-                        blob.save(remoteObjsFolder);
-                    }
-                }
-            }
-        }
-        Commit commit = Commit.load(head, remoteCommitsFolder);
-        Map<String, String> fileInfos = commit.getFileInfos();
-        Set<String> fileNameHashSet = fileInfos.keySet();
-        for (String fileName : fileNameHashSet) {
-            Blob blob = Blob.load(fileInfos.get(fileName), remoteObjsFolder);
-            if (blob != null) {
-                Utils.writeContents(Utils.join(
-                    new File(remote.getDirectory()).getParentFile(), fileName),
-                    blob.getFileContents());
+        try (Transport transport = Transport.open(remote)) {
+            checkHashAlgorithm(transport);
+            Branch currentBranch = Branch.load();
+            String head = currentBranch.getHead();
+            String givenBranchName = remoteName + "/" + branchName;
+            Branch givenBranch = Branch.load(givenBranchName);
+            if (givenBranch == null) {
+                throw new GitletException("Please pull down remote changes "
+                    + "before pushing.");
             }
+            String remoteHead = transport.readHead(branchName);
+            pushCommits(transport, branchName, head, remoteHead);
         }
-        removeRemoteFile(remote, commit);
-        remote.saveBranchHead(branchName, head);
     }
 
     /**
-     * Remove remote files with REMOTE and COMMIT
+     * Sends the commits and blobs reachable from HEAD but not from the
+     * remote's current REMOTEHEAD through TRANSPORT, and moves the remote's
+     * branch BRANCHNAME from REMOTEHEAD to HEAD.
      */
-    void removeRemoteFile(Remote remote, Commit commit) {
-        Map<String, String> removedFileInfos = commit.getRemovedFileInfos();
-        Set<String> removedFileINameHashSet = removedFileInfos.keySet();
-        for (String removedFileName : removedFileINameHashSet) {
-            File file = Utils.join(new File(remote.getDirectory())
-                    .getParentFile(), removedFileName);
-            if (file.exists()) {
-                file.delete();
+    private void pushCommits(Transport transport, String branchName,
+                             String head, String remoteHead) {
+        ObjectIndex index = ObjectIndex.load(GITLET_FOLDER);
+        BitSet objects = index.reachableFromExcept(head, remoteHead);
+        if (!index.getMissingBlobs().isEmpty()) {
+            if (!Promisor.fetchBlobs(index.getMissingBlobs())) {
+                throw new GitletException("Some files to push are missing "
+                        + "from this partial clone and its promisor remotes.");
             }
+            index.getMissingBlobs().clear();
+            objects = index.reachableFromExcept(head, remoteHead);
         }
+        transport.push(index, objects, branchName, remoteHead, head);
     }
 
     /**
-     * Fetches with REMOTENAME and REMOTEBRANCHNAME.
+     * Fetches with REMOTENAME and REMOTEBRANCHNAME. With --filter=blob:none,
+     * only commits are fetched and the remote becomes a promisor, from which
+     * blobs are fetched when first needed.
      * Take ARGS as command.
      */
     void fetch(String... args) {
-        if (args.length != 3) {
+        boolean partial = args.length == 4
+                && args[1].equals("--filter=blob:none");
+        if (args.length != 3 && !partial) {
             throw new GitletException("Incorrect operands.");
         }
-        String remoteName = args[1];
-        String branchName = args[2];
+        String remoteName = args[args.length - 2];
+        String branchName = args[args.length - 1];
 
         Config config = Config.load();
         Remote remote = config.findRemote(remoteName);
-        String remoteDir = remote.getDirectory();
-        if (!new File(remoteDir).exists()) {
-            throw new GitletException("Remote directory not found.");
-        }
-
-        Branch remoteBranch = Branch.load(branchName, remote.getHeadsFolder());
-        if (remoteBranch == null) {
-            throw new GitletException("That remote does not have that branch.");
-        }
-        String head = remoteBranch.getHead();
+        try (Transport transport = Transport.open(remote)) {
+            checkHashAlgorithm(transport);
+            if (partial && !remote.isPromisor()) {
+                remote.setPromisor();
+                config.save();
+            }
 
-        String givenBranchName = remoteName + "/" + branchName;
-        Branch givenBranch = new Branch(givenBranchName, head);
+            String head = transport.readHead(branchName);
+            if (head == null) {
+                throw new GitletException(
+                        "That remote does not have that branch.");
+            }
+            String givenBranchName = remoteName + "/" + branchName;
+            Branch givenBranch = new Branch(givenBranchName, head);
 
-        fetch(remote, head, givenBranch);
+            fetch(transport, head, givenBranch, partial);
+        }
     }
 
     /**
-     * Fetches with given REMOTE name, HEAD and GIVENBRANCH.
+     * Fetches through TRANSPORT the given HEAD as GIVENBRANCH. If PARTIAL,
+     * only commits are copied, and blobs are left to be fetched when needed.
      */
-    private void fetch(Remote remote, String head, Branch givenBranch) {
-        File remoteCommitsFolder = remote.getCommitsFolder();
-        File remoteObjsFolder = remote.getObjectsFolder();
-
-        HashMap<String, Integer> commitHistory = new HashMap<>();
-        MergeOperations.addToCommitHistory(commitHistory, head, 1,
-                remoteCommitsFolder);
-
-        Set<String> commitHashes = commitHistory.keySet();
-        for (String commitHash : commitHashes) {
-            Commit commit = Commit.load(commitHash, remoteCommitsFolder);
-            if (commit != null) {
-                commit.save(COMMITS_FOLDER);
-                HashMap<String, String> fileInfos = commit.getFileInfos();
-                Set<String> fileNameHashSet = fileInfos.keySet();
-                for (String fileName : fileNameHashSet) {
-                    Blob blob = Blob.load(fileInfos.get(fileName),
-                            remoteObjsFolder);
-                    if (blob != null) {
-                        blob.save(OBJS_FOLDER);
-                    }
-                }
-            }
-
-        }
+    private void fetch(Transport transport, String head, Branch givenBranch,
+                       boolean partial) {
+        Branch trackingBranch = Branch.load(givenBranch.getName());
+        transport.fetch(head,
+                trackingBranch == null ? null : trackingBranch.getHead(),
+                partial);
         givenBranch.saveHead(head);
         Utils.writeContents(FETCH_HEAD_FILE, givenBranch.getName());
     }
@@ -693,20 +1315,19 @@ public class Gitlet {
         Stage currentStage = Stage.load(currentBranch.getName());
         Config config = Config.load();
         Remote remote = config.findRemote(remoteName);
-        String remoteDir = remote.getDirectory();
-        if (!new File(remoteDir).exists()) {
-            throw new GitletException("Remote directory not found.");
-        }
-
-        Branch remoteBranch = Branch.load(branchName, remote.getHeadsFolder());
-        if (remoteBranch == null) {
-            throw new GitletException("That remote does not have that branch.");
-        }
-        String head = remoteBranch.getHead();
+        String head;
         String givenBranchName = remoteName + "/" + branchName;
-        Branch givenBranch = new Branch(givenBranchName, head);
+        try (Transport transport = Transport.open(remote)) {
+            checkHashAlgorithm(transport);
+            head = transport.readHead(branchName);
+            if (head == null) {
+                throw new GitletException(
+                        "That remote does not have that branch.");
+            }
+            Branch givenBranch = new Branch(givenBranchName, head);
+            fetch(transport, head, givenBranch, remote.isPromisor());
+        }
         currentStage.setMergedBranchName(givenBranchName);
-        fetch(remote, head, givenBranch);
         Commit givenLastCommit = Commit.load(head);
         Commit currentLastCommit = Commit.load(currentBranch.getHead());
         List<String> fileNames = Utils.plainFilenamesIn(CWD);
@@ -732,11 +1353,199 @@ public class Gitlet {
             throw new GitletException("Current branch is fast-forwarded.");
         }
         Commit mergeCommit = MergeOperations.merge(currentStage,
-                currentLastCommit, givenLastCommit, splitPointCommit);
+                currentLastCommit, Collections.singletonList(givenLastCommit),
+                splitPointCommit);
         currentStage.save();
         currentBranch.saveHead(mergeCommit.getHash());
     }
 
+    /**
+     * Serves this repository to remotes of other repositories that name it
+     * with exec: or socket: (see Transport): with no operands, over standard
+     * input and output until the client is done; with --port=PORT, over
+     * connections to PORT of the loopback interface until stopped.
+     * Take ARGS as command.
+     */
+    void serve(String... args) {
+        PackServer server = new PackServer(GITLET_FOLDER);
+        try {
+            if (args.length == 1) {
+                server.serve(System.in, System.out);
+            } else if (args.length == 2 && args[1].startsWith("--port=")) {
+                server.listen(Integer.parseInt(
+                        args[1].substring("--port=".length())));
+            } else {
+                throw new GitletException("Incorrect operands.");
+            }
+        } catch (NumberFormatException excp) {
+            throw new GitletException("Incorrect operands.");
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /**
+     * Finds the commits, blobs and chunks that no branch head, tag, reflog
+     * entry, staging area or stash entry can reach, along with the commits
+     * of dropped stash entries, and reports how many there are and how many
+     * bytes they take. With --prune, also deletes them, after emptying the
+     * journal so that no replay writes them back. Either way, stores
+     * the reachability bitmaps of all branch heads for later pushes and
+     * fetches. Branch heads are packed by pack-refs, not here.
+     * Take ARGS as command.
+     */
+    void gc(String... args) {
+        boolean prune = args.length == 2 && args[1].equals("--prune");
+        if (args.length > 2 || (args.length == 2 && !prune)) {
+            throw new GitletException("Incorrect operands.");
+        }
+        ObjectIndex index = ObjectIndex.load(GITLET_FOLDER);
+        index.scan();
+        BitSet reachable = new BitSet(index.size());
+        List<String> heads = branchHeads();
+        List<String> roots = new ArrayList<>(heads);
+        Stash stash = Stash.load();
+        roots.addAll(stash.getEntries());
+        Set<String> stashCommits = new HashSet<>();
+        for (Commit commit : stash.getCommits()) {
+            stashCommits.add(commit.getHash());
+            roots.addAll(commit.getParents());
+            for (String blobHash : commit.getFileInfos().values()) {
+                index.markBlob(blobHash, reachable);
+            }
+        }
+        roots.addAll(Tag.peelAll().values());
+        roots.addAll(Reflog.hashes());
+        index.markReachable(roots, reachable);
+        for (String stageName : Utils.plainFilenamesIn(STAGE_FOLDER)) {
+            Stage stage = Stage.load(Branch.branchName(stageName));
+            for (String blobHash : stage.getFileInfos().values()) {
+                index.markBlob(blobHash, reachable);
+            }
+        }
+
+        if (prune) {
+            Journal.checkpoint(GITLET_FOLDER);
+        }
+        int commits = 0;
+        int blobs = 0;
+        int chunks = 0;
+        long bytes = 0;
+        for (int i = reachable.nextClearBit(0); i < index.size();
+             i = reachable.nextClearBit(i + 1)) {
+            if (index.isCommit(i)) {
+                commits += 1;
+            } else if (index.isBlob(i)) {
+                blobs += 1;
+            } else {
+                chunks += 1;
+            }
+            File file = index.file(i);
+            bytes += file.length();
+            if (prune) {
+                file.delete();
+            }
+        }
+        List<String> stashed = Utils.plainFilenamesIn(Stash.COMMITS_FOLDER);
+        if (stashed != null) {
+            for (String hash : stashed) {
+                if (stashCommits.contains(hash)) {
+                    continue;
+                }
+                File file = Utils.join(Stash.COMMITS_FOLDER, hash);
+                commits += 1;
+                bytes += file.length();
+                if (prune) {
+                    file.delete();
+                }
+            }
+        }
+        System.out.printf("%s %d commits, %d blobs and %d chunks (%d bytes)."
+                + "%n", prune ? "Removed" : "Unreachable:", commits, blobs,
+                chunks, bytes);
+
+        if (prune) {
+            index = ObjectIndex.rebuild(GITLET_FOLDER);
+        }
+        for (String head : heads) {
+            index.reachableFrom(head);
+        }
+        index.save(heads);
+    }
+
+    /**
+     * Moves all branch heads into the packed-refs file, so that branches
+     * are listed and found without a file per branch.
+     * Take ARGS as command.
+     */
+    void packRefs(String... args) {
+        if (args.length != 1) {
+            throw new GitletException("Incorrect operands.");
+        }
+        Branch.packAll();
+    }
+
+    /**
+     * Checks every stored object and the links between them, printing each
+     * problem found and then a summary. Progress is reported while
+     * checking if standard error is a terminal.
+     * Take ARGS as command.
+     */
+    void fsck(String... args) {
+        if (args.length != 1) {
+            throw new GitletException("Incorrect operands.");
+        }
+        Fsck fsck = new Fsck(GITLET_FOLDER, Promisor.hasPromisors());
+        for (Branch branch : Branch.loadAll()) {
+            fsck.checkBranch(branch.getName(), branch.getHead());
+        }
+        List<String> problems = fsck.run(System.console() != null);
+        for (String problem : problems) {
+            System.out.println(problem);
+        }
+        System.out.printf("Checked %d objects (%d commits, %d blobs, %d "
+                + "chunks): %d problems.%n", fsck.getChecked(),
+                fsck.getCommits(), fsck.getBlobs(), fsck.getChunks(),
+                problems.size());
+        if (fsck.getLegacy() > 0) {
+            System.out.printf("%d commits were made by an older version, "
+                    + "whose hashes do not cover their parents, so their "
+                    + "parents could not be checked.%n", fsck.getLegacy());
+        }
+        if (fsck.getUnchecked() > 0) {
+            System.out.printf("%d of them could not be checked at all, as "
+                    + "their files were read back in another order.%n",
+                    fsck.getUnchecked());
+        }
+        if (fsck.getPromised() > 0) {
+            System.out.printf("%d blobs are left to promisor remotes.%n",
+                    fsck.getPromised());
+        }
+    }
+
+    /**
+     * Checks that the remote reached through TRANSPORT names its objects
+     * with the same hash as this repository, since objects cannot be
+     * exchanged otherwise.
+     */
+    private void checkHashAlgorithm(Transport transport) {
+        if (transport.hashAlgorithm() != HashAlgorithm.objects()) {
+            throw new GitletException(
+                    "Remote uses a different hash algorithm.");
+        }
+    }
+
+    /**
+     * Returns the heads of all branches, including remote-tracking ones.
+     */
+    private List<String> branchHeads() {
+        List<String> heads = new ArrayList<>();
+        for (Branch branch : Branch.loadAll()) {
+            heads.add(branch.getHead());
+        }
+        return heads;
+    }
+
     /**
      * Creates a new branch with NAME and HEAD.
      */
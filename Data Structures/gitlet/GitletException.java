@@ -8,6 +8,8 @@ package gitlet;
  */
 class GitletException extends RuntimeException {
 
+    /** Version of the serialized form, that of the original class. */
+    private static final long serialVersionUID = -1679980020093532642L;
 
     /**
      * A GitletException with no message.
@@ -0,0 +1,334 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/** A hash function producing hexadecimal ids.
+ *  Each repository names its object hash in .gitlet/hash-algorithm when it
+ *  is initialized, SHA-1 (the default, and what repositories without the
+ *  file use) or SHA-256; commits, blobs and chunks are named with it.
+ *  Internal checksums that no other repository sees, such as the journal's,
+ *  use FAST, a 128-bit MurmurHash3, which is not cryptographic but is many
+ *  times faster.
+ *  @author Erin Lee
+ */
+abstract class HashAlgorithm {
+
+    /** Name of the file naming the object hash inside a .gitlet folder. */
+    static final String ALGORITHM_FILE = "hash-algorithm";
+
+    /** SHA-1, the default object hash. */
+    static final HashAlgorithm SHA1 = new Digest("sha1", "SHA-1", 40);
+
+    /** SHA-256. */
+    static final HashAlgorithm SHA256 = new Digest("sha256", "SHA-256", 64);
+
+    /** MurmurHash3 x64 128, for internal checksums. */
+    static final HashAlgorithm FAST = new Murmur3();
+
+    /** Every algorithm, for benchmarks. */
+    static final HashAlgorithm[] ALL = { SHA1, SHA256, FAST };
+
+    /**
+     * An algorithm called NAME producing ids of HEXLENGTH digits.
+     */
+    HashAlgorithm(String name, int hexLength) {
+        _name = name;
+        _hexLength = hexLength;
+    }
+
+    /**
+     * Returns the name of this algorithm.
+     */
+    String getName() {
+        return _name;
+    }
+
+    /**
+     * Returns the number of hexadecimal digits in an id.
+     */
+    int getHexLength() {
+        return _hexLength;
+    }
+
+    /**
+     * Returns the id of the concatenation of VALS, which may be any mixture
+     * of byte arrays and Strings.
+     */
+    String hash(Object... vals) {
+        long start = Trace.start();
+        long length = 0;
+        byte[][] parts = new byte[vals.length][];
+        for (int i = 0; i < vals.length; i += 1) {
+            if (vals[i] instanceof byte[]) {
+                parts[i] = (byte[]) vals[i];
+            } else if (vals[i] instanceof String) {
+                parts[i] = ((String) vals[i])
+                        .getBytes(StandardCharsets.UTF_8);
+            } else {
+                throw new IllegalArgumentException("improper type to hash");
+            }
+            length += parts[i].length;
+        }
+        String id = hex(digest(parts));
+        Trace.end(Trace.HASH, start, length);
+        return id;
+    }
+
+    /**
+     * Returns the id of the concatenation of the remaining bytes of
+     * BUFFERS, which are left unchanged.
+     */
+    String hashBuffers(ByteBuffer... buffers) {
+        long start = Trace.start();
+        int size = 0;
+        for (ByteBuffer buffer : buffers) {
+            size += buffer.remaining();
+        }
+        byte[] bytes = new byte[size];
+        int offset = 0;
+        for (ByteBuffer buffer : buffers) {
+            int length = buffer.remaining();
+            buffer.duplicate().get(bytes, offset, length);
+            offset += length;
+        }
+        String id = hex(digest(bytes));
+        Trace.end(Trace.HASH, start, size);
+        return id;
+    }
+
+    /**
+     * Returns the digest of the concatenation of PARTS.
+     */
+    abstract byte[] digest(byte[]... parts);
+
+    /**
+     * Returns the algorithm called NAME, or null if there is none.
+     */
+    static HashAlgorithm forName(String name) {
+        for (HashAlgorithm algorithm : ALL) {
+            if (algorithm.getName().equals(name)) {
+                return algorithm;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the object hash of this repository.
+     */
+    static HashAlgorithm objects() {
+        if (_objects == null) {
+            _objects = of(Gitlet.GITLET_FOLDER);
+        }
+        return _objects;
+    }
+
+    /**
+     * Returns the object hash of the repository in GITLETFOLDER.
+     */
+    static HashAlgorithm of(File gitletFolder) {
+        File file = Utils.join(gitletFolder, ALGORITHM_FILE);
+        if (!Utils.exists(file)) {
+            return SHA1;
+        }
+        HashAlgorithm algorithm =
+                forName(Utils.readContentsAsString(file).trim());
+        if (algorithm == null) {
+            throw new GitletException("Unknown hash algorithm in "
+                    + file.getPath() + ".");
+        }
+        return algorithm;
+    }
+
+    /**
+     * Makes ALGORITHM the object hash of this repository, which is being
+     * initialized.
+     */
+    static void save(HashAlgorithm algorithm) {
+        Utils.writeContents(Utils.join(Gitlet.GITLET_FOLDER, ALGORITHM_FILE),
+                algorithm.getName() + "\n");
+        _objects = algorithm;
+    }
+
+    /**
+     * Returns BYTES as lower-case hexadecimal digits.
+     */
+    static String hex(byte[] bytes) {
+        char[] digits = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i += 1) {
+            digits[2 * i] = HEX_DIGITS[(bytes[i] >> 4) & 0xf];
+            digits[2 * i + 1] = HEX_DIGITS[bytes[i] & 0xf];
+        }
+        return new String(digits);
+    }
+
+    /** A hash from java.security. */
+    private static class Digest extends HashAlgorithm {
+
+        /**
+         * The algorithm called NAME, known to MessageDigest as JAVANAME, with
+         * ids of HEXLENGTH digits.
+         */
+        Digest(String name, String javaName, int hexLength) {
+            super(name, hexLength);
+            _javaName = javaName;
+        }
+
+        @Override
+        byte[] digest(byte[]... parts) {
+            MessageDigest md = messageDigest();
+            for (byte[] part : parts) {
+                md.update(part);
+            }
+            return md.digest();
+        }
+
+        /** Digests BUFFERS in place, without copying them. */
+        @Override
+        String hashBuffers(ByteBuffer... buffers) {
+            long start = Trace.start();
+            long size = 0;
+            MessageDigest md = messageDigest();
+            for (ByteBuffer buffer : buffers) {
+                size += buffer.remaining();
+                md.update(buffer.duplicate());
+            }
+            String id = hex(md.digest());
+            Trace.end(Trace.HASH, start, size);
+            return id;
+        }
+
+        /**
+         * Returns a new MessageDigest for this algorithm.
+         */
+        private MessageDigest messageDigest() {
+            try {
+                return MessageDigest.getInstance(_javaName);
+            } catch (NoSuchAlgorithmException excp) {
+                throw new IllegalArgumentException("System does not support "
+                        + _javaName);
+            }
+        }
+
+        /** Name of the algorithm in java.security. */
+        private final String _javaName;
+    }
+
+    /** MurmurHash3, x64 128-bit variant, with seed 0. */
+    private static class Murmur3 extends HashAlgorithm {
+
+        /** First mixing constant. */
+        private static final long C1 = 0x87c37b91114253d5L;
+
+        /** Second mixing constant. */
+        private static final long C2 = 0x4cf5ad432745937fL;
+
+        /**
+         * The algorithm.
+         */
+        Murmur3() {
+            super("murmur3-128", 32);
+        }
+
+        @Override
+        byte[] digest(byte[]... parts) {
+            byte[] data;
+            if (parts.length == 1) {
+                data = parts[0];
+            } else {
+                ByteArrayOutputStream joined = new ByteArrayOutputStream();
+                for (byte[] part : parts) {
+                    joined.write(part, 0, part.length);
+                }
+                data = joined.toByteArray();
+            }
+            ByteBuffer buffer =
+                    ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN);
+            long h1 = 0;
+            long h2 = 0;
+            int blocks = data.length / 16;
+            for (int i = 0; i < blocks; i += 1) {
+                long k1 = buffer.getLong(16 * i);
+                long k2 = buffer.getLong(16 * i + 8);
+                h1 ^= mixK1(k1);
+                h1 = Long.rotateLeft(h1, 27) + h2;
+                h1 = h1 * 5 + 0x52dce729;
+                h2 ^= mixK2(k2);
+                h2 = Long.rotateLeft(h2, 31) + h1;
+                h2 = h2 * 5 + 0x38495ab5;
+            }
+
+            long k1 = 0;
+            long k2 = 0;
+            int tail = 16 * blocks;
+            for (int i = data.length - 1; i >= tail; i -= 1) {
+                long b = data[i] & 0xffL;
+                if (i - tail >= 8) {
+                    k2 ^= b << (8 * (i - tail - 8));
+                } else {
+                    k1 ^= b << (8 * (i - tail));
+                }
+            }
+            if (data.length - tail > 8) {
+                h2 ^= mixK2(k2);
+            }
+            if (data.length > tail) {
+                h1 ^= mixK1(k1);
+            }
+
+            h1 ^= data.length;
+            h2 ^= data.length;
+            h1 += h2;
+            h2 += h1;
+            h1 = fmix(h1);
+            h2 = fmix(h2);
+            h1 += h2;
+            h2 += h1;
+            return ByteBuffer.allocate(16).putLong(h1).putLong(h2).array();
+        }
+
+        /**
+         * Returns the first lane's block K1 mixed.
+         */
+        private static long mixK1(long k1) {
+            return Long.rotateLeft(k1 * C1, 31) * C2;
+        }
+
+        /**
+         * Returns the second lane's block K2 mixed.
+         */
+        private static long mixK2(long k2) {
+            return Long.rotateLeft(k2 * C2, 33) * C1;
+        }
+
+        /**
+         * Returns K with its bits avalanched.
+         */
+        private static long fmix(long k) {
+            k ^= k >>> 33;
+            k *= 0xff51afd7ed558ccdL;
+            k ^= k >>> 33;
+            k *= 0xc4ceb9fe1a85ec53L;
+            k ^= k >>> 33;
+            return k;
+        }
+    }
+
+    /** Hexadecimal digits. */
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    /** Object hash of this repository, once known. */
+    private static HashAlgorithm _objects;
+
+    /** Name of the algorithm. */
+    private final String _name;
+
+    /** Number of hexadecimal digits in an id. */
+    private final int _hexLength;
+}
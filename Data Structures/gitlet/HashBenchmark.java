@@ -0,0 +1,55 @@
+package gitlet;
+
+import java.util.Random;
+
+/** Throughput of each HashAlgorithm on large inputs.
+ *  Run as java gitlet.HashBenchmark [MEGABYTES], which hashes a buffer of
+ *  random bytes of that size (default 64) with every algorithm, first a few
+ *  times untimed so the JIT compiles the hashing loops, then repeatedly for
+ *  about a second, and prints megabytes hashed per second.
+ *  @author Erin Lee
+ */
+public class HashBenchmark {
+
+    /** Untimed runs before measuring. */
+    private static final int WARMUP_RUNS = 3;
+
+    /** Minimum time to measure each algorithm for, in nanoseconds. */
+    private static final long MEASURE_NANOS = 1_000_000_000L;
+
+    /** Default input size, in megabytes. */
+    private static final int DEFAULT_MEGABYTES = 64;
+
+    /** Usage: java gitlet.HashBenchmark [MEGABYTES], with ARGS holding the
+     *  optional input size. */
+    public static void main(String... args) {
+        int megabytes = args.length > 0 ? Integer.parseInt(args[0])
+                : DEFAULT_MEGABYTES;
+        byte[] data = new byte[megabytes << 20];
+        new Random(0).nextBytes(data);
+
+        System.out.printf("%-12s %10s%n", "algorithm", "MB/s");
+        for (HashAlgorithm algorithm : HashAlgorithm.ALL) {
+            System.out.printf("%-12s %10.1f%n", algorithm.getName(),
+                    throughput(algorithm, data));
+        }
+    }
+
+    /**
+     * Returns the megabytes per second ALGORITHM hashes DATA at.
+     */
+    static double throughput(HashAlgorithm algorithm, byte[] data) {
+        for (int i = 0; i < WARMUP_RUNS; i += 1) {
+            algorithm.digest(data);
+        }
+        int runs = 0;
+        long start = System.nanoTime();
+        long elapsed;
+        do {
+            algorithm.digest(data);
+            runs += 1;
+            elapsed = System.nanoTime() - start;
+        } while (elapsed < MEASURE_NANOS);
+        return (double) data.length * runs / (1 << 20) / (elapsed / 1e9);
+    }
+}
@@ -0,0 +1,593 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/** Write-ahead journal for Gitlet.
+ *  While a command runs, writes and deletions of mutable repository files
+ *  (HEAD, branch heads, stages, config) are held here instead of going to
+ *  disk, and reads of those files see the held contents. Objects, commits
+ *  and chunks are immutable: they are written straight to their files,
+ *  without syncing, and their bytes are also appended to the journal, a
+ *  log in .gitlet/journal. When the command finishes, its held updates are
+ *  appended as one commit record, the log is synced, once, and only then
+ *  are the updates applied, again without syncing. A crash before the sync
+ *  leaves the repository as it was; after a crash at any later point,
+ *  replaying the log on the next command rewrites whatever objects and
+ *  files did not reach the disk. The log is only emptied once it outgrows
+ *  CHECKPOINT_SIZE, after the files it names have been synced.
+ *  Each record of the log is its length, its body and a hash of the body,
+ *  so that a record torn by a crash is recognized and dropped. A journal
+ *  belongs to the thread and command that began it and covers one
+ *  repository, so that a command writing to a second repository, such as
+ *  a push, opens a journal for that one as well.
+ *  Commands that only read run without the lock, under a journal begun by
+ *  beginReading. If a writer has synced its commit record but not yet
+ *  applied it all, or crashed in between, that journal shows the final
+ *  contents the log holds for each file, so the reader sees the writer's
+ *  updates whole rather than half applied. A writer that commits while a
+ *  reader runs can still be seen partly: files read before its commit
+ *  record was synced show the old state and files read after its updates
+ *  were applied show the new one, so only each file, not the repository,
+ *  is read as of one moment.
+ *  @author Erin Lee
+ */
+class Journal {
+
+    /** Name of the log inside a .gitlet folder. */
+    static final String FILE_NAME = "journal";
+
+    /** Size past which the log is emptied when a command finishes. */
+    private static final long CHECKPOINT_SIZE = 1 << 23;
+
+    /** Record of an immutable file written: its path, then its bytes. */
+    private static final byte OBJECT = 'O';
+
+    /** Record of the held updates of a command. */
+    private static final byte COMMIT = 'C';
+
+    /** Record marking that every record before it reached the files. */
+    private static final byte DONE = 'D';
+
+    /** Entry kind of a write. */
+    private static final byte WRITE = 'W';
+
+    /** Entry kind of a deletion. */
+    private static final byte DELETE = 'X';
+
+    /** Bytes of the hash that ends a record. */
+    private static final int CHECKSUM_SIZE =
+            2 + HashAlgorithm.FAST.getHexLength();
+
+    /** Folders under .gitlet whose files are never rewritten. */
+    private static final String[] IMMUTABLE_FOLDERS =
+        { "objects", "commits", "chunks", "tags", "stash-commits" };
+
+    /** Journals open on each thread, the innermost first. */
+    private static final ThreadLocal<ArrayDeque<Journal>> OPEN =
+            ThreadLocal.withInitial(ArrayDeque::new);
+
+    /**
+     * A new, empty journal of the repository in GITLETFOLDER.
+     */
+    private Journal(File gitletFolder) {
+        _gitletFolder = new File(key(gitletFolder));
+        _entries = new LinkedHashMap<>();
+    }
+
+    /**
+     * Starts holding updates of the mutable files of the repository in
+     * GITLETFOLDER until commit, and returns the journal holding them.
+     */
+    static Journal begin(File gitletFolder) {
+        Journal journal = new Journal(gitletFolder);
+        OPEN.get().push(journal);
+        return journal;
+    }
+
+    /**
+     * Starts a journal of the repository in GITLETFOLDER, as begin does, for
+     * a command that reads it without the lock. If the log has records that
+     * may not have reached the files yet, the final contents the log holds
+     * for each mutable file are read in place of the file.
+     */
+    static Journal beginReading(File gitletFolder) {
+        Journal journal = begin(gitletFolder);
+        if (pending(gitletFolder)) {
+            Map<File, byte[]> updates = new LinkedHashMap<>();
+            try (RandomAccessFile log = new RandomAccessFile(
+                    Utils.join(gitletFolder, FILE_NAME), "r")) {
+                scan(log, gitletFolder, false, updates, null);
+            } catch (IOException excp) {
+                journal.abort();
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+            for (Map.Entry<File, byte[]> update : updates.entrySet()) {
+                journal._logged.put(key(update.getKey()), update.getValue());
+            }
+        }
+        return journal;
+    }
+
+    /**
+     * Returns the innermost journal this thread has open on the repository
+     * FILE lies in, or null if there is none.
+     */
+    static Journal of(File file) {
+        String path = key(file);
+        for (Journal journal : OPEN.get()) {
+            if (path.startsWith(journal._gitletFolder.getPath()
+                    + File.separator)) {
+                return journal;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Appends the updates held by this journal to the log, syncs the log,
+     * then applies them and closes the journal. The log is emptied if it
+     * has grown past CHECKPOINT_SIZE.
+     */
+    void commit() {
+        OPEN.get().remove(this);
+        try {
+            if (_entries.isEmpty()) {
+                finish();
+                return;
+            }
+            append(encode());
+            _log.getChannel().force(false);
+            if (_logCreated) {
+                Utils.sync(_gitletFolder);
+            }
+            apply(_entries, false);
+            append(new byte[] { DONE });
+            if (_log.length() > CHECKPOINT_SIZE) {
+                checkpoint(_log, _gitletFolder);
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        } finally {
+            close();
+        }
+    }
+
+    /**
+     * Drops the updates held by this journal and closes it. Does nothing
+     * if it is already closed.
+     */
+    void abort() {
+        if (OPEN.get().remove(this)) {
+            try {
+                finish();
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            } finally {
+                close();
+            }
+        }
+    }
+
+    /**
+     * Finishes the work of commands on the repository in GITLETFOLDER that
+     * crashed after their updates were synced, and rewrites the objects and
+     * files that a crash of the system kept from reaching the disk. A torn
+     * record at the end of the log is dropped. The caller holds the lock.
+     */
+    static void recover(File gitletFolder) {
+        File file = Utils.join(gitletFolder, FILE_NAME);
+        if (!file.isFile()) {
+            return;
+        }
+        try (RandomAccessFile log = new RandomAccessFile(file, "rw")) {
+            Map<File, byte[]> updates = new LinkedHashMap<>();
+            long intact = scan(log, gitletFolder, true, updates, null);
+            apply(updates, true);
+            if (intact < log.length()) {
+                log.setLength(intact);
+            }
+            if (intact > 0 && !done(log)) {
+                log.seek(intact);
+                log.write(record(new byte[] { DONE }));
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /**
+     * Returns true if the log of the repository in GITLETFOLDER ends with
+     * records that may not have reached the files yet, because a command
+     * is writing or crashed.
+     */
+    static boolean pending(File gitletFolder) {
+        File file = Utils.join(gitletFolder, FILE_NAME);
+        if (!file.isFile() || file.length() == 0) {
+            return false;
+        }
+        try (RandomAccessFile log = new RandomAccessFile(file, "r")) {
+            return !done(log);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /**
+     * Makes every file the log of the repository in GITLETFOLDER names
+     * durable, then empties the log. The caller holds the lock, and no
+     * journal of the repository is open.
+     */
+    static void checkpoint(File gitletFolder) {
+        File file = Utils.join(gitletFolder, FILE_NAME);
+        if (!file.isFile()) {
+            return;
+        }
+        try (RandomAccessFile log = new RandomAccessFile(file, "rw")) {
+            checkpoint(log, gitletFolder);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /**
+     * Returns true if updates of FILE go through the journal, that is, if FILE
+     * lies in a .gitlet folder outside its object, commit and chunk folders.
+     */
+    static boolean covers(File file) {
+        File child = file.getAbsoluteFile();
+        File parent = child.getParentFile();
+        while (parent != null) {
+            if (parent.getName().equals(".gitlet")) {
+                return !Arrays.asList(IMMUTABLE_FOLDERS)
+                        .contains(child.getName());
+            }
+            child = parent;
+            parent = parent.getParentFile();
+        }
+        return false;
+    }
+
+    /**
+     * Holds CONTENTS as the new contents of FILE.
+     */
+    void write(File file, byte[] contents) {
+        _entries.put(key(file), contents);
+    }
+
+    /**
+     * Appends CONTENTS, just written to the immutable FILE, to the log, so
+     * that FILE can be rewritten if a crash keeps it from reaching the disk.
+     */
+    void created(File file, byte[] contents) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeByte(OBJECT);
+            out.writeUTF(relative(key(file)));
+            out.write(contents);
+            out.close();
+            append(bytes.toByteArray());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /**
+     * Holds the deletion of FILE.
+     */
+    void delete(File file) {
+        _entries.put(key(file), null);
+    }
+
+    /**
+     * Returns true if this journal holds an update of FILE, made by its
+     * command or, for a reader, logged by a writer.
+     */
+    boolean holds(File file) {
+        String key = key(file);
+        return _entries.containsKey(key) || _logged.containsKey(key);
+    }
+
+    /**
+     * Returns the held contents of FILE, or null if FILE is held as deleted.
+     * Only meaningful if holds(FILE).
+     */
+    byte[] read(File file) {
+        String key = key(file);
+        return _entries.containsKey(key) ? _entries.get(key)
+                : _logged.get(key);
+    }
+
+    /**
+     * Appends a record with BODY to the log, opening it if need be.
+     */
+    private void append(byte[] body) throws IOException {
+        if (_log == null) {
+            File file = new File(_gitletFolder, FILE_NAME);
+            _logCreated = !file.exists();
+            _log = new RandomAccessFile(file, "rw");
+            _log.seek(_log.length());
+        }
+        _log.write(record(body));
+    }
+
+    /**
+     * Marks the end of the objects this journal appended, if any, since
+     * they are all in their files.
+     */
+    private void finish() throws IOException {
+        if (_log != null) {
+            append(new byte[] { DONE });
+        }
+    }
+
+    /**
+     * Closes the log, if it is open.
+     */
+    private void close() {
+        if (_log != null) {
+            try {
+                _log.close();
+            } catch (IOException excp) {
+                return;
+            } finally {
+                _log = null;
+            }
+        }
+    }
+
+    /**
+     * Returns the body of the commit record of the held updates.
+     */
+    private byte[] encode() {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeByte(COMMIT);
+            out.writeInt(_entries.size());
+            for (Map.Entry<String, byte[]> entry : _entries.entrySet()) {
+                byte[] contents = entry.getValue();
+                out.writeByte(contents == null ? DELETE : WRITE);
+                out.writeUTF(relative(entry.getKey()));
+                if (contents != null) {
+                    out.writeInt(contents.length);
+                    out.write(contents);
+                }
+            }
+            out.close();
+            return bytes.toByteArray();
+        } catch (IOException excp) {
+            throw Utils.error("Internal error writing journal.");
+        }
+    }
+
+    /**
+     * Returns the path of the file at the absolute PATH relative to the
+     * .gitlet folder.
+     */
+    private String relative(String path) {
+        return _gitletFolder.toPath().relativize(new File(path).toPath())
+                .toString().replace(File.separatorChar, '/');
+    }
+
+    /**
+     * Applies UPDATES, from files to contents or null for deletions, to
+     * disk, without syncing. If CHANGEDONLY, files that already hold their
+     * contents are left alone.
+     */
+    private static void apply(Map<?, byte[]> updates, boolean changedOnly)
+        throws IOException {
+        for (Map.Entry<?, byte[]> entry : updates.entrySet()) {
+            File file = new File(entry.getKey().toString());
+            byte[] contents = entry.getValue();
+            if (contents == null) {
+                file.delete();
+            } else if (!changedOnly || !file.isFile()
+                    || !Arrays.equals(contents,
+                            Files.readAllBytes(file.toPath()))) {
+                file.getParentFile().mkdirs();
+                Utils.replaceContents(file, contents);
+            }
+        }
+    }
+
+    /**
+     * Syncs every file LOG, the log of the repository in GITLETFOLDER,
+     * names and their folders, then empties LOG.
+     */
+    private static void checkpoint(RandomAccessFile log, File gitletFolder)
+        throws IOException {
+        Set<File> files = new LinkedHashSet<>();
+        scan(log, gitletFolder, false, new LinkedHashMap<>(), files);
+        Set<File> folders = new LinkedHashSet<>();
+        for (File file : files) {
+            if (file.isFile()) {
+                Utils.sync(file);
+                folders.add(file.getParentFile());
+            }
+        }
+        for (File folder : folders) {
+            Utils.sync(folder);
+        }
+        log.setLength(0);
+        log.getChannel().force(true);
+    }
+
+    /**
+     * Reads the whole records of LOG, the log of the repository in
+     * GITLETFOLDER, from its start, putting the final contents of every
+     * mutable file they update in UPDATES and every file they name in
+     * FILES, if it is not null. If RESTORE, objects that are missing or
+     * short are rewritten from the log. Returns the length of the whole
+     * records, where any torn record begins.
+     */
+    private static long scan(RandomAccessFile log, File gitletFolder,
+                             boolean restore, Map<File, byte[]> updates,
+                             Set<File> files) throws IOException {
+        long length = log.length();
+        long position = 0;
+        while (position + 4 <= length) {
+            log.seek(position);
+            int size = log.readInt();
+            long end = position + 4 + size + CHECKSUM_SIZE;
+            if (size < 1 || end > length) {
+                break;
+            }
+            byte kind = log.readByte();
+            if (kind == OBJECT) {
+                File file;
+                try {
+                    file = Utils.join(gitletFolder, log.readUTF());
+                } catch (IOException excp) {
+                    break;
+                }
+                long objectSize = end - CHECKSUM_SIZE - log.getFilePointer();
+                if (files != null) {
+                    files.add(file);
+                }
+                if (restore && (!file.isFile()
+                        || file.length() != objectSize)) {
+                    byte[] body = body(log, position, size);
+                    if (body == null) {
+                        break;
+                    }
+                    file.getParentFile().mkdirs();
+                    Utils.replaceContents(file, Arrays.copyOfRange(body,
+                            size - (int) objectSize, size));
+                }
+            } else {
+                byte[] body = body(log, position, size);
+                if (body == null) {
+                    break;
+                }
+                if (kind == COMMIT && !decode(body, gitletFolder, updates,
+                        files)) {
+                    break;
+                }
+            }
+            position = end;
+        }
+        return position;
+    }
+
+    /**
+     * Returns the body of SIZE bytes of the record of LOG at POSITION, or
+     * null if it does not match its hash.
+     */
+    private static byte[] body(RandomAccessFile log, long position, int size)
+        throws IOException {
+        byte[] body = new byte[size];
+        log.seek(position + 4);
+        log.readFully(body);
+        try {
+            if (log.readUTF().equals(HashAlgorithm.FAST.hash(body))) {
+                return body;
+            }
+        } catch (IOException excp) {
+            return null;
+        }
+        return null;
+    }
+
+    /**
+     * Puts the updates of the commit record BODY of the repository in
+     * GITLETFOLDER in UPDATES and the files they name in FILES, if it is
+     * not null. Returns false if BODY is malformed.
+     */
+    private static boolean decode(byte[] body, File gitletFolder,
+                                  Map<File, byte[]> updates,
+                                  Set<File> files) {
+        try {
+            DataInputStream in =
+                    new DataInputStream(new ByteArrayInputStream(body));
+            in.readByte();
+            int count = in.readInt();
+            for (int i = 0; i < count; i += 1) {
+                byte kind = in.readByte();
+                File file = Utils.join(gitletFolder, in.readUTF());
+                byte[] contents = null;
+                if (kind == WRITE) {
+                    contents = new byte[in.readInt()];
+                    in.readFully(contents);
+                }
+                updates.remove(file);
+                updates.put(file, contents);
+                if (files != null) {
+                    files.add(file);
+                }
+            }
+            return true;
+        } catch (IOException | RuntimeException excp) {
+            return false;
+        }
+    }
+
+    /**
+     * Returns true if LOG ends with a record marking that all records
+     * before it reached the files.
+     */
+    private static boolean done(RandomAccessFile log) throws IOException {
+        byte[] done = record(new byte[] { DONE });
+        if (log.length() < done.length) {
+            return false;
+        }
+        byte[] tail = new byte[done.length];
+        log.seek(log.length() - done.length);
+        log.readFully(tail);
+        return Arrays.equals(done, tail);
+    }
+
+    /**
+     * Returns the record holding BODY: its length, BODY and its hash.
+     */
+    private static byte[] record(byte[] body) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(body.length);
+            out.write(body);
+            out.writeUTF(HashAlgorithm.FAST.hash(body));
+            out.close();
+            return bytes.toByteArray();
+        } catch (IOException excp) {
+            throw Utils.error("Internal error writing journal.");
+        }
+    }
+
+    /**
+     * Returns the key under which updates of FILE are held.
+     */
+    private static String key(File file) {
+        return file.getAbsoluteFile().toPath().normalize().toString();
+    }
+
+    /** The .gitlet folder of the repository journaled. */
+    private final File _gitletFolder;
+
+    /** Held updates in order, from path to contents, null for deletions. */
+    private final LinkedHashMap<String, byte[]> _entries;
+
+    /** For a reader, the final contents of the files in the log when it
+     *  began, if some might not have reached the files; never applied. */
+    private final Map<String, byte[]> _logged = new HashMap<>();
+
+    /** The log, while open for appending. */
+    private RandomAccessFile _log;
+
+    /** True if this journal created the log. */
+    private boolean _logCreated;
+}
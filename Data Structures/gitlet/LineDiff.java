@@ -0,0 +1,166 @@
+package gitlet;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/** Line-by-line comparison of two versions of a file.
+ *  Lines are matched with Myers' O(ND) shortest-edit-script algorithm,
+ *  after the lines both versions start and end with are matched directly
+ *  and every distinct line is replaced by a number, so that the search
+ *  only compares numbers and only covers the part that changed.
+ *  @author Erin Lee
+ */
+class LineDiff {
+
+    /**
+     * Not instantiable.
+     */
+    private LineDiff() {
+    }
+
+    /**
+     * Returns the lines of the contents of the blob FILEHASH, without their
+     * line terminators; a final line without one counts as a line.
+     */
+    static String[] lines(String fileHash) {
+        Blob blob = Blob.load(fileHash);
+        if (blob == null) {
+            throw new GitletException("File contents are missing.");
+        }
+        StringBuilder text = new StringBuilder(blob.getSize());
+        for (ByteBuffer buffer : blob.getBuffers()) {
+            text.append(StandardCharsets.UTF_8.decode(buffer.duplicate()));
+        }
+        if (text.length() == 0) {
+            return new String[0];
+        }
+        if (text.charAt(text.length() - 1) == '\n') {
+            text.setLength(text.length() - 1);
+        }
+        return text.toString().split("\n", -1);
+    }
+
+    /**
+     * Returns, for each line of AFTER, the index of the line of BEFORE it
+     * is unchanged from, or -1 if it was added.
+     */
+    static int[] match(String[] before, String[] after) {
+        int[] matches = new int[after.length];
+        Arrays.fill(matches, -1);
+        int start = 0;
+        while (start < before.length && start < after.length
+                && before[start].equals(after[start])) {
+            matches[start] = start;
+            start += 1;
+        }
+        int beforeEnd = before.length;
+        int afterEnd = after.length;
+        while (beforeEnd > start && afterEnd > start
+                && before[beforeEnd - 1].equals(after[afterEnd - 1])) {
+            beforeEnd -= 1;
+            afterEnd -= 1;
+            matches[afterEnd] = beforeEnd;
+        }
+
+        Map<String, Integer> ids = new HashMap<>();
+        int[] a = number(before, start, beforeEnd, ids);
+        int[] b = number(after, start, afterEnd, ids);
+        int[] middle = myers(a, b);
+        for (int j = 0; j < middle.length; j += 1) {
+            if (middle[j] >= 0) {
+                matches[start + j] = start + middle[j];
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * Returns the lines FROM up to TO of LINES as numbers, giving equal
+     * lines equal numbers, with IDS holding the numbers given so far.
+     */
+    private static int[] number(String[] lines, int from, int to,
+                                Map<String, Integer> ids) {
+        int[] result = new int[to - from];
+        for (int i = from; i < to; i += 1) {
+            Integer id = ids.get(lines[i]);
+            if (id == null) {
+                id = ids.size();
+                ids.put(lines[i], id);
+            }
+            result[i - from] = id;
+        }
+        return result;
+    }
+
+    /**
+     * Returns, for each element of B, the index of the element of A it is
+     * matched with by a shortest edit script from A to B, or -1.
+     */
+    private static int[] myers(int[] a, int[] b) {
+        int n = a.length;
+        int m = b.length;
+        int offset = n + m + 1;
+        int[] v = new int[2 * offset + 1];
+        List<int[]> trace = new ArrayList<>();
+        int d;
+        for (d = 0; ; d += 1) {
+            trace.add(Arrays.copyOfRange(v, offset - d, offset + d + 1));
+            boolean done = false;
+            for (int k = -d; k <= d && !done; k += 2) {
+                int x;
+                if (k == -d || (k != d
+                        && v[offset + k - 1] < v[offset + k + 1])) {
+                    x = v[offset + k + 1];
+                } else {
+                    x = v[offset + k - 1] + 1;
+                }
+                int y = x - k;
+                while (x < n && y < m && a[x] == b[y]) {
+                    x += 1;
+                    y += 1;
+                }
+                v[offset + k] = x;
+                done = x >= n && y >= m;
+            }
+            if (done) {
+                break;
+            }
+        }
+
+        int[] matches = new int[m];
+        Arrays.fill(matches, -1);
+        int x = n;
+        int y = m;
+        for (; d > 0; d -= 1) {
+            int[] previous = trace.get(d);
+            int k = x - y;
+            int previousK;
+            if (k == -d || (k != d
+                    && previous[k - 1 + d] < previous[k + 1 + d])) {
+                previousK = k + 1;
+            } else {
+                previousK = k - 1;
+            }
+            int previousX = previous[previousK + d];
+            int previousY = previousX - previousK;
+            while (x > previousX && y > previousY) {
+                x -= 1;
+                y -= 1;
+                matches[y] = x;
+            }
+            x = previousX;
+            y = previousY;
+        }
+        while (x > 0 && y > 0) {
+            x -= 1;
+            y -= 1;
+            matches[y] = x;
+        }
+        return matches;
+    }
+}
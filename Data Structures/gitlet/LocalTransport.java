@@ -0,0 +1,121 @@
+package gitlet;
+
+import java.io.File;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Map;
+
+/** A connection to a remote whose repository is reached directly through
+ *  the file system. Objects are copied file by file, and only those the
+ *  other side lacks.
+ *  @author Erin Lee
+ */
+class LocalTransport implements Transport {
+
+    /**
+     * A connection to REMOTE, whose .gitlet folder exists.
+     */
+    LocalTransport(Remote remote) {
+        _remote = remote;
+    }
+
+    @Override
+    public HashAlgorithm hashAlgorithm() {
+        return HashAlgorithm.of(_remote.getGitletFolder());
+    }
+
+    @Override
+    public String readHead(String branchName) {
+        Branch branch = Branch.load(branchName, _remote.getHeadsFolder());
+        return branch == null ? null : branch.getHead();
+    }
+
+    @Override
+    public void fetch(String head, String base, boolean partial) {
+        ObjectIndex remoteIndex =
+                ObjectIndex.load(_remote.getGitletFolder());
+        BitSet objects = objectsToFetch(remoteIndex, head, base, partial);
+        remoteIndex.copyObjects(objects, Gitlet.GITLET_FOLDER);
+    }
+
+    @Override
+    public void fetchBlobs(Collection<String> hashes) {
+        File remoteObjsFolder = _remote.getObjectsFolder();
+        for (String hash : hashes) {
+            if (Utils.join(remoteObjsFolder, hash).exists()) {
+                Blob.copy(hash, remoteObjsFolder, Gitlet.OBJS_FOLDER);
+            }
+        }
+    }
+
+    @Override
+    public void push(ObjectIndex index, BitSet objects, String branchName,
+                     String expectedHead, String head) {
+        File remoteFolder = _remote.getGitletFolder();
+        RepositoryLock lock = RepositoryLock.acquire(remoteFolder);
+        try {
+            Journal.recover(remoteFolder);
+            Journal journal = Journal.begin(remoteFolder);
+            try {
+                index.copyObjects(objects, remoteFolder);
+                updateBranch(branchName, expectedHead, head);
+                journal.commit();
+            } finally {
+                journal.abort();
+            }
+        } finally {
+            lock.close();
+        }
+    }
+
+    @Override
+    public void close() {
+    }
+
+    /**
+     * Returns the objects of INDEX reachable from the commit HEAD but not
+     * from the commit BASE, leaving out all but commits if PARTIAL.
+     */
+    static BitSet objectsToFetch(ObjectIndex index, String head, String base,
+                                 boolean partial) {
+        BitSet objects = index.reachableFromExcept(head, base);
+        if (partial) {
+            for (int i = objects.nextSetBit(0); i >= 0;
+                 i = objects.nextSetBit(i + 1)) {
+                if (!index.isCommit(i)) {
+                    objects.clear(i);
+                }
+            }
+        }
+        return objects;
+    }
+
+    /**
+     * Checks the commit HEAD, which the remote holds, out in the remote's
+     * working directory, and moves its branch BRANCHNAME from EXPECTEDHEAD
+     * to HEAD. The caller holds the remote's lock.
+     */
+    void updateBranch(String branchName, String expectedHead, String head) {
+        File workingFolder = _remote.getGitletFolder().getAbsoluteFile()
+                .getParentFile();
+        File remoteObjsFolder = _remote.getObjectsFolder();
+        Commit commit = Commit.load(head, _remote.getCommitsFolder());
+        Map<String, String> fileInfos = commit.getFileInfos();
+        for (Map.Entry<String, String> file : fileInfos.entrySet()) {
+            Blob blob = Blob.load(file.getValue(), remoteObjsFolder);
+            if (blob != null) {
+                blob.writeTo(Utils.join(workingFolder, file.getKey()));
+            }
+        }
+        for (String removedFileName : commit.getRemovedFileInfos().keySet()) {
+            File file = Utils.join(workingFolder, removedFileName);
+            if (file.exists()) {
+                file.delete();
+            }
+        }
+        _remote.saveBranchHead(branchName, expectedHead, head);
+    }
+
+    /** The remote. */
+    private final Remote _remote;
+}
@@ -1,18 +1,45 @@
 package gitlet;
 
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
 /** Driver class for Gitlet, the tiny stupid version-control system.
  *  @author Erin Lee
  */
 public class Main {
 
-    /** Usage: java gitlet.Main ARGS, where ARGS contains
+    /** Commands that never write to the repository, or that take the lock
+     *  only around each of their writes, and so run without taking the
+     *  repository lock. They read under a journal begun by
+     *  Journal.beginReading, which shows a writer's updates whole; status
+     *  also replaces the watcher's cache on its own (see WorkingTree.save). */
+    private static final Set<String> READ_ONLY_COMMANDS = new HashSet<>(
+            Arrays.asList("log", "global-log", "find", "status", "diff",
+                    "watch", "fsck", "serve", "reflog"));
+
+    /** Usage: java gitlet.Main [--trace[=json]] ARGS, where ARGS contains
      *  <COMMAND> <OPERAND> ....
-     *  java gitlet.Main add hello.txt */
+     *  java gitlet.Main add hello.txt
+     *  With --trace, a breakdown of where the command spent its time is
+     *  printed on standard error when it ends. */
     public static void main(String... args) {
+        if (args.length > 0 && args[0].startsWith("--trace")) {
+            if (!args[0].equals("--trace") && !args[0].equals("--trace=json")) {
+                System.err.println("Unknown trace format.");
+                return;
+            }
+            boolean json = args[0].equals("--trace=json");
+            args = Arrays.copyOfRange(args, 1, args.length);
+            if (args.length > 0) {
+                Trace.enable(args[0], json);
+            }
+        }
         if (args.length == 0) {
             System.err.println("Please enter a command.");
             return;
         }
+        Reflog.setAction(String.join(" ", args));
         try {
             Gitlet gitlet = new Gitlet();
             String command = args[0];
@@ -20,49 +47,125 @@ public class Main {
                 throw new GitletException(
                         "Not in an initialized Gitlet directory.");
             }
-            switch (command) {
-            case "init":
-                gitlet.init(); break;
-            case "add":
-                gitlet.add(args); break;
-            case "commit":
-                gitlet.commit(args); break;
-            case "rm":
-                gitlet.rm(args); break;
-            case "log":
-                gitlet.log(); break;
-            case "global-log":
-                gitlet.globalLog(); break;
-            case "find":
-                gitlet.find(args); break;
-            case "status":
-                gitlet.status(); break;
-            case "checkout":
-                gitlet.checkout(args); break;
-            case "branch":
-                gitlet.branch(args); break;
-            case "rm-branch":
-                gitlet.rmBranch(args); break;
-            case "reset":
-                gitlet.reset(args); break;
-            case "merge":
-                gitlet.merge(args); break;
-            case "add-remote":
-                gitlet.addRemote(args); break;
-            case "rm-remote":
-                gitlet.rmRemote(args); break;
-            case "push":
-                gitlet.push(args); break;
-            case "fetch":
-                gitlet.fetch(args); break;
-            case "pull":
-                gitlet.pull(args); break;
-            default:
-                System.err.println("No command with that name exists.");
+            if (!Gitlet.GITLET_FOLDER.exists()
+                    || READ_ONLY_COMMANDS.contains(command)) {
+                if (Gitlet.GITLET_FOLDER.exists()) {
+                    RepositoryLock.recover();
+                }
+                runJournaled(gitlet, command, args);
+            } else {
+                long start = Trace.start();
+                RepositoryLock lock = RepositoryLock.acquire();
+                try {
+                    Journal.recover(Gitlet.GITLET_FOLDER);
+                    Branch.migrate();
+                    Trace.end(Trace.LOCK, start, 0);
+                    runJournaled(gitlet, command, args);
+                } finally {
+                    lock.close();
+                }
             }
         } catch (GitletException e) {
             System.err.println(e.getMessage());
+        } finally {
+            Trace.report(System.err);
+        }
+    }
+
+    /** Runs COMMAND with ARGS on GITLET inside a journal, committing the
+     *  journal when the command ends normally or with a Gitlet error. */
+    private static void runJournaled(Gitlet gitlet, String command,
+                                     String... args) {
+        Journal journal = READ_ONLY_COMMANDS.contains(command)
+                ? Journal.beginReading(Gitlet.GITLET_FOLDER)
+                : Journal.begin(Gitlet.GITLET_FOLDER);
+        try {
+            run(gitlet, command, args);
+            commitJournal(journal);
+        } catch (GitletException e) {
+            commitJournal(journal);
+            throw e;
+        } finally {
+            journal.abort();
+            Reflog.discard();
+        }
+    }
+
+    /** Commits JOURNAL. */
+    private static void commitJournal(Journal journal) {
+        long start = Trace.start();
+        journal.commit();
+        Trace.end(Trace.JOURNAL, start, 0);
+        Reflog.flush();
+    }
+
+    /** Runs COMMAND with ARGS on GITLET. */
+    private static void run(Gitlet gitlet, String command, String... args) {
+        switch (command) {
+        case "init":
+            gitlet.init(args); break;
+        case "add":
+            gitlet.add(args); break;
+        case "commit":
+            gitlet.commit(args); break;
+        case "rm":
+            gitlet.rm(args); break;
+        case "log":
+            gitlet.log(args); break;
+        case "global-log":
+            gitlet.globalLog(); break;
+        case "find":
+            gitlet.find(args); break;
+        case "status":
+            gitlet.status(args); break;
+        case "diff":
+            gitlet.diff(args); break;
+        case "reflog":
+            gitlet.reflog(args); break;
+        case "blame":
+            gitlet.blame(args); break;
+        case "sparse-checkout":
+            gitlet.sparseCheckout(args); break;
+        case "checkout":
+            gitlet.checkout(args); break;
+        case "branch":
+            gitlet.branch(args); break;
+        case "tag":
+            gitlet.tag(args); break;
+        case "rm-branch":
+            gitlet.rmBranch(args); break;
+        case "reset":
+            gitlet.reset(args); break;
+        case "merge":
+            gitlet.merge(args); break;
+        case "cherry-pick":
+            gitlet.cherryPick(args); break;
+        case "rebase":
+            gitlet.rebase(args); break;
+        case "stash":
+            gitlet.stash(args); break;
+        case "add-remote":
+            gitlet.addRemote(args); break;
+        case "rm-remote":
+            gitlet.rmRemote(args); break;
+        case "push":
+            gitlet.push(args); break;
+        case "fetch":
+            gitlet.fetch(args); break;
+        case "pull":
+            gitlet.pull(args); break;
+        case "watch":
+            gitlet.watch(args); break;
+        case "serve":
+            gitlet.serve(args); break;
+        case "gc":
+            gitlet.gc(args); break;
+        case "pack-refs":
+            gitlet.packRefs(args); break;
+        case "fsck":
+            gitlet.fsck(args); break;
+        default:
+            System.err.println("No command with that name exists.");
         }
-        return;
     }
 }
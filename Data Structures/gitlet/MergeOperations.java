@@ -1,10 +1,12 @@
 package gitlet;
 
 import java.io.File;
-import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
@@ -22,25 +24,35 @@ public class MergeOperations {
      */
     static String getSplitPointHeadMerged(Commit currentLastCommit,
                                           Commit givenLastCommit) {
-        Map<String, Integer> currentCommitHistory = new HashMap<>();
-        MergeOperations.addToCommitHistory(
-                currentCommitHistory, currentLastCommit.getHash(), 1,
-                Gitlet.COMMITS_FOLDER);
-
-        Map<String, Integer> givenCommitHistory = new HashMap<>();
-        MergeOperations.addToCommitHistory(
-                givenCommitHistory, givenLastCommit.getHash(), 1,
-                Gitlet.COMMITS_FOLDER);
-
-        HashMap<String, Integer> commonSplitPoints = new HashMap<>();
+        return getSplitPointHeadMerged(
+                Arrays.asList(currentLastCommit, givenLastCommit));
+    }
 
-        Set<String> givenCommitHashes = givenCommitHistory.keySet();
-        for (String givenCommitHash : givenCommitHashes) {
-            if (currentCommitHistory.containsKey(givenCommitHash)) {
-                commonSplitPoints.put(givenCommitHash,
-                        currentCommitHistory.get(givenCommitHash)
-                                + givenCommitHistory.get(givenCommitHash));
+    /**
+     * Returns the split point of the merge of LASTCOMMITS, two or more: of
+     * the commits every one of them reaches, the one with the smallest sum
+     * of distances from them, or null if they share no history.
+     */
+    static String getSplitPointHeadMerged(List<Commit> lastCommits) {
+        Map<String, Integer> commonSplitPoints = null;
+        for (Commit lastCommit : lastCommits) {
+            Map<String, Integer> commitHistory = new HashMap<>();
+            MergeOperations.addToCommitHistory(
+                    commitHistory, lastCommit.getHash(), 1,
+                    Gitlet.COMMITS_FOLDER);
+            if (commonSplitPoints == null) {
+                commonSplitPoints = commitHistory;
+                continue;
             }
+            HashMap<String, Integer> common = new HashMap<>();
+            for (Map.Entry<String, Integer> commit
+                    : commonSplitPoints.entrySet()) {
+                Integer distance = commitHistory.get(commit.getKey());
+                if (distance != null) {
+                    common.put(commit.getKey(), commit.getValue() + distance);
+                }
+            }
+            commonSplitPoints = common;
         }
 
         String splitPointHead = null;
@@ -54,140 +66,99 @@ public class MergeOperations {
     }
 
     /**
-     * Returns merge of CURRENTCOMMIT and GIVENCOMMIT on CURRENTSTAGE given a
-     * SPLITPOINTCOMMIT.
+     * Returns merge of GIVENCOMMITS into CURRENTCOMMIT on CURRENTSTAGE given
+     * a SPLITPOINTCOMMIT common to all of them. The merged tree and its
+     * conflicted files are worked out in memory, one given commit after
+     * another, and committed first; the working directory is then brought
+     * to the result in one pass that writes only the files that changed.
+     * A merge of several given commits (an octopus merge) is refused if any
+     * of them conflicts.
      */
     static Commit merge(Stage currentStage, Commit currentCommit,
-                        Commit givenCommit, Commit splitPointCommit) {
-        currentStage = mergeFiles(currentStage, currentCommit, givenCommit,
-                splitPointCommit);
-        Commit commit = new Commit(currentStage, currentCommit, givenCommit);
+                        List<Commit> givenCommits, Commit splitPointCommit) {
+        Map<String, String> currentFileInfos = currentCommit.getFileInfos();
+        Map<String, String> splitFileInfos = splitPointCommit.getFileInfos();
+        for (Commit givenCommit : givenCommits) {
+            prefetchChangedBlobs(currentCommit, givenCommit,
+                    splitPointCommit);
+        }
+        TreeMerge merge = null;
+        Map<String, String> mergedFileInfos = currentFileInfos;
+        for (Commit givenCommit : givenCommits) {
+            merge = new TreeMerge(splitFileInfos, mergedFileInfos,
+                    givenCommit.getFileInfos());
+            if (merge.isConflicted() && givenCommits.size() > 1) {
+                throw new GitletException("Encountered a merge conflict; "
+                    + "merge the branches one at a time.");
+            }
+            mergedFileInfos = merge.getFileInfos();
+        }
+        currentStage.stageTree(currentFileInfos, mergedFileInfos);
+        for (Map.Entry<String, String[]> conflict
+                : merge.getConflicted().entrySet()) {
+            String[] hashes = conflict.getValue();
+            currentStage.addConflict(conflict.getKey(), hashes[0], hashes[1],
+                    hashes[2]);
+        }
+        Commit commit = new Commit(currentStage, currentCommit, givenCommits);
         if (currentStage.isConflicted()) {
             System.out.println("Encountered a merge conflict.");
         }
+        merge.saveBlobs();
         commit.save();
-        currentStage.applyCommit();
+        currentStage.moveTo(mergedFileInfos);
         return commit;
     }
 
     /**
-     * Returns a new stage that is the result of merging CURRENTCOMMIT and
-     * GIVENCOMMIT that split at SPLITPOINTCOMMIT in the CURRENTSTAGE.
+     * Fetches in one batch the blobs a merge of CURRENTCOMMIT and
+     * GIVENCOMMIT may read, those of files that differ between the two or
+     * from SPLITPOINTCOMMIT, if this is a partial clone missing them.
      */
-    private static Stage mergeFiles(Stage currentStage, Commit currentCommit,
-                        Commit givenCommit, Commit splitPointCommit) {
-        Map<String, String> givenFileInfos = givenCommit.getFileInfos();
-        if (!givenFileInfos.isEmpty()) {
-            Set<String> givenFileNames = givenFileInfos.keySet();
-            for (String givenFileName: givenFileNames) {
-                String givenFileHash = givenFileInfos.get(givenFileName);
-                String currentFileHash =
-                        currentCommit.getFileHash(givenFileName);
-                String splitPointFileHash =
-                        splitPointCommit.getFileHash(givenFileName);
-                if (splitPointFileHash != null) {
-                    if (!givenFileHash.equals(splitPointFileHash)) {
-                        if (currentFileHash != null
-                                && currentFileHash.equals(splitPointFileHash)) {
-                            currentStage.checkout(givenFileHash);
-                            currentStage.add(givenFileName, givenFileHash);
-                        } else if (givenFileHash.equals(currentFileHash)) {
-                            continue;
-                        } else {
-                            replacedConflictedFile(currentStage, givenFileName,
-                                    currentFileHash, givenFileHash);
-                        }
-                    }
-                } else {
-                    if (currentFileHash == null) {
-                        currentStage.checkout(givenFileHash);
-                        currentStage.add(givenFileName, givenFileHash);
-                    } else {
-                        replacedConflictedFile(currentStage, givenFileName,
-                                currentFileHash, givenFileHash);
-                    }
-                }
-            }
-        }
+    private static void prefetchChangedBlobs(Commit currentCommit,
+            Commit givenCommit, Commit splitPointCommit) {
         Map<String, String> currentFileInfos = currentCommit.getFileInfos();
-        if (!currentFileInfos.isEmpty()) {
-            Set<String> currentFileNames = currentFileInfos.keySet();
-            for (String currentFileName: currentFileNames) {
-                String currentFileHash = currentFileInfos.get(currentFileName);
-                String givenFileHash = givenCommit.getFileHash(currentFileName);
-                String splitPointFileHash =
-                        splitPointCommit.getFileHash(currentFileName);
-                if (givenFileHash != null) {
-                    continue;
-                }
-                if (splitPointFileHash != null) {
-                    if (currentFileHash.equals(splitPointFileHash)) {
-                        currentStage.unstage(currentFileName);
-                    } else {
-                        replacedConflictedFile(currentStage, currentFileName,
-                                currentFileHash, givenFileHash);
-                    }
-                }
-            }
-        }
-        return currentStage;
-    }
-
-    /**
-     * Replace the contents of a file with FILENAME conflicted in
-     * CURRENTFILEHASH AND GIVENFILEHASH on CURRENTSTAGE.
-     */
-    private static void replacedConflictedFile(
-            Stage currentStage, String fileName,
-            String currentFileHash, String givenFileHash) {
-        String currentContent = "";
-        if (currentFileHash != null) {
-            Blob currentBlob = Blob.load(currentFileHash);
-            if (currentBlob != null) {
-                currentContent += new String(
-                        currentBlob.getFileContents(), StandardCharsets.UTF_8);
-            }
-        }
-
-        String givenContent = "";
-        if (givenFileHash != null) {
-            Blob givenBlob = Blob.load(givenFileHash);
-            if (givenBlob != null) {
-                givenContent += new String(
-                        givenBlob.getFileContents(), StandardCharsets.UTF_8);
+        Map<String, String> givenFileInfos = givenCommit.getFileInfos();
+        Set<String> fileNames = new HashSet<>(currentFileInfos.keySet());
+        fileNames.addAll(givenFileInfos.keySet());
+        Set<String> blobHashes = new HashSet<>();
+        for (String fileName : fileNames) {
+            String currentHash = currentFileInfos.get(fileName);
+            String givenHash = givenFileInfos.get(fileName);
+            if (currentHash == null || !currentHash.equals(givenHash)) {
+                blobHashes.add(currentHash);
+                blobHashes.add(givenHash);
+                blobHashes.add(splitPointCommit.getFileHash(fileName));
             }
         }
-
-        File contentFile = new File(fileName);
-        Utils.writeContents(contentFile,
-                "<<<<<<< HEAD\n"
-                        + currentContent
-                        +  "=======\n"
-                        + givenContent
-                        + ">>>>>>>\n");
-
-        Blob blob = new Blob(contentFile);
-        blob.save();
-        String newFileHash = blob.getHash();
-
-        currentStage.add(fileName, newFileHash);
-        currentStage.addConflict(fileName, newFileHash, currentFileHash,
-                givenFileHash);
+        Promisor.fetchBlobs(blobHashes);
     }
 
     /**
      * Returns the COMMITHISTORY of a starting point COMMITHASH to DISTANCE
-     * into the given COMMITFOLDER.
+     * into the given COMMITFOLDER: every commit reachable from COMMITHASH,
+     * through all parents, at DISTANCE plus its fewest parent links from
+     * COMMITHASH. The history is walked breadth first, loading each commit
+     * once however many paths of merges lead to it.
      */
     public static void addToCommitHistory(Map<String, Integer> commitHistory,
             String commitHash, int distance, File commitFolder) {
-        if (commitHash != null) {
-            commitHistory.put(commitHash, distance);
-            Commit commit = Commit.load(commitHash, commitFolder);
-            addToCommitHistory(commitHistory, commit.getParent(),
-                    distance + 1, commitFolder);
-            addToCommitHistory(commitHistory, commit.getGivenParent(),
-                    distance + 1, commitFolder);
+        if (commitHash == null) {
+            return;
+        }
+        ArrayDeque<String> pending = new ArrayDeque<>();
+        commitHistory.put(commitHash, distance);
+        pending.add(commitHash);
+        while (!pending.isEmpty()) {
+            String hash = pending.remove();
+            int parentDistance = commitHistory.get(hash) + 1;
+            Commit commit = Commit.load(hash, commitFolder);
+            for (String parent : commit.getParents()) {
+                if (!commitHistory.containsKey(parent)) {
+                    commitHistory.put(parent, parentDistance);
+                    pending.add(parent);
+                }
+            }
         }
     }
 
@@ -0,0 +1,351 @@
+package gitlet;
+
+import java.io.File;
+import java.io.Serializable;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/** Index of the stored objects of a Gitlet repository.
+ *  Every commit, blob and chunk gets a position, in the order it was first
+ *  indexed; positions never change until gc rebuilds the index. Sets of
+ *  objects are then kept as bitsets over positions instead of sets of hash
+ *  strings, and the set of objects reachable from each branch head is kept
+ *  as a compressed bitmap, so that finding what a push or fetch must copy
+ *  is a bitmap difference instead of a walk of the whole history. The
+ *  chunks of each blob are recorded the first time a walk meets it, so
+ *  that later walks do not read blobs at all.
+ *  @author Erin Lee
+ */
+class ObjectIndex implements Serializable {
+
+    /** Version of the serialized form. */
+    private static final long serialVersionUID = 1L;
+
+    /** Name of the index file inside a .gitlet folder. */
+    static final String INDEX_NAME = "object-index";
+
+    /** Folder of commits, relative to .gitlet. */
+    static final String COMMITS = "commits";
+
+    /** Folder of blobs, relative to .gitlet. */
+    static final String OBJECTS = "objects";
+
+    /** Folder of chunks, relative to .gitlet. */
+    static final String CHUNKS = "chunks";
+
+    /** Chunk list of a blob that is not chunked. */
+    private static final String[] NO_CHUNKS = new String[0];
+
+    /**
+     * An empty index of the repository in GITLETFOLDER.
+     */
+    private ObjectIndex(File gitletFolder) {
+        _paths = new ArrayList<>();
+        _bitmaps = new HashMap<>();
+        attach(gitletFolder);
+    }
+
+    /**
+     * Returns the index of the repository in GITLETFOLDER, or an empty one
+     * if it has none yet.
+     */
+    static ObjectIndex load(File gitletFolder) {
+        File file = Utils.join(gitletFolder, INDEX_NAME);
+        if (!Utils.exists(file)) {
+            return new ObjectIndex(gitletFolder);
+        }
+        ObjectIndex index = Utils.readObject(file, ObjectIndex.class);
+        index.attach(gitletFolder);
+        return index;
+    }
+
+    /**
+     * Returns a new index of the repository in GITLETFOLDER holding every
+     * object on disk and no bitmaps.
+     */
+    static ObjectIndex rebuild(File gitletFolder) {
+        ObjectIndex index = new ObjectIndex(gitletFolder);
+        index.scan();
+        return index;
+    }
+
+    /**
+     * Saves this index, keeping only the bitmaps of the commits in TIPS.
+     */
+    void save(Collection<String> tips) {
+        _bitmaps.keySet().retainAll(new HashSet<>(tips));
+        Utils.writeObject(Utils.join(_gitletFolder, INDEX_NAME), this);
+    }
+
+    /**
+     * Indexes every object on disk that is not indexed yet.
+     */
+    void scan() {
+        for (String folder : new String[] { COMMITS, OBJECTS, CHUNKS }) {
+            List<String> names =
+                    Utils.plainFilenamesIn(Utils.join(_gitletFolder, folder));
+            if (names != null) {
+                for (String name : names) {
+                    position(folder, name);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the number of indexed objects.
+     */
+    int size() {
+        return _paths.size();
+    }
+
+    /**
+     * Returns the position of the object HASH in FOLDER, indexing it first if
+     * needed. Returns -1 if there is no such object on disk.
+     */
+    int position(String folder, String hash) {
+        String path = folder + "/" + hash;
+        Integer position = _positions.get(path);
+        if (position != null) {
+            return position;
+        }
+        if (!Utils.join(_gitletFolder, folder, hash).exists()) {
+            return -1;
+        }
+        _paths.add(path);
+        _positions.put(path, _paths.size() - 1);
+        return _paths.size() - 1;
+    }
+
+    /**
+     * Returns the file holding the object at POSITION.
+     */
+    File file(int position) {
+        return Utils.join(_gitletFolder, _paths.get(position));
+    }
+
+    /**
+     * Returns the path of the object at POSITION, relative to .gitlet.
+     */
+    String path(int position) {
+        return _paths.get(position);
+    }
+
+    /**
+     * Returns true if POSITION is that of a commit.
+     */
+    boolean isCommit(int position) {
+        return _paths.get(position).startsWith(COMMITS + "/");
+    }
+
+    /**
+     * Returns true if POSITION is that of a blob.
+     */
+    boolean isBlob(int position) {
+        return _paths.get(position).startsWith(OBJECTS + "/");
+    }
+
+    /**
+     * Returns the set of objects reachable from the commit TIP, using and
+     * updating the stored bitmaps.
+     */
+    BitSet reachableFrom(String tip) {
+        long[] stored = _bitmaps.get(tip);
+        if (stored != null) {
+            return Ewah.decompress(stored);
+        }
+        int missing = _missing.size();
+        BitSet reachable =
+                markReachable(Collections.singleton(tip), new BitSet());
+        if (_missing.size() == missing) {
+            _bitmaps.put(tip, Ewah.compress(reachable));
+        }
+        return reachable;
+    }
+
+    /**
+     * Returns the set of objects reachable from the commit TIP but not from
+     * the commit BASE, which may be null or unknown. The walk from TIP stops
+     * at objects already reachable from BASE.
+     */
+    BitSet reachableFromExcept(String tip, String base) {
+        if (base == null || position(COMMITS, base) < 0) {
+            return reachableFrom(tip);
+        }
+        BitSet excluded = reachableFrom(base);
+        BitSet result;
+        long[] stored = _bitmaps.get(tip);
+        if (stored != null) {
+            result = Ewah.decompress(stored);
+        } else {
+            result = markReachable(Collections.singleton(tip),
+                    (BitSet) excluded.clone());
+        }
+        result.andNot(excluded);
+        return result;
+    }
+
+    /**
+     * Marks in REACHABLE every object reachable from the commits HEADS:
+     * the commits themselves, their ancestors, and the blobs and chunks of
+     * all of them. Commits already marked are not visited again, so passing
+     * a set marked from other heads only walks the new part of the graph,
+     * and the walk stops at commits with a stored bitmap. Returns REACHABLE.
+     */
+    BitSet markReachable(Collection<String> heads, BitSet reachable) {
+        Deque<String> pending = new ArrayDeque<>(heads);
+        while (!pending.isEmpty()) {
+            String hash = pending.pop();
+            int position = position(COMMITS, hash);
+            if (position < 0 || reachable.get(position)) {
+                continue;
+            }
+            long[] stored = _bitmaps.get(hash);
+            if (stored != null) {
+                reachable.or(Ewah.decompress(stored));
+                continue;
+            }
+            reachable.set(position);
+            Commit commit = Commit.load(hash, Utils.join(_gitletFolder,
+                    COMMITS));
+            for (String blobHash : commit.getFileInfos().values()) {
+                markBlob(blobHash, reachable);
+            }
+            for (String parent : commit.getParents()) {
+                pending.push(parent);
+            }
+        }
+        return reachable;
+    }
+
+    /**
+     * Returns the blobs that walks of this index found referenced but not
+     * stored, as in a partial clone. Bitmaps of such walks are not kept.
+     */
+    Set<String> getMissingBlobs() {
+        return _missing;
+    }
+
+    /**
+     * Marks in REACHABLE the blob HASH and, if it is chunked, its chunks.
+     */
+    void markBlob(String hash, BitSet reachable) {
+        int position = position(OBJECTS, hash);
+        if (position < 0) {
+            _missing.add(hash);
+            return;
+        }
+        if (reachable.get(position)) {
+            return;
+        }
+        reachable.set(position);
+        if (_hasChunks) {
+            for (String chunk : chunksOf(hash, position)) {
+                int chunkPosition = position(CHUNKS, chunk);
+                if (chunkPosition >= 0) {
+                    reachable.set(chunkPosition);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the chunks of the blob HASH at POSITION, none if it is not
+     * chunked. The blob is read only the first time this index meets it.
+     */
+    private String[] chunksOf(String hash, int position) {
+        if (!_listed.get(position)) {
+            Blob blob = Blob.load(hash, Utils.join(_gitletFolder, OBJECTS));
+            if (blob.isChunked()) {
+                _chunkLists.put(hash, blob.getChunks());
+            }
+            _listed.set(position);
+        }
+        return _chunkLists.getOrDefault(hash, NO_CHUNKS);
+    }
+
+    /**
+     * Copies the objects in OBJECTS to the repository in GITLETFOLDER,
+     * skipping any it already has. Objects are copied as stored, without
+     * being read. Commits are copied last, so that the other repository
+     * never holds a commit whose blobs are missing.
+     */
+    void copyObjects(BitSet objects, File gitletFolder) {
+        List<Integer> commits = new ArrayList<>();
+        for (int i = objects.nextSetBit(0); i >= 0;
+             i = objects.nextSetBit(i + 1)) {
+            if (isCommit(i)) {
+                commits.add(i);
+            } else {
+                copyObject(i, gitletFolder);
+            }
+        }
+        for (int i : commits) {
+            copyObject(i, gitletFolder);
+        }
+    }
+
+    /**
+     * Copies the object at POSITION to the repository in GITLETFOLDER
+     * unless it is already there.
+     */
+    private void copyObject(int position, File gitletFolder) {
+        File target = Utils.join(gitletFolder, _paths.get(position));
+        if (!target.exists()) {
+            target.getParentFile().mkdir();
+            Utils.writeContents(target, Utils.readContents(file(position)));
+        }
+    }
+
+    /**
+     * Sets up the fields that are not saved, for the repository in
+     * GITLETFOLDER.
+     */
+    private void attach(File gitletFolder) {
+        _gitletFolder = gitletFolder;
+        if (_chunkLists == null) {
+            _chunkLists = new HashMap<>();
+            _listed = new BitSet();
+        }
+        _missing = new HashSet<>();
+        _positions = new HashMap<>();
+        for (int i = 0; i < _paths.size(); i += 1) {
+            _positions.put(_paths.get(i), i);
+        }
+        String[] chunks = Utils.join(gitletFolder, CHUNKS).list();
+        _hasChunks = chunks != null && chunks.length > 0;
+    }
+
+    /** Indexed objects in position order, as paths relative to .gitlet. */
+    private ArrayList<String> _paths;
+
+    /** Compressed reachability bitmaps, keyed by commit hash. */
+    private HashMap<String, long[]> _bitmaps;
+
+    /** Chunks of each chunked blob whose chunks are recorded, keyed by
+     *  blob hash. */
+    private HashMap<String, String[]> _chunkLists;
+
+    /** Positions of the blobs whose chunks are recorded, chunked or not. */
+    private BitSet _listed;
+
+    /** Position of each indexed path. */
+    private transient HashMap<String, Integer> _positions;
+
+    /** Blobs found referenced but not stored. */
+    private transient Set<String> _missing;
+
+    /** The .gitlet folder of the indexed repository. */
+    private transient File _gitletFolder;
+
+    /** True if the repository stores any chunks. */
+    private transient boolean _hasChunks;
+}
@@ -0,0 +1,128 @@
+package gitlet;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/** A pack: many objects sent one after another down a single stream.
+ *  Each object is written as its path relative to .gitlet, such as
+ *  "commits/HASH", then its length and its stored bytes; an empty path ends
+ *  the pack. Chunks are sent before blobs and blobs before commits, so
+ *  that a receiver cut off partway never holds a commit whose files are
+ *  missing. A receiver stores only objects it lacks, accepts no path
+ *  outside the object folders and no object larger than MAX_SIZE, and
+ *  hashes every object before storing it, so that a sender cannot place
+ *  contents under a name they do not hash to. Commits made by older
+ *  versions are the exception where their hashes cannot be recomputed
+ *  (see Commit.coversParents); they are taken on their recorded name.
+ *  @author Erin Lee
+ */
+class Pack {
+
+    /** Paths a pack may hold. */
+    private static final Pattern OBJECT_PATH = Pattern.compile("("
+            + ObjectIndex.CHUNKS + "|" + ObjectIndex.OBJECTS + "|"
+            + ObjectIndex.COMMITS + ")/[0-9a-f]+");
+
+    /** Largest object a pack may hold, in bytes. */
+    static final int MAX_SIZE = Integer.MAX_VALUE - 8;
+
+    /** Folders in the order their objects are sent. */
+    private static final String[] ORDER = {
+        ObjectIndex.CHUNKS, ObjectIndex.OBJECTS, ObjectIndex.COMMITS
+    };
+
+    /**
+     * Not instantiable.
+     */
+    private Pack() {
+    }
+
+    /**
+     * Writes to OUT a pack of the objects at PATHS, relative to the
+     * repository in GITLETFOLDER. OUT is not flushed.
+     */
+    static void write(File gitletFolder, Collection<String> paths,
+                      DataOutputStream out) throws IOException {
+        for (String folder : ORDER) {
+            for (String path : paths) {
+                if (path.startsWith(folder + "/")) {
+                    byte[] contents =
+                            Utils.readContents(Utils.join(gitletFolder, path));
+                    out.writeUTF(path);
+                    out.writeInt(contents.length);
+                    out.write(contents);
+                }
+            }
+        }
+        out.writeUTF("");
+    }
+
+    /**
+     * Reads a pack from IN into the repository in GITLETFOLDER. Returns the
+     * paths of the objects it held. Throws a GitletException, leaving the
+     * rest of the pack unread, at the first object that does not belong in
+     * the repository.
+     */
+    static List<String> read(DataInputStream in, File gitletFolder)
+            throws IOException {
+        HashAlgorithm hash = HashAlgorithm.of(gitletFolder);
+        List<String> paths = new ArrayList<>();
+        for (String path = in.readUTF(); !path.isEmpty();
+             path = in.readUTF()) {
+            int size = in.readInt();
+            if (!OBJECT_PATH.matcher(path).matches() || size < 0
+                    || size > MAX_SIZE) {
+                throw new GitletException("Received a bad object.");
+            }
+            byte[] contents = in.readNBytes(size);
+            if (contents.length < size) {
+                throw new EOFException();
+            }
+            File file = Utils.join(gitletFolder, path);
+            if (!file.exists()) {
+                if (!hashesTo(path, contents, gitletFolder, hash)) {
+                    throw new GitletException("Received a bad object.");
+                }
+                file.getParentFile().mkdir();
+                Utils.writeContents(file, contents);
+            }
+            paths.add(path);
+        }
+        return paths;
+    }
+
+    /**
+     * Returns true if CONTENTS, received for the object at PATH of the
+     * repository in GITLETFOLDER, hash to the name in PATH under HASH. The
+     * chunks of a blob must already be stored.
+     */
+    private static boolean hashesTo(String path, byte[] contents,
+                                    File gitletFolder, HashAlgorithm hash) {
+        String name = path.substring(path.indexOf('/') + 1);
+        try {
+            if (path.startsWith(ObjectIndex.CHUNKS + "/")) {
+                return name.equals(hash.hashBuffers(ByteBuffer.wrap(contents)));
+            } else if (path.startsWith(ObjectIndex.OBJECTS + "/")) {
+                Blob blob = Blob.read(contents,
+                        Utils.join(gitletFolder, ObjectIndex.OBJECTS));
+                return name.equals(blob.getHash())
+                        && blob.hasValidHash(hash);
+            } else {
+                Commit commit = Utils.deserialize(contents, Commit.class);
+                return name.equals(commit.getHash())
+                        && (commit.hasValidHash(hash)
+                        || !commit.coversParents());
+            }
+        } catch (RuntimeException excp) {
+            return false;
+        }
+    }
+}
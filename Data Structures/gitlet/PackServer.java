@@ -0,0 +1,221 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+/** The serving side of a StreamTransport: answers requests for the
+ *  repository in the current directory. The requests are
+ *      hash                      the name of the object hash,
+ *      head BRANCH               the head of BRANCH, or "" if none,
+ *      fetch HEAD BASE PARTIAL   a pack of what HEAD reaches and BASE does
+ *                                not, commits only if PARTIAL is nonempty,
+ *      blobs HASH...             a pack of the blobs that are here,
+ *      push BRANCH OLD NEW       followed by a pack; stores it and moves
+ *                                BRANCH from OLD to NEW, and
+ *      quit.
+ *  Pushes take the repository lock and a journal of their own while they
+ *  store and move the branch; nothing else does, since objects are
+ *  immutable and refs are replaced atomically. Every other request reads
+ *  under a journal of its own begun by Journal.beginReading, so that it
+ *  sees the updates of a writer whole.
+ *  @author Erin Lee
+ */
+class PackServer {
+
+    /**
+     * A server of the repository in GITLETFOLDER.
+     */
+    PackServer(File gitletFolder) {
+        _gitletFolder = gitletFolder;
+        _local = new LocalTransport(new Remote(null, gitletFolder.getPath()));
+    }
+
+    /**
+     * Answers the requests read from INPUT on OUTPUT until the client quits
+     * or goes away. A failed push, which leaves the rest of its pack unread,
+     * and a failure to read or write the repository, which may come in the
+     * middle of a reply, are answered and then end the connection, since
+     * the two sides no longer agree on where the next request begins.
+     */
+    void serve(InputStream input, OutputStream output) throws IOException {
+        DataInputStream in =
+                new DataInputStream(new BufferedInputStream(input));
+        DataOutputStream out =
+                new DataOutputStream(new BufferedOutputStream(output));
+        while (true) {
+            String name;
+            try {
+                name = in.readUTF();
+            } catch (EOFException excp) {
+                return;
+            }
+            String[] operands = new String[in.readInt()];
+            for (int i = 0; i < operands.length; i += 1) {
+                operands[i] = in.readUTF();
+            }
+            if (name.equals("quit")) {
+                return;
+            }
+            Journal journal = name.equals("push") ? null
+                    : Journal.beginReading(_gitletFolder);
+            try {
+                answer(name, operands, in, out);
+            } catch (GitletException | IllegalArgumentException excp) {
+                out.writeBoolean(false);
+                out.writeUTF(excp.getMessage() == null ? "Internal error."
+                        : excp.getMessage());
+                if (name.equals("push")
+                        || excp instanceof IllegalArgumentException) {
+                    out.flush();
+                    return;
+                }
+            } finally {
+                if (journal != null) {
+                    journal.abort();
+                }
+            }
+            out.flush();
+        }
+    }
+
+    /**
+     * Answers connections on PORT of the loopback interface, one at a time,
+     * until the process is stopped.
+     */
+    void listen(int port) throws IOException {
+        try (ServerSocket server = new ServerSocket(port, 0,
+                InetAddress.getLoopbackAddress())) {
+            while (true) {
+                try (Socket socket = server.accept()) {
+                    serve(socket.getInputStream(), socket.getOutputStream());
+                } catch (IOException excp) {
+                    System.err.println(excp.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Answers the request NAME with OPERANDS on OUT, reading anything that
+     * follows it from IN. Throws a GitletException, before answering, if it
+     * fails.
+     */
+    private void answer(String name, String[] operands, DataInputStream in,
+                        DataOutputStream out) throws IOException {
+        switch (name) {
+        case "hash":
+            out.writeBoolean(true);
+            out.writeUTF(_local.hashAlgorithm().getName());
+            break;
+        case "head":
+            String head = _local.readHead(operand(operands, 0));
+            out.writeBoolean(true);
+            out.writeUTF(head == null ? "" : head);
+            break;
+        case "fetch":
+            ObjectIndex index = ObjectIndex.load(_gitletFolder);
+            String base = hash(operands, 1);
+            BitSet objects = LocalTransport.objectsToFetch(index,
+                    hash(operands, 0), base.isEmpty() ? null : base,
+                    !operand(operands, 2).isEmpty());
+            List<String> paths = new ArrayList<>();
+            for (int i = objects.nextSetBit(0); i >= 0;
+                 i = objects.nextSetBit(i + 1)) {
+                paths.add(index.path(i));
+            }
+            out.writeBoolean(true);
+            Pack.write(_gitletFolder, paths, out);
+            break;
+        case "blobs":
+            List<String> blobPaths = blobPaths(operands);
+            out.writeBoolean(true);
+            Pack.write(_gitletFolder, blobPaths, out);
+            break;
+        case "push":
+            RepositoryLock lock = RepositoryLock.acquire(_gitletFolder);
+            try {
+                Journal.recover(_gitletFolder);
+                Journal journal = Journal.begin(_gitletFolder);
+                try {
+                    Pack.read(in, _gitletFolder);
+                    String expectedHead = hash(operands, 1);
+                    _local.updateBranch(operand(operands, 0),
+                            expectedHead.isEmpty() ? null : expectedHead,
+                            hash(operands, 2));
+                    journal.commit();
+                } finally {
+                    journal.abort();
+                }
+            } finally {
+                lock.close();
+            }
+            out.writeBoolean(true);
+            break;
+        default:
+            throw new GitletException("Unknown request.");
+        }
+    }
+
+    /**
+     * Returns the paths of the blobs HASHES that are stored here and of
+     * their chunks.
+     */
+    private List<String> blobPaths(String[] hashes) {
+        File objectsFolder = Utils.join(_gitletFolder, ObjectIndex.OBJECTS);
+        List<String> paths = new ArrayList<>();
+        for (int i = 0; i < hashes.length; i += 1) {
+            String hash = hash(hashes, i);
+            Blob blob = Blob.load(hash, objectsFolder);
+            if (blob == null) {
+                continue;
+            }
+            paths.add(ObjectIndex.OBJECTS + "/" + hash);
+            for (String chunk : blob.getChunks()) {
+                paths.add(ObjectIndex.CHUNKS + "/" + chunk);
+            }
+        }
+        return paths;
+    }
+
+    /**
+     * Returns operand K of OPERANDS.
+     */
+    private static String operand(String[] operands, int k) {
+        if (k >= operands.length) {
+            throw new GitletException("Incorrect operands.");
+        }
+        return operands[k];
+    }
+
+    /**
+     * Returns operand K of OPERANDS, which must be an id of the object hash
+     * of the repository served, or empty.
+     */
+    private String hash(String[] operands, int k) {
+        String hash = operand(operands, k);
+        if (!hash.matches("[0-9a-f]*") || (!hash.isEmpty()
+                && hash.length() != _local.hashAlgorithm().getHexLength())) {
+            throw new GitletException("Incorrect operands.");
+        }
+        return hash;
+    }
+
+    /** The .gitlet folder served. */
+    private final File _gitletFolder;
+
+    /** Direct access to the repository served. */
+    private final LocalTransport _local;
+}
@@ -0,0 +1,180 @@
+package gitlet;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.TreeMap;
+
+/** The packed-refs file of a Gitlet repository.
+ *  Branch heads can be kept together in .gitlet/packed-refs instead of one
+ *  file each under .gitlet/heads. After a header line, the file holds one
+ *  line per branch, "HASH NAME", sorted by name, so that a branch is found
+ *  by binary search over the file mapped into memory, which reads only the
+ *  few pages the search touches and parses no other line. The file is
+ *  only ever replaced whole, so a mapping never changes under a search.
+ *  A branch file under heads, if there is one, overrides the packed entry
+ *  of the same name. Tags are kept in a table of the same format (see
+ *  Tag).
+ *  @author Erin Lee
+ */
+class PackedRefs {
+
+    /** Name of the file inside a .gitlet folder. */
+    static final String FILE_NAME = "packed-refs";
+
+    /** First line of the file. */
+    private static final String HEADER = "# gitlet packed-refs, sorted\n";
+
+    /**
+     * Not instantiable.
+     */
+    private PackedRefs() {
+    }
+
+    /**
+     * Returns the head of the branch NAME packed in the repository in
+     * GITLETFOLDER, or null if it is not packed.
+     */
+    static String read(File gitletFolder, String name) {
+        return lookup(Utils.join(gitletFolder, FILE_NAME), name);
+    }
+
+    /**
+     * Returns the value of NAME in the table of refs TABLE, a file in the
+     * format of packed-refs, or null if it has none.
+     */
+    static String lookup(File table, String name) {
+        ByteBuffer contents = mapped(table);
+        if (contents == null) {
+            return null;
+        }
+        int low = HEADER.length();
+        int high = contents.limit();
+        while (low < high) {
+            int start = lineStart(contents, low + (high - low) / 2, low);
+            int space = indexOf(contents, (byte) ' ', start);
+            int end = indexOf(contents, (byte) '\n', space);
+            int cmp = string(contents, space + 1, end).compareTo(name);
+            if (cmp == 0) {
+                return string(contents, start, space);
+            } else if (cmp < 0) {
+                low = end + 1;
+            } else {
+                high = start;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns every branch packed in the repository in GITLETFOLDER, mapping
+     * names to heads, sorted by name.
+     */
+    static TreeMap<String, String> readAll(File gitletFolder) {
+        return readTable(Utils.join(gitletFolder, FILE_NAME));
+    }
+
+    /**
+     * Returns every entry of the table of refs TABLE, mapping names to
+     * values, sorted by name.
+     */
+    static TreeMap<String, String> readTable(File table) {
+        TreeMap<String, String> refs = new TreeMap<>();
+        byte[] contents = contents(table);
+        if (contents == null) {
+            return refs;
+        }
+        String text = new String(contents, StandardCharsets.UTF_8);
+        for (String line : text.substring(HEADER.length()).split("\n")) {
+            int space = line.indexOf(' ');
+            if (space > 0) {
+                refs.put(line.substring(space + 1), line.substring(0, space));
+            }
+        }
+        return refs;
+    }
+
+    /**
+     * Replaces the packed branches of the repository in GITLETFOLDER with
+     * REFS, which maps names to heads. No branches removes the file.
+     */
+    static void write(File gitletFolder, TreeMap<String, String> refs) {
+        writeTable(Utils.join(gitletFolder, FILE_NAME), refs);
+    }
+
+    /**
+     * Replaces the entries of the table of refs FILE with REFS, which maps
+     * names to values. No entries removes the file.
+     */
+    static void writeTable(File file, TreeMap<String, String> refs) {
+        if (refs.isEmpty()) {
+            Utils.delete(file);
+            return;
+        }
+        StringBuilder text = new StringBuilder(HEADER);
+        for (Map.Entry<String, String> ref : refs.entrySet()) {
+            text.append(ref.getValue()).append(' ').append(ref.getKey())
+                    .append('\n');
+        }
+        Utils.writeContents(file, text.toString());
+    }
+
+    /**
+     * Returns the contents of the table of refs FILE, or null if there is
+     * none.
+     */
+    private static byte[] contents(File file) {
+        if (!Utils.exists(file)) {
+            return null;
+        }
+        return Utils.readContents(file);
+    }
+
+    /**
+     * Returns the contents of the table of refs FILE as a buffer, mapped
+     * from the file unless the open journal holds them, or null if there is
+     * no table.
+     */
+    private static ByteBuffer mapped(File file) {
+        if (!Utils.exists(file)) {
+            return null;
+        }
+        Journal journal = Journal.of(file);
+        if (journal != null && journal.holds(file)) {
+            return ByteBuffer.wrap(journal.read(file));
+        }
+        return Utils.mapContents(file);
+    }
+
+    /**
+     * Returns the start of the line of CONTENTS holding position POSITION,
+     * looking back no further than LOW, which starts a line.
+     */
+    private static int lineStart(ByteBuffer contents, int position, int low) {
+        while (position > low && contents.get(position - 1) != '\n') {
+            position -= 1;
+        }
+        return position;
+    }
+
+    /**
+     * Returns the position of the first byte B of CONTENTS at or after FROM,
+     * or the length of CONTENTS if there is none.
+     */
+    private static int indexOf(ByteBuffer contents, byte b, int from) {
+        while (from < contents.limit() && contents.get(from) != b) {
+            from += 1;
+        }
+        return from;
+    }
+
+    /**
+     * Returns the UTF-8 text of CONTENTS from FROM up to TO.
+     */
+    private static String string(ByteBuffer contents, int from, int to) {
+        byte[] bytes = new byte[to - from];
+        contents.duplicate().position(from).get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,209 @@
+package gitlet;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/** A search of history for the commits that change how often some strings
+ *  occur, as with git log -S.
+ *  Only files whose blob differs from the parent commit's are looked at,
+ *  and each distinct blob is scanned once, in parallel with the others.
+ *  The strings are compiled, as UTF-8 bytes, into an Aho-Corasick
+ *  automaton, so that counting all of them takes one pass over a blob
+ *  whatever their number, and the chunks of a large blob are matched in
+ *  place without being joined.
+ *  @author Erin Lee
+ */
+class Pickaxe {
+
+    /**
+     * A matcher for PATTERNS, none of which may be empty.
+     */
+    Pickaxe(List<String> patterns) {
+        _patterns = patterns.size();
+        List<int[]> next = new ArrayList<>();
+        List<int[]> matches = new ArrayList<>();
+        next.add(newState());
+        matches.add(new int[0]);
+        for (int p = 0; p < patterns.size(); p += 1) {
+            int state = 0;
+            for (byte b : patterns.get(p).getBytes(StandardCharsets.UTF_8)) {
+                int c = b & 0xff;
+                if (next.get(state)[c] < 0) {
+                    next.get(state)[c] = next.size();
+                    next.add(newState());
+                    matches.add(new int[0]);
+                }
+                state = next.get(state)[c];
+            }
+            int[] found = matches.get(state);
+            found = Arrays.copyOf(found, found.length + 1);
+            found[found.length - 1] = p;
+            matches.set(state, found);
+        }
+        _next = next.toArray(new int[next.size()][]);
+        _matches = matches.toArray(new int[matches.size()][]);
+        link();
+    }
+
+    /**
+     * Returns the commits of HISTORY, a chain of first parents from newest
+     * to oldest, that change the number of occurrences of some pattern in
+     * some file, in the same order.
+     */
+    List<Commit> changing(List<Commit> history) {
+        List<List<String[]>> changes = new ArrayList<>();
+        Map<String, String> after = null;
+        for (Commit commit : history) {
+            Map<String, String> before = commit.getFileInfos();
+            if (after != null) {
+                changes.add(changes(before, after));
+            }
+            after = before;
+        }
+        if (after != null) {
+            changes.add(changes(Collections.emptyMap(), after));
+        }
+
+        Set<String> blobHashes = new HashSet<>();
+        for (List<String[]> commitChanges : changes) {
+            for (String[] change : commitChanges) {
+                for (String blobHash : change) {
+                    if (blobHash != null) {
+                        blobHashes.add(blobHash);
+                    }
+                }
+            }
+        }
+        Promisor.fetchBlobs(blobHashes);
+        Map<String, long[]> counts = new ConcurrentHashMap<>();
+        blobHashes.parallelStream().forEach(blobHash -> {
+            Blob blob = Blob.load(blobHash);
+            if (blob != null) {
+                counts.put(blobHash, count(blob.getBuffers()));
+            }
+        });
+        if (counts.size() < blobHashes.size()) {
+            throw new GitletException("File contents are missing.");
+        }
+
+        List<Commit> result = new ArrayList<>();
+        long[] none = new long[_patterns];
+        for (int i = 0; i < history.size(); i += 1) {
+            for (String[] change : changes.get(i)) {
+                long[] before =
+                        change[0] == null ? none : counts.get(change[0]);
+                long[] now = change[1] == null ? none : counts.get(change[1]);
+                if (!Arrays.equals(before, now)) {
+                    result.add(history.get(i));
+                    break;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the blob hashes, before and after, of each file whose blob
+     * differs between the trees BEFORE and AFTER; a missing file's is null.
+     */
+    private static List<String[]> changes(Map<String, String> before,
+                                          Map<String, String> after) {
+        List<String[]> changes = new ArrayList<>();
+        for (Map.Entry<String, String> file : after.entrySet()) {
+            String beforeHash = before.get(file.getKey());
+            if (!file.getValue().equals(beforeHash)) {
+                changes.add(new String[] { beforeHash, file.getValue() });
+            }
+        }
+        for (Map.Entry<String, String> file : before.entrySet()) {
+            if (!after.containsKey(file.getKey())) {
+                changes.add(new String[] { file.getValue(), null });
+            }
+        }
+        return changes;
+    }
+
+    /**
+     * Returns the number of occurrences of each pattern, in order, in the
+     * remaining bytes of BUFFERS taken one after another. The buffers are
+     * left unchanged.
+     */
+    long[] count(ByteBuffer... buffers) {
+        long[] counts = new long[_patterns];
+        int state = 0;
+        for (ByteBuffer buffer : buffers) {
+            for (int i = buffer.position(); i < buffer.limit(); i += 1) {
+                state = _next[state][buffer.get(i) & 0xff];
+                for (int p : _matches[state]) {
+                    counts[p] += 1;
+                }
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * Completes the trie into an automaton: missing transitions are taken
+     * from the state of the longest proper suffix, and each state also
+     * reports the patterns that suffix ends.
+     */
+    private void link() {
+        int[] fail = new int[_next.length];
+        Deque<Integer> queue = new ArrayDeque<>();
+        for (int c = 0; c < 256; c += 1) {
+            if (_next[0][c] < 0) {
+                _next[0][c] = 0;
+            } else {
+                queue.add(_next[0][c]);
+            }
+        }
+        while (!queue.isEmpty()) {
+            int state = queue.remove();
+            int[] inherited = _matches[fail[state]];
+            if (inherited.length > 0) {
+                int[] own = _matches[state];
+                int[] all = Arrays.copyOf(own, own.length + inherited.length);
+                System.arraycopy(inherited, 0, all, own.length,
+                        inherited.length);
+                _matches[state] = all;
+            }
+            for (int c = 0; c < 256; c += 1) {
+                int child = _next[state][c];
+                if (child < 0) {
+                    _next[state][c] = _next[fail[state]][c];
+                } else {
+                    fail[child] = _next[fail[state]][c];
+                    queue.add(child);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the transitions of a new state, all missing.
+     */
+    private static int[] newState() {
+        int[] transitions = new int[256];
+        Arrays.fill(transitions, -1);
+        return transitions;
+    }
+
+    /** Number of patterns. */
+    private final int _patterns;
+
+    /** Next state from each state on each byte. */
+    private final int[][] _next;
+
+    /** Patterns ending at each state. */
+    private final int[][] _matches;
+}
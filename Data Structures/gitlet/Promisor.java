@@ -0,0 +1,80 @@
+package gitlet;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/** Lazy blob fetching for partial clones.
+ *  A fetch with --filter=blob:none copies only commits and marks the remote
+ *  as a promisor: one that promises to hold the blobs this repository is
+ *  missing. Blobs are then copied from promisor remotes when first needed,
+ *  in one batch per command where the command knows what it will read, and
+ *  one at a time when Blob.load misses otherwise.
+ *  @author Erin Lee
+ */
+class Promisor {
+
+    /**
+     * Not instantiable.
+     */
+    private Promisor() {
+    }
+
+    /**
+     * Copies the blobs HASHES that are not stored locally from the promisor
+     * remotes. Returns true if every blob is now stored locally.
+     */
+    static boolean fetchBlobs(Collection<String> hashes) {
+        Set<String> missing = new LinkedHashSet<>();
+        for (String hash : hashes) {
+            if (hash != null && !Utils.join(Gitlet.OBJS_FOLDER, hash)
+                    .exists()) {
+                missing.add(hash);
+            }
+        }
+        if (missing.isEmpty()) {
+            return true;
+        }
+        for (Remote remote : promisors()) {
+            try (Transport transport = Transport.open(remote)) {
+                transport.fetchBlobs(missing);
+            } catch (GitletException excp) {
+                continue;
+            }
+            missing.removeIf(hash ->
+                    Utils.join(Gitlet.OBJS_FOLDER, hash).exists());
+            if (missing.isEmpty()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns true if this repository is a partial clone, with at least one
+     * promisor remote to fetch missing blobs from.
+     */
+    static boolean hasPromisors() {
+        return !promisors().isEmpty();
+    }
+
+    /**
+     * Returns the promisor remotes, leaving out local ones whose
+     * directories are gone.
+     */
+    private static List<Remote> promisors() {
+        List<Remote> result = new ArrayList<>();
+        if (!Utils.exists(Gitlet.CONFIG_FILE)) {
+            return result;
+        }
+        for (Remote remote : Config.load().getRemotes().values()) {
+            if (remote.isPromisor() && (!remote.isLocal()
+                    || remote.getGitletFolder().exists())) {
+                result.add(remote);
+            }
+        }
+        return result;
+    }
+}
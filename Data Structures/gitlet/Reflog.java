@@ -0,0 +1,375 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/** The history of where each branch, and HEAD, has pointed.
+ *  Every move of a branch head is appended to the branch's log under
+ *  .gitlet/logs/heads, and every change of the commit HEAD stands for to
+ *  .gitlet/logs/HEAD. A log is a sequence of binary records, each holding
+ *  the old and new commit ids as raw bytes (an empty id for none), the
+ *  time in milliseconds, the command that made the move, and finally the
+ *  record's own length, so that the newest records are read by seeking
+ *  back from the end of the file without reading the older ones. Logs are
+ *  only ever appended to. A record left torn by a crash in the middle of
+ *  an append is ignored when reading and cut off by the next append. The
+ *  moves a command makes are kept in memory
+ *  and appended once its journal commits, so that a command that fails
+ *  leaves no record of moves that never happened.
+ *  @author Erin Lee
+ */
+class Reflog {
+
+    /** Folder of logs inside a .gitlet folder. */
+    static final String LOGS = "logs";
+
+    /** Name of the log of HEAD. */
+    static final String HEAD = "HEAD";
+
+    /** Bytes of a record besides its ids and action: the id lengths, the
+     *  time, the action length and the record length. */
+    private static final int FIXED_SIZE = 1 + 1 + 8 + 2 + 4;
+
+    /** Most bytes of the action a record can hold. */
+    private static final int MAX_ACTION = 0xffff;
+
+    /** One move of a ref. */
+    static class Entry {
+        /** An entry for a move from OLDHASH to NEWHASH at TIME by ACTION. */
+        Entry(String oldHash, String newHash, long time, String action) {
+            _oldHash = oldHash;
+            _newHash = newHash;
+            _time = time;
+            _action = action;
+        }
+
+        /** Returns the commit the ref pointed to before, or null. */
+        String getOldHash() {
+            return _oldHash;
+        }
+
+        /** Returns the commit the ref points to after. */
+        String getNewHash() {
+            return _newHash;
+        }
+
+        /** Returns the time of the move in milliseconds. */
+        long getTime() {
+            return _time;
+        }
+
+        /** Returns the command that made the move. */
+        String getAction() {
+            return _action;
+        }
+
+        /** Commit before the move, or null. */
+        private final String _oldHash;
+        /** Commit after the move. */
+        private final String _newHash;
+        /** Time of the move. */
+        private final long _time;
+        /** Command that made the move. */
+        private final String _action;
+    }
+
+    /**
+     * Not instantiable.
+     */
+    private Reflog() {
+    }
+
+    /**
+     * Sets the command running now, ACTION, as the cause of the moves it
+     * records.
+     */
+    static void setAction(String action) {
+        _action = action;
+    }
+
+    /**
+     * Records that the ref NAME of this repository, HEAD or a branch, moved
+     * from OLDHASH, which may be null, to NEWHASH. The record is written by
+     * flush.
+     */
+    static void record(String name, String oldHash, String newHash) {
+        _pendingNames.add(name);
+        _pending.add(new Entry(oldHash, newHash, System.currentTimeMillis(),
+                _action));
+    }
+
+    /**
+     * Appends the moves recorded since the last flush to the logs of this
+     * repository.
+     */
+    static void flush() {
+        for (int i = 0; i < _pending.size(); i += 1) {
+            append(Gitlet.GITLET_FOLDER, _pendingNames.get(i),
+                    _pending.get(i));
+        }
+        discard();
+    }
+
+    /**
+     * Forgets the moves recorded since the last flush.
+     */
+    static void discard() {
+        _pendingNames.clear();
+        _pending.clear();
+    }
+
+    /**
+     * Appends ENTRY to the log of the ref NAME of the repository in
+     * GITLETFOLDER.
+     */
+    static void append(File gitletFolder, String name, Entry entry) {
+        File file = logFile(gitletFolder, name);
+        file.getParentFile().mkdirs();
+        byte[] action = clamp(entry.getAction()
+                .getBytes(StandardCharsets.UTF_8));
+        byte[] oldId = bytes(entry.getOldHash());
+        byte[] newId = bytes(entry.getNewHash());
+        int length = FIXED_SIZE - 4 + oldId.length + newId.length
+                + action.length;
+        ByteArrayOutputStream record = new ByteArrayOutputStream();
+        try (RandomAccessFile log = new RandomAccessFile(file, "rw")) {
+            long end = log.length();
+            if (end > 0 && last(log, end) == null) {
+                end = intactLength(log);
+                log.setLength(end);
+            }
+            DataOutputStream data = new DataOutputStream(record);
+            data.writeByte(oldId.length);
+            data.write(oldId);
+            data.writeByte(newId.length);
+            data.write(newId);
+            data.writeLong(entry.getTime());
+            data.writeShort(action.length);
+            data.write(action);
+            data.writeInt(length);
+            log.seek(end);
+            log.write(record.toByteArray());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /**
+     * Returns up to LIMIT of the newest entries of the log of the ref NAME
+     * of this repository, newest first. Only those entries are read.
+     */
+    static List<Entry> read(String name, int limit) {
+        return read(Gitlet.GITLET_FOLDER, name, limit);
+    }
+
+    /**
+     * Returns up to LIMIT of the newest entries of the log of the ref NAME
+     * of the repository in GITLETFOLDER, newest first. A torn last record
+     * is skipped.
+     */
+    static List<Entry> read(File gitletFolder, String name, int limit) {
+        List<Entry> entries = new ArrayList<>();
+        File file = logFile(gitletFolder, name);
+        if (!file.isFile()) {
+            return entries;
+        }
+        try (RandomAccessFile log = new RandomAccessFile(file, "r")) {
+            long end = log.length();
+            boolean torn = false;
+            while (end > 0 && entries.size() < limit) {
+                Entry entry = last(log, end);
+                if (entry == null) {
+                    if (torn || !entries.isEmpty()) {
+                        break;
+                    }
+                    torn = true;
+                    end = intactLength(log);
+                    continue;
+                }
+                entries.add(entry);
+                log.seek(end - 4);
+                end -= 4 + log.readInt();
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return entries;
+    }
+
+    /**
+     * Returns the commit the ref NAME of this repository pointed to N moves
+     * ago, or null if its log is shorter.
+     */
+    static String find(String name, int n) {
+        List<Entry> entries = read(name, n + 1);
+        return entries.size() <= n ? null : entries.get(n).getNewHash();
+    }
+
+    /**
+     * Returns every commit the logs of this repository mention.
+     */
+    static Set<String> hashes() {
+        Set<String> hashes = new HashSet<>();
+        List<String> names = new ArrayList<>();
+        names.add(HEAD);
+        List<String> branchLogs = Utils.plainFilenamesIn(
+                Utils.join(Gitlet.GITLET_FOLDER, LOGS, "heads"));
+        if (branchLogs != null) {
+            for (String fileName : branchLogs) {
+                names.add(Branch.branchName(fileName));
+            }
+        }
+        for (String name : names) {
+            for (Entry entry : read(name, Integer.MAX_VALUE)) {
+                if (entry.getOldHash() != null) {
+                    hashes.add(entry.getOldHash());
+                }
+                hashes.add(entry.getNewHash());
+            }
+        }
+        return hashes;
+    }
+
+    /**
+     * Deletes the log of the branch NAME of this repository.
+     */
+    static void delete(String name) {
+        logFile(Gitlet.GITLET_FOLDER, name).delete();
+    }
+
+    /**
+     * Returns the entry of the record of LOG that ends at END, or null if
+     * there is no whole record there.
+     */
+    private static Entry last(RandomAccessFile log, long end)
+            throws IOException {
+        if (end < FIXED_SIZE) {
+            return null;
+        }
+        log.seek(end - 4);
+        int length = log.readInt();
+        if (length < FIXED_SIZE - 4 || length > end - 4) {
+            return null;
+        }
+        byte[] record = new byte[length];
+        log.seek(end - 4 - length);
+        log.readFully(record);
+        ByteBuffer buffer = ByteBuffer.wrap(record);
+        Entry entry = parse(buffer);
+        return buffer.hasRemaining() ? null : entry;
+    }
+
+    /**
+     * Returns the length of the whole records at the start of LOG, reading
+     * it forwards, which is where any torn record begins.
+     */
+    private static long intactLength(RandomAccessFile log) throws IOException {
+        byte[] contents = new byte[(int) log.length()];
+        log.seek(0);
+        log.readFully(contents);
+        ByteBuffer buffer = ByteBuffer.wrap(contents);
+        int intact = 0;
+        while (parse(buffer) != null && buffer.remaining() >= 4
+                && buffer.getInt() == buffer.position() - intact - 4) {
+            intact = buffer.position();
+        }
+        return intact;
+    }
+
+    /**
+     * Returns the entry held at the position of RECORD, without its
+     * trailing length, or null if RECORD ends first.
+     */
+    private static Entry parse(ByteBuffer record) {
+        byte[] oldId = id(record);
+        byte[] newId = oldId == null ? null : id(record);
+        if (newId == null || newId.length == 0 || record.remaining() < 8 + 2) {
+            return null;
+        }
+        long time = record.getLong();
+        int length = record.getShort() & 0xffff;
+        if (record.remaining() < length) {
+            return null;
+        }
+        byte[] action = new byte[length];
+        record.get(action);
+        return new Entry(oldId.length == 0 ? null : HashAlgorithm.hex(oldId),
+                HashAlgorithm.hex(newId), time,
+                new String(action, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Returns the id read from RECORD, or null if RECORD ends first.
+     */
+    private static byte[] id(ByteBuffer record) {
+        if (!record.hasRemaining()) {
+            return null;
+        }
+        int length = record.get() & 0xff;
+        if (record.remaining() < length) {
+            return null;
+        }
+        byte[] id = new byte[length];
+        record.get(id);
+        return id;
+    }
+
+    /**
+     * Returns the bytes of the UTF-8 ACTION cut to the most a record holds,
+     * without splitting a character.
+     */
+    private static byte[] clamp(byte[] action) {
+        if (action.length <= MAX_ACTION) {
+            return action;
+        }
+        int length = MAX_ACTION;
+        while ((action[length] & 0xc0) == 0x80) {
+            length -= 1;
+        }
+        return Arrays.copyOf(action, length);
+    }
+
+    /**
+     * Returns the bytes of the hexadecimal HASH, or none if it is null.
+     */
+    private static byte[] bytes(String hash) {
+        if (hash == null) {
+            return new byte[0];
+        }
+        byte[] id = new byte[hash.length() / 2];
+        for (int i = 0; i < id.length; i += 1) {
+            id[i] = (byte) Integer.parseInt(hash.substring(2 * i, 2 * i + 2),
+                    16);
+        }
+        return id;
+    }
+
+    /**
+     * Returns the log file of the ref NAME in GITLETFOLDER.
+     */
+    private static File logFile(File gitletFolder, String name) {
+        if (name.equals(HEAD)) {
+            return Utils.join(gitletFolder, LOGS, HEAD);
+        }
+        return Utils.join(gitletFolder, LOGS, "heads", Branch.fileName(name));
+    }
+
+    /** Command running now. */
+    private static String _action = "";
+
+    /** Refs of the moves recorded and not yet written. */
+    private static List<String> _pendingNames = new ArrayList<>();
+
+    /** Moves recorded and not yet written. */
+    private static List<Entry> _pending = new ArrayList<>();
+}
@@ -8,6 +8,9 @@ import java.io.Serializable;
  */
 public class Remote implements Serializable {
 
+    /** Version of the serialized form, that of the original class. */
+    private static final long serialVersionUID = -4068708230968945941L;
+
     /**
      * A new branch in remote including a NAME and a DIRECTORY.
      */
@@ -30,6 +33,30 @@ public class Remote implements Serializable {
         return _directory;
     }
 
+    /**
+     * Returns true if this remote promises to hold the blobs that a partial
+     * fetch from it left out.
+     */
+    boolean isPromisor() {
+        return _promisor;
+    }
+
+    /**
+     * Marks this remote as a promisor.
+     */
+    void setPromisor() {
+        _promisor = true;
+    }
+
+    /**
+     * Returns true if the remote's repository is reached through the file
+     * system rather than served by another process (see Transport).
+     */
+    boolean isLocal() {
+        return !_directory.startsWith(Transport.EXEC)
+                && !_directory.startsWith(Transport.SOCKET);
+    }
+
     /**
      * Returns gitlet folder.
      */
@@ -59,11 +86,24 @@ public class Remote implements Serializable {
     }
 
     /**
-     * Saves the HEAD of the branch with BRANCHNAME.
+     * Saves the HEAD of the branch with BRANCHNAME, provided the remote head
+     * is still EXPECTEDHEAD (null if the branch must not exist yet). The
+     * caller holds the remote's lock and has a journal open on the remote,
+     * which the head is written through; the move is logged in the
+     * remote's reflog directly.
      */
-    void saveBranchHead(String branchName, String head) {
-        Utils.writeContents(
-                Utils.join(getHeadsFolder(), branchName), head);
+    void saveBranchHead(String branchName, String expectedHead, String head) {
+        File file = Utils.join(getHeadsFolder(), Branch.fileName(branchName));
+        Branch stored = Branch.load(branchName, getHeadsFolder());
+        String storedHead = stored == null ? null : stored.getHead();
+        if (expectedHead == null ? storedHead != null
+                : !expectedHead.equals(storedHead)) {
+            throw new GitletException("Remote branch " + branchName
+                    + " was updated by another process.");
+        }
+        Utils.writeContents(file, head);
+        Reflog.append(getGitletFolder(), branchName, new Reflog.Entry(
+                expectedHead, head, System.currentTimeMillis(), "push"));
     }
 
     /** String name of branch. */
@@ -72,4 +112,7 @@ public class Remote implements Serializable {
     /** String name of branch. */
     private String _directory;
 
+    /** True if a partial fetch was made from this remote. */
+    private boolean _promisor;
+
 }
@@ -0,0 +1,290 @@
+package gitlet;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/** Rename and copy detection for Gitlet.
+ *  Files are compared by MinHash sketches of their contents, so that pairing
+ *  a deleted file with an added one costs a sketch comparison rather than a
+ *  full diff of both blobs.
+ *  @author Erin Lee
+ */
+public class RenameDetector {
+
+    /** Minimum similarity, in percent, for two files to be paired. */
+    static final int SIMILARITY_THRESHOLD = 50;
+
+    /** Number of hash functions in a sketch. */
+    private static final int SKETCH_SIZE = 64;
+
+    /** Longest shingle, in bytes. Longer lines are split up. */
+    private static final int SHINGLE_LENGTH = 64;
+
+    /** FNV-1a offset basis, the hash of no bytes. */
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+
+    /** FNV-1a prime. */
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    /** Seeds of the hash functions, one per sketch slot. */
+    private static final long[] SEEDS = new long[SKETCH_SIZE];
+
+    static {
+        long seed = 0x9E3779B97F4A7C15L;
+        for (int i = 0; i < SKETCH_SIZE; i += 1) {
+            seed = mix(seed + i);
+            SEEDS[i] = seed;
+        }
+    }
+
+    /**
+     * A new detector that reads blobs from the current repository.
+     */
+    RenameDetector() {
+        _sketches = new HashMap<>();
+    }
+
+    /**
+     * Returns the renames from the tree BEFORE to the tree AFTER, both maps
+     * from file name to blob hash, as a map from new name to old name. Only
+     * files missing from AFTER can be rename sources and only files missing
+     * from BEFORE can be rename targets. Exact content matches are paired
+     * first; the rest are paired greedily by similarity.
+     */
+    TreeMap<String, String> findRenames(Map<String, String> before,
+                                        Map<String, String> after) {
+        TreeMap<String, String> renames = new TreeMap<>();
+        TreeMap<String, String> deleted = new TreeMap<>();
+        TreeMap<String, String> added = new TreeMap<>();
+        for (String fileName : before.keySet()) {
+            if (!after.containsKey(fileName)) {
+                deleted.put(fileName, before.get(fileName));
+            }
+        }
+        for (String fileName : after.keySet()) {
+            if (!before.containsKey(fileName)) {
+                added.put(fileName, after.get(fileName));
+            }
+        }
+        if (deleted.isEmpty() || added.isEmpty()) {
+            return renames;
+        }
+
+        Map<String, List<String>> deletedByHash = new HashMap<>();
+        for (String fileName : deleted.keySet()) {
+            deletedByHash.computeIfAbsent(deleted.get(fileName),
+                k -> new ArrayList<>()).add(fileName);
+        }
+        for (String fileName : new ArrayList<>(added.keySet())) {
+            List<String> sources = deletedByHash.get(added.get(fileName));
+            if (sources != null && !sources.isEmpty()) {
+                String source = sources.remove(0);
+                renames.put(fileName, source);
+                deleted.remove(source);
+                added.remove(fileName);
+            }
+        }
+
+        pairBySimilarity(deleted, added, renames, true);
+        return renames;
+    }
+
+    /**
+     * Returns the copies from the tree BEFORE to the tree AFTER as a map from
+     * new name to source name. A copy is a file added in AFTER whose content
+     * matches a file present in both trees. Files in EXCLUDE, typically rename
+     * targets, are not considered.
+     */
+    TreeMap<String, String> findCopies(Map<String, String> before,
+                                       Map<String, String> after,
+                                       Set<String> exclude) {
+        TreeMap<String, String> copies = new TreeMap<>();
+        TreeMap<String, String> sources = new TreeMap<>();
+        TreeMap<String, String> added = new TreeMap<>();
+        for (String fileName : before.keySet()) {
+            if (after.containsKey(fileName)) {
+                sources.put(fileName, before.get(fileName));
+            }
+        }
+        for (String fileName : after.keySet()) {
+            if (!before.containsKey(fileName)
+                    && !exclude.contains(fileName)) {
+                added.put(fileName, after.get(fileName));
+            }
+        }
+        if (sources.isEmpty() || added.isEmpty()) {
+            return copies;
+        }
+
+        Map<String, String> sourceByHash = new HashMap<>();
+        for (String fileName : sources.keySet()) {
+            sourceByHash.putIfAbsent(sources.get(fileName), fileName);
+        }
+        for (String fileName : new ArrayList<>(added.keySet())) {
+            String source = sourceByHash.get(added.get(fileName));
+            if (source != null) {
+                copies.put(fileName, source);
+                added.remove(fileName);
+            }
+        }
+
+        pairBySimilarity(sources, added, copies, false);
+        return copies;
+    }
+
+    /**
+     * Returns the estimated similarity, in percent, of the blobs OLDHASH and
+     * NEWHASH.
+     */
+    int similarity(String oldHash, String newHash) {
+        if (oldHash.equals(newHash)) {
+            return 100;
+        }
+        return similarity(sketch(oldHash), sketch(newHash));
+    }
+
+    /**
+     * Pairs files of ADDED with files of SOURCES whose similarity is at least
+     * SIMILARITY_THRESHOLD, best pairs first, recording each pair in PAIRS as
+     * new name to source name. If EXCLUSIVE, each source is used at most once.
+     */
+    private void pairBySimilarity(TreeMap<String, String> sources,
+                                  TreeMap<String, String> added,
+                                  TreeMap<String, String> pairs,
+                                  boolean exclusive) {
+        if (sources.isEmpty() || added.isEmpty()) {
+            return;
+        }
+        List<String[]> candidates = new ArrayList<>();
+        List<Integer> scores = new ArrayList<>();
+        for (String newName : added.keySet()) {
+            long[] newSketch = sketch(added.get(newName));
+            for (String oldName : sources.keySet()) {
+                int score = similarity(sketch(sources.get(oldName)),
+                        newSketch);
+                if (score >= SIMILARITY_THRESHOLD) {
+                    candidates.add(new String[] { newName, oldName });
+                    scores.add(score);
+                }
+            }
+        }
+        Integer[] order = new Integer[candidates.size()];
+        for (int i = 0; i < order.length; i += 1) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> scores.get(b) - scores.get(a));
+
+        Set<String> usedSources = new HashSet<>();
+        for (int i : order) {
+            String newName = candidates.get(i)[0];
+            String oldName = candidates.get(i)[1];
+            if (pairs.containsKey(newName)
+                    || (exclusive && usedSources.contains(oldName))) {
+                continue;
+            }
+            pairs.put(newName, oldName);
+            usedSources.add(oldName);
+        }
+    }
+
+    /**
+     * Returns the sketch of the blob with the given HASH, computing it at most
+     * once per detector.
+     */
+    private long[] sketch(String hash) {
+        long[] result = _sketches.get(hash);
+        if (result == null) {
+            Blob blob = Blob.load(hash);
+            result = blob == null ? sketch(new byte[0])
+                    : sketch(blob.getBuffers());
+            _sketches.put(hash, result);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the MinHash sketch of CONTENTS. Shingles are lines, with lines
+     * longer than SHINGLE_LENGTH split into pieces of that length.
+     */
+    static long[] sketch(byte[] contents) {
+        return sketch(ByteBuffer.wrap(contents));
+    }
+
+    /**
+     * Returns the MinHash sketch of the concatenation of BUFFERS, read in
+     * place, so that a blob stored as chunks is never copied into one
+     * array. Shingles may span buffers.
+     */
+    static long[] sketch(ByteBuffer... buffers) {
+        long[] result = new long[SKETCH_SIZE];
+        Arrays.fill(result, Long.MAX_VALUE);
+        long shingle = FNV_OFFSET;
+        int length = 0;
+        for (ByteBuffer buffer : buffers) {
+            int end = buffer.limit();
+            for (int i = buffer.position(); i < end; i += 1) {
+                byte b = buffer.get(i);
+                if (b == '\n' || length == SHINGLE_LENGTH) {
+                    if (length > 0) {
+                        addShingle(result, shingle);
+                    }
+                    shingle = FNV_OFFSET;
+                    length = 0;
+                    if (b == '\n') {
+                        continue;
+                    }
+                }
+                shingle = (shingle ^ (b & 0xff)) * FNV_PRIME;
+                length += 1;
+            }
+        }
+        if (length > 0) {
+            addShingle(result, shingle);
+        }
+        return result;
+    }
+
+    /**
+     * Adds the shingle with FNV-1a hash SHINGLE to the sketch RESULT.
+     */
+    private static void addShingle(long[] result, long shingle) {
+        for (int k = 0; k < SKETCH_SIZE; k += 1) {
+            long value = mix(shingle ^ SEEDS[k]);
+            if (value < result[k]) {
+                result[k] = value;
+            }
+        }
+    }
+
+    /**
+     * Returns the similarity, in percent, of sketches A and B.
+     */
+    static int similarity(long[] a, long[] b) {
+        int same = 0;
+        for (int i = 0; i < SKETCH_SIZE; i += 1) {
+            if (a[i] == b[i]) {
+                same += 1;
+            }
+        }
+        return same * 100 / SKETCH_SIZE;
+    }
+
+    /**
+     * Returns X scrambled by the SplitMix64 finalizer.
+     */
+    private static long mix(long x) {
+        x = (x ^ (x >>> 30)) * 0xbf58476d1ce4e5b9L;
+        x = (x ^ (x >>> 27)) * 0x94d049bb133111ebL;
+        return x ^ (x >>> 31);
+    }
+
+    /** Sketches of blobs already seen, keyed by blob hash. */
+    private HashMap<String, long[]> _sketches;
+}
@@ -0,0 +1,401 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+/** Timings of Gitlet commands on a synthetic repository.
+ *  Run as java gitlet.RepoBenchmark [FILES [SIZE [DEPTH [MERGES]]]] in an
+ *  empty directory, which it fills with a repository of FILES files of
+ *  SIZE bytes each (defaults 100 and 4096) and a history of DEPTH commits
+ *  (default 50), MERGES percent of which (default 10) merge a side branch.
+ *  Each command is then run through Main as from the command line, first
+ *  a few times untimed so the JIT compiles it, then repeatedly for about a
+ *  second, with any work it needs done beforehand left out of the timing,
+ *  and the mean time per run is printed. The directory is emptied again at
+ *  the end. make bench runs this and HashBenchmark.
+ *  @author Erin Lee
+ */
+public class RepoBenchmark {
+
+    /** Untimed runs of each command before measuring. */
+    private static final int WARMUP_RUNS = 3;
+
+    /** Minimum number of timed runs of each command. */
+    private static final int MIN_RUNS = 5;
+
+    /** Minimum time to measure each command for, in nanoseconds. */
+    private static final long MEASURE_NANOS = 1_000_000_000L;
+
+    /** Percent of the files each generated commit changes. */
+    private static final int CHANGE_PERCENT = 10;
+
+    /** Folder, inside the benchmark directory, of everything but the
+     *  measured repository itself. */
+    private static final File SCRATCH = new File("bench");
+
+    /** The remote repository pushes go to and fetches come from. */
+    private static final File REMOTE = Utils.join(SCRATCH, "remote");
+
+    /** Copy of the measured repository as it was just after init. */
+    private static final File INIT_COPY = Utils.join(SCRATCH, "init");
+
+    /** Copy of the remote repository as it was just after init. */
+    private static final File REMOTE_INIT_COPY =
+            Utils.join(SCRATCH, "remote-init");
+
+    /** Where the measured repository is kept while fetches are timed. */
+    private static final File PARKED = Utils.join(SCRATCH, "parked");
+
+    /** A setup, measured command and cleanup, run repeatedly. */
+    private interface Operation {
+
+        /**
+         * Does the untimed work a run needs first.
+         */
+        default void setup() {
+        }
+
+        /**
+         * Runs the command being measured.
+         */
+        void run();
+
+        /**
+         * Does the untimed work that undoes a run.
+         */
+        default void cleanup() {
+        }
+    }
+
+    /** Usage: java gitlet.RepoBenchmark [FILES [SIZE [DEPTH [MERGES]]]],
+     *  with ARGS holding the optional sizes. */
+    public static void main(String... args) {
+        int files = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+        int size = args.length > 1 ? Integer.parseInt(args[1]) : 4096;
+        int depth = args.length > 2 ? Integer.parseInt(args[2]) : 50;
+        int merges = args.length > 3 ? Integer.parseInt(args[3]) : 10;
+        if (Gitlet.GITLET_FOLDER.exists() || SCRATCH.exists()) {
+            System.err.println("Run the benchmark in an empty directory.");
+            return;
+        }
+
+        RepoBenchmark benchmark = new RepoBenchmark(files, size);
+        try {
+            benchmark.generate(depth, merges);
+            benchmark.measureAll();
+        } finally {
+            benchmark.clean();
+        }
+    }
+
+    /**
+     * A benchmark on FILES files of SIZE bytes.
+     */
+    RepoBenchmark(int files, int size) {
+        _files = files;
+        _size = size;
+        _random = new Random(0);
+        _stdout = System.out;
+    }
+
+    /**
+     * Initializes the repository and the remote, and commits DEPTH changes,
+     * MERGES percent of them merges.
+     */
+    void generate(int depth, int merges) {
+        gitlet("init");
+        copyFolder(Gitlet.GITLET_FOLDER, Utils.join(REMOTE, ".gitlet"));
+        copyFolder(Gitlet.GITLET_FOLDER,
+                Utils.join(REMOTE_INIT_COPY, ".gitlet"));
+        gitlet("add-remote", "bench",
+                Utils.join(REMOTE, ".gitlet").getPath());
+        gitlet("fetch", "bench", "master");
+        copyFolder(Gitlet.GITLET_FOLDER, INIT_COPY);
+
+        for (int i = 0; i < _files; i += 1) {
+            writeFile(i);
+            gitlet("add", fileName(i));
+        }
+        gitlet("commit", "generated files");
+        for (int i = 0; i < depth; i += 1) {
+            if (_random.nextInt(100) < merges) {
+                gitlet("merge", prepareSideBranch());
+            } else {
+                changeFiles();
+                gitlet("commit", "change " + i);
+            }
+        }
+
+        gitlet("branch", "other");
+        gitlet("checkout", "other");
+        changeFiles();
+        gitlet("commit", "other change");
+        gitlet("checkout", "master");
+        _stdout.printf("%d files of %d bytes, %d commits%n%n", _files, _size,
+                depth);
+    }
+
+    /**
+     * Measures each command and prints the results.
+     */
+    void measureAll() {
+        _stdout.printf("%-12s %8s %12s%n", "command", "runs", "ms/run");
+        measure("add", new Operation() {
+            @Override
+            public void setup() {
+                writeFile(_random.nextInt(_files));
+            }
+
+            @Override
+            public void run() {
+                gitlet("add", fileName(_changed));
+            }
+        });
+        gitlet("commit", "added");
+        measure("commit", new Operation() {
+            @Override
+            public void setup() {
+                changeFiles();
+            }
+
+            @Override
+            public void run() {
+                gitlet("commit", "measured");
+            }
+        });
+        measure("status", () -> gitlet("status"));
+        measure("log", () -> gitlet("log"));
+        measure("checkout", new Operation() {
+            @Override
+            public void run() {
+                _onOther = !_onOther;
+                gitlet("checkout", _onOther ? "other" : "master");
+            }
+        });
+        if (_onOther) {
+            gitlet("checkout", "master");
+            _onOther = false;
+        }
+        measure("merge", new Operation() {
+            @Override
+            public void setup() {
+                _side = prepareSideBranch();
+            }
+
+            @Override
+            public void run() {
+                gitlet("merge", _side);
+            }
+        });
+        measure("push", new Operation() {
+            @Override
+            public void setup() {
+                deleteFolder(REMOTE);
+                copyFolder(REMOTE_INIT_COPY, REMOTE);
+            }
+
+            @Override
+            public void run() {
+                gitlet("push", "bench", "master");
+            }
+        });
+        measure("fetch", new Operation() {
+            @Override
+            public void setup() {
+                moveFolder(Gitlet.GITLET_FOLDER, PARKED);
+                copyFolder(INIT_COPY, Gitlet.GITLET_FOLDER);
+            }
+
+            @Override
+            public void run() {
+                gitlet("fetch", "bench", "master");
+            }
+
+            @Override
+            public void cleanup() {
+                deleteFolder(Gitlet.GITLET_FOLDER);
+                moveFolder(PARKED, Gitlet.GITLET_FOLDER);
+            }
+        });
+    }
+
+    /**
+     * Runs OPERATION repeatedly and prints the mean time of its command
+     * under NAME.
+     */
+    private void measure(String name, Operation operation) {
+        for (int i = 0; i < WARMUP_RUNS; i += 1) {
+            operation.setup();
+            operation.run();
+            operation.cleanup();
+        }
+        int runs = 0;
+        long measured = 0;
+        long start = System.nanoTime();
+        while (runs < MIN_RUNS || System.nanoTime() - start < MEASURE_NANOS) {
+            operation.setup();
+            long runStart = System.nanoTime();
+            operation.run();
+            measured += System.nanoTime() - runStart;
+            operation.cleanup();
+            runs += 1;
+        }
+        _stdout.printf("%-12s %8d %12.3f%n", name, runs,
+                measured / 1e6 / runs);
+    }
+
+    /**
+     * Commits a change to a new side branch and another to master, leaving
+     * master checked out, and returns the name of the side branch.
+     */
+    private String prepareSideBranch() {
+        _merges += 1;
+        String side = "side" + _merges;
+        gitlet("branch", side);
+        gitlet("checkout", side);
+        changeFiles();
+        gitlet("commit", "side change");
+        gitlet("checkout", "master");
+        changeFiles();
+        gitlet("commit", "master change");
+        return side;
+    }
+
+    /**
+     * Rewrites and stages CHANGE_PERCENT percent of the files, at least one.
+     */
+    private void changeFiles() {
+        int count = Math.max(1, _files * CHANGE_PERCENT / 100);
+        for (int i = 0; i < count; i += 1) {
+            writeFile(_random.nextInt(_files));
+            gitlet("add", fileName(_changed));
+        }
+    }
+
+    /**
+     * Fills file number I with new random lines of text, and remembers it
+     * as the file changed last.
+     */
+    private void writeFile(int i) {
+        StringBuilder contents = new StringBuilder(_size);
+        while (contents.length() < _size) {
+            int length = 20 + _random.nextInt(60);
+            for (int j = 0; j < length; j += 1) {
+                contents.append((char) ('a' + _random.nextInt(26)));
+            }
+            contents.append('\n');
+        }
+        contents.setLength(_size);
+        Utils.writeContents(new File(fileName(i)), contents.toString());
+        _changed = i;
+    }
+
+    /**
+     * Returns the name of file number I.
+     */
+    private static String fileName(int i) {
+        return String.format("f%05d.txt", i);
+    }
+
+    /**
+     * Runs the Gitlet command ARGS, discarding what it prints on standard
+     * output.
+     */
+    private void gitlet(String... args) {
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        try {
+            Main.main(args);
+        } finally {
+            System.setOut(_stdout);
+        }
+    }
+
+    /**
+     * Removes everything the benchmark created.
+     */
+    void clean() {
+        deleteFolder(Gitlet.GITLET_FOLDER);
+        deleteFolder(SCRATCH);
+        for (int i = 0; i < _files; i += 1) {
+            new File(fileName(i)).delete();
+        }
+    }
+
+    /**
+     * Copies the folder FROM and everything in it to TO.
+     */
+    private static void copyFolder(File from, File to) {
+        Path source = from.toPath();
+        Path target = to.toPath();
+        to.getParentFile().mkdirs();
+        try (Stream<Path> paths = Files.walk(source)) {
+            for (Path path : (Iterable<Path>) paths::iterator) {
+                Files.copy(path, target.resolve(source.relativize(path)));
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /**
+     * Renames the folder FROM to TO.
+     */
+    private static void moveFolder(File from, File to) {
+        try {
+            Files.move(from.toPath(), to.toPath());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /**
+     * Deletes the folder FOLDER and everything in it, if it exists.
+     */
+    private static void deleteFolder(File folder) {
+        if (!folder.exists()) {
+            return;
+        }
+        List<Path> paths = new ArrayList<>();
+        try (Stream<Path> walk = Files.walk(folder.toPath())) {
+            walk.sorted(Comparator.reverseOrder()).forEach(paths::add);
+            for (Path path : paths) {
+                Files.delete(path);
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Number of files in the repository. */
+    private final int _files;
+
+    /** Size of each file, in bytes. */
+    private final int _size;
+
+    /** Source of file contents and choices, seeded for repeatability. */
+    private final Random _random;
+
+    /** Standard output, while commands print elsewhere. */
+    private final PrintStream _stdout;
+
+    /** Number of the file changed last. */
+    private int _changed;
+
+    /** Number of side branches made so far. */
+    private int _merges;
+
+    /** Side branch the next timed merge merges. */
+    private String _side;
+
+    /** True if the branch other is checked out. */
+    private boolean _onOther;
+}
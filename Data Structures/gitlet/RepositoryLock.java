@@ -0,0 +1,131 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/** Exclusive lock on a Gitlet repository, held by commands that write.
+ *  The lock is an OS file lock on .gitlet/lock, so it is released if the
+ *  holding process dies, plus an in-process lock so that threads of one
+ *  process take turns as well. Commands that only read never take it:
+ *  objects are immutable and every ref or stage file is replaced by an
+ *  atomic rename, so a reader always sees some complete version of each
+ *  file, and reads through Journal.beginReading, which shows the updates
+ *  of a writer that is applying them whole.
+ *  @author Erin Lee
+ */
+class RepositoryLock implements AutoCloseable {
+
+    /** Name of the lock file inside a .gitlet folder. */
+    static final String LOCK_NAME = "lock";
+
+    /** Serializes writers within this process. */
+    private static final ReentrantLock THREAD_LOCK = new ReentrantLock();
+
+    /**
+     * A held lock on CHANNEL, released through FILELOCK.
+     */
+    private RepositoryLock(FileChannel channel, FileLock fileLock) {
+        _channel = channel;
+        _fileLock = fileLock;
+    }
+
+    /**
+     * Returns the lock of the current repository, waiting for other writers
+     * to finish.
+     */
+    static RepositoryLock acquire() {
+        return acquire(Gitlet.GITLET_FOLDER);
+    }
+
+    /**
+     * Returns the lock of the repository in GITLETFOLDER, waiting for other
+     * writers to finish.
+     */
+    static RepositoryLock acquire(File gitletFolder) {
+        THREAD_LOCK.lock();
+        FileChannel channel = null;
+        try {
+            channel = open(gitletFolder);
+            return new RepositoryLock(channel, channel.lock());
+        } catch (IOException excp) {
+            close(channel);
+            THREAD_LOCK.unlock();
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /**
+     * Replays the journal of the current repository if a writer crashed
+     * before applying it, and converts the names of its branch files if
+     * they predate escaping (see Branch.migrate). Does nothing while
+     * another writer holds the lock, since that writer will do both itself.
+     */
+    static void recover() {
+        if ((!Journal.pending(Gitlet.GITLET_FOLDER)
+                && Config.load().hasEscapedRefs())
+                || !THREAD_LOCK.tryLock()) {
+            return;
+        }
+        FileChannel channel = null;
+        try {
+            channel = open(Gitlet.GITLET_FOLDER);
+            FileLock fileLock = channel.tryLock();
+            if (fileLock != null) {
+                Journal.recover(Gitlet.GITLET_FOLDER);
+                Branch.migrate();
+                fileLock.release();
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        } finally {
+            close(channel);
+            THREAD_LOCK.unlock();
+        }
+    }
+
+    /**
+     * Releases this lock.
+     */
+    @Override
+    public void close() {
+        try {
+            _fileLock.release();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        } finally {
+            close(_channel);
+            THREAD_LOCK.unlock();
+        }
+    }
+
+    /**
+     * Returns a channel on the lock file in GITLETFOLDER.
+     */
+    private static FileChannel open(File gitletFolder) throws IOException {
+        return new RandomAccessFile(Utils.join(gitletFolder, LOCK_NAME),
+                "rw").getChannel();
+    }
+
+    /**
+     * Closes CHANNEL, if any, ignoring errors.
+     */
+    private static void close(FileChannel channel) {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException excp) {
+                return;
+            }
+        }
+    }
+
+    /** Channel on the lock file. */
+    private final FileChannel _channel;
+
+    /** The OS lock held on the lock file. */
+    private final FileLock _fileLock;
+}
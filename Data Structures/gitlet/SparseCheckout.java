@@ -0,0 +1,126 @@
+package gitlet;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+/** Sparse-checkout patterns of a Gitlet repository.
+ *  The patterns are kept one per line in .gitlet/sparse-checkout as globs
+ *  over file names; a pattern starting with ! excludes what it matches, and
+ *  the last pattern matching a name decides, as in Git. Lines starting with
+ *  # are comments. Without patterns every file is included. Files that are
+ *  not included stay tracked but are never written to or looked for in the
+ *  working directory by checkout, reset, merge and status.
+ *  @author Erin Lee
+ */
+class SparseCheckout {
+
+    /** File holding the patterns. */
+    static final File PATTERNS_FILE =
+            new File(Gitlet.GITLET_FOLDER, "sparse-checkout");
+
+    /**
+     * Sparse checkout with the pattern lines PATTERNS.
+     */
+    private SparseCheckout(List<String> patterns) {
+        _patterns = new ArrayList<>();
+        _matchers = new ArrayList<>();
+        for (String pattern : patterns) {
+            pattern = pattern.trim();
+            if (pattern.isEmpty() || pattern.startsWith("#")) {
+                continue;
+            }
+            _patterns.add(pattern);
+            String glob = pattern.startsWith("!") ? pattern.substring(1)
+                    : pattern;
+            _matchers.add(FileSystems.getDefault()
+                    .getPathMatcher("glob:" + glob));
+        }
+    }
+
+    /**
+     * Returns the sparse checkout of this repository.
+     */
+    static SparseCheckout load() {
+        List<String> lines = new ArrayList<>();
+        if (Utils.exists(PATTERNS_FILE)) {
+            String text = new String(Utils.readContents(PATTERNS_FILE),
+                    StandardCharsets.UTF_8);
+            for (String line : text.split("\n")) {
+                lines.add(line);
+            }
+        }
+        return new SparseCheckout(lines);
+    }
+
+    /**
+     * Saves PATTERNS as those of this repository and returns the resulting
+     * sparse checkout. No patterns turns sparse checkout off.
+     */
+    static SparseCheckout save(List<String> patterns) {
+        SparseCheckout sparse = new SparseCheckout(patterns);
+        if (sparse._patterns.isEmpty()) {
+            Utils.delete(PATTERNS_FILE);
+        } else {
+            Utils.writeContents(PATTERNS_FILE,
+                    String.join("\n", sparse._patterns) + "\n");
+        }
+        return sparse;
+    }
+
+    /**
+     * Returns true if any patterns are set.
+     */
+    boolean isEnabled() {
+        return !_patterns.isEmpty();
+    }
+
+    /**
+     * Returns the patterns, in order.
+     */
+    List<String> getPatterns() {
+        return _patterns;
+    }
+
+    /**
+     * Returns true if the file FILENAME belongs in the working directory.
+     */
+    boolean includes(String fileName) {
+        if (_patterns.isEmpty()) {
+            return true;
+        }
+        boolean included = false;
+        for (int i = 0; i < _patterns.size(); i += 1) {
+            if (_matchers.get(i).matches(Paths.get(fileName))) {
+                included = !_patterns.get(i).startsWith("!");
+            }
+        }
+        return included;
+    }
+
+    /**
+     * Returns the names in FILENAMES that are included, in the same order.
+     */
+    List<String> filter(List<String> fileNames) {
+        if (_patterns.isEmpty()) {
+            return fileNames;
+        }
+        List<String> result = new ArrayList<>();
+        for (String fileName : fileNames) {
+            if (includes(fileName)) {
+                result.add(fileName);
+            }
+        }
+        return result;
+    }
+
+    /** Pattern lines, without comments and blank lines. */
+    private List<String> _patterns;
+
+    /** Matcher of each pattern, without its !. */
+    private List<PathMatcher> _matchers;
+}
@@ -3,12 +3,12 @@ package gitlet;
 import java.io.File;
 import java.io.Serializable;
 import java.util.List;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.TreeMap;
 import java.util.Map;
 import java.util.Set;
-import java.util.ArrayList;
-import java.util.Collections;
 
 
 /** Stage class for Gitlet.
@@ -16,6 +16,9 @@ import java.util.Collections;
  */
 public class Stage implements Serializable {
 
+    /** Version of the serialized form, that of the original class. */
+    private static final long serialVersionUID = 5355200861028788346L;
+
     /**
      * Creates a gitlet staging area of a branch with given BRANCHNAME.
      */
@@ -83,6 +86,19 @@ public class Stage implements Serializable {
         return _conflicted;
     }
 
+    /**
+     * Returns the files the next commit would contain, mapping each file name
+     * to its blob hash.
+     */
+    TreeMap<String, String> getFileInfos() {
+        TreeMap<String, String> fileInfos = new TreeMap<>(_tracked);
+        for (String fileName : _removed.keySet()) {
+            fileInfos.remove(fileName);
+        }
+        fileInfos.putAll(_added);
+        return fileInfos;
+    }
+
     /**
      *  Returns true if the staging area has changed.
      */
@@ -98,17 +114,16 @@ public class Stage implements Serializable {
     }
 
     /**
-     * Checks out a particular file of the given FILEHASH.
+     * Checks out the blob FILEHASH as the file FILENAME. The file is not
+     * written if the sparse-checkout patterns exclude it.
      */
-    void checkout(String fileHash) {
-        Blob blob = Blob.load(fileHash);
-        if (blob == null) {
-            return;
-        }
+    void checkout(String fileName, String fileHash) {
+        fetchBlobs(Collections.singletonList(fileHash));
+        Blob blob = Blob.load(fileHash, null);
 
-        String fileName = blob.getFileName();
-        File file = new File(Gitlet.CWD, blob.getFileName());
-        Utils.writeContents(file, blob.getFileContents());
+        if (SparseCheckout.load().includes(fileName)) {
+            blob.writeTo(new File(Gitlet.CWD, fileName));
+        }
 
         _added.remove(fileName);
         _removed.remove(fileName);
@@ -132,22 +147,34 @@ public class Stage implements Serializable {
     }
 
     /**
-     * Resets the given COMMIT.
+     * Resets the given COMMIT. Only the files included by the
+     * sparse-checkout patterns are written; excluded ones are removed from
+     * the working directory.
      */
     void reset(Commit commit) {
+        SparseCheckout sparse = SparseCheckout.load();
+        Map<String, String> fileInfos = commit.getFileInfos();
+        Set<String> commitFileNames = fileInfos.keySet();
+        List<String> blobHashes = new ArrayList<>();
+        for (String fileName: commitFileNames) {
+            if (sparse.includes(fileName)) {
+                blobHashes.add(fileInfos.get(fileName));
+            }
+        }
+        fetchBlobs(blobHashes);
+
         List<String> fileNames = Utils.plainFilenamesIn(Gitlet.CWD);
         for (String fileName: fileNames) {
-            if (!commit.containsFile(fileName)) {
+            if (!commit.containsFile(fileName) || !sparse.includes(fileName)) {
                 Utils.restrictedDelete(fileName);
             }
         }
-
-        Map<String, String> fileInfos = commit.getFileInfos();
-        Set<String> commitFileNames = fileInfos.keySet();
         for (String fileName: commitFileNames) {
-            Blob blob = Blob.load(fileInfos.get(fileName));
-            File newFile = new File(Gitlet.CWD, blob.getFileName());
-            Utils.writeContents(newFile, blob.getFileContents());
+            if (!sparse.includes(fileName)) {
+                continue;
+            }
+            Blob blob = Blob.load(fileInfos.get(fileName), null);
+            blob.writeTo(new File(Gitlet.CWD, fileName));
         }
 
         _tracked = commit.getTrackedFileInfos();
@@ -156,6 +183,100 @@ public class Stage implements Serializable {
         applyCommit();
     }
 
+    /**
+     * Moves this stage, which must be clean, and the working directory from
+     * the files tracked now to those of COMMIT. Only files whose blobs
+     * differ are written, and files COMMIT lacks are deleted.
+     */
+    void moveTo(Commit commit) {
+        moveTo(commit.getFileInfos());
+    }
+
+    /**
+     * Throws a GitletException if a file of FILEINFOS is in the working
+     * directory but not tracked, so moving to FILEINFOS would overwrite it.
+     */
+    void checkUntracked(Map<String, String> fileInfos) {
+        for (String fileName : Utils.plainFilenamesIn(Gitlet.CWD)) {
+            if (!_tracked.containsKey(fileName)
+                    && fileInfos.containsKey(fileName)) {
+                throw new GitletException("There is an untracked file in the "
+                    + "way; delete it, or add and commit it first.");
+            }
+        }
+    }
+
+    /**
+     * Moves this stage, which must be clean, and the working directory from
+     * the files tracked now to FILEINFOS, as with moveTo(Commit).
+     */
+    void moveTo(Map<String, String> fileInfos) {
+        checkUntracked(fileInfos);
+
+        SparseCheckout sparse = SparseCheckout.load();
+        List<String> changed = new ArrayList<>();
+        for (Map.Entry<String, String> file : fileInfos.entrySet()) {
+            if (!file.getValue().equals(_tracked.get(file.getKey()))
+                    && sparse.includes(file.getKey())) {
+                changed.add(file.getKey());
+            }
+        }
+        List<String> blobHashes = new ArrayList<>();
+        for (String fileName : changed) {
+            blobHashes.add(fileInfos.get(fileName));
+        }
+        fetchBlobs(blobHashes);
+        for (String fileName : _tracked.keySet()) {
+            if (!fileInfos.containsKey(fileName)) {
+                Utils.restrictedDelete(fileName);
+            }
+        }
+        for (String fileName : changed) {
+            Blob blob = Blob.load(fileInfos.get(fileName), null);
+            blob.writeTo(new File(Gitlet.CWD, fileName));
+        }
+
+        _tracked = new HashMap<>(fileInfos);
+        clear();
+    }
+
+    /**
+     * Stages the changes that turn the files PARENTFILEINFOS into
+     * FILEINFOS, without touching the working directory, so that a commit
+     * of this stage on a parent with those files holds FILEINFOS.
+     */
+    void stageTree(Map<String, String> parentFileInfos,
+                   Map<String, String> fileInfos) {
+        _tracked = new HashMap<>(parentFileInfos);
+        clear();
+        for (Map.Entry<String, String> file : fileInfos.entrySet()) {
+            add(file.getKey(), file.getValue());
+        }
+        for (Map.Entry<String, String> file : parentFileInfos.entrySet()) {
+            if (!fileInfos.containsKey(file.getKey())) {
+                _removed.put(file.getKey(), file.getValue());
+            }
+        }
+    }
+
+    /**
+     * Fetches the blobs BLOBHASHES that are not stored here from the
+     * promisor remotes, and throws a GitletException naming one that is
+     * still missing, so that a checkout fails before it changes the working
+     * directory.
+     */
+    static void fetchBlobs(List<String> blobHashes) {
+        if (Promisor.fetchBlobs(blobHashes)) {
+            return;
+        }
+        for (String blobHash : blobHashes) {
+            if (!Utils.join(Gitlet.OBJS_FOLDER, blobHash).exists()) {
+                throw new GitletException("Could not fetch blob " + blobHash
+                        + ".");
+            }
+        }
+    }
+
     /**
      * Adds a blob with FILENAME and BLOBHASH to the staging area.
      * Staging an already-staged file overwrites the previous entry in the
@@ -242,7 +363,7 @@ public class Stage implements Serializable {
      */
     void save() {
         Utils.writeObject(Utils.join(Gitlet.STAGE_FOLDER,
-                _branchName.replace('/', '-')), this);
+                Branch.fileName(_branchName)), this);
     }
 
     /**
@@ -250,119 +371,13 @@ public class Stage implements Serializable {
      */
     static Stage load(String branchName) {
         File file = Utils.join(Gitlet.STAGE_FOLDER,
-                branchName.replace('/', '-'));
-        if (!file.exists()) {
+                Branch.fileName(branchName));
+        if (!Utils.exists(file)) {
             return null;
         }
         return Utils.readObject(file, Stage.class);
     }
 
-    /**
-     * Prints the staged files on the stage.
-     */
-    void printStagedFiles() {
-        Set<String> addedFileNames = _added.keySet();
-        for (String fileName : addedFileNames) {
-            if (checkFileModified(fileName, _added.get(fileName)) == 0) {
-                System.out.println(fileName);
-            }
-        }
-    }
-
-    /**
-     * Prints the files that have been removed from the stage.
-     */
-    void printRemovedFiles() {
-        Set<String> removedFileNames = _removed.keySet();
-        for (String filename : removedFileNames) {
-            System.out.println(filename);
-        }
-    }
-
-    /**
-     * Prints files that are not staged for removal, but tracked in the current
-     * commit and deleted from the working directory.
-     */
-    void printDeletedButNotStagedFiles() {
-        ArrayList<String> deleted = new ArrayList<>();
-        List<String> workingFileNames = Utils.plainFilenamesIn(Gitlet.CWD);
-        Set<String> trackedFileNames = _tracked.keySet();
-        for (String trackedFileName: trackedFileNames) {
-            if (!workingFileNames.contains(trackedFileName)
-                    && !_removed.containsKey(trackedFileName)) {
-                deleted.add(trackedFileName + " (deleted)");
-            }
-        }
-        Collections.sort(deleted);
-        for (String fileName : deleted) {
-            System.out.println(fileName);
-        }
-    }
-
-    /**
-     * Prints files tracked in the current commit, changed in the working
-     * directory, but not staged or staged for addition, but with different
-     * contents than in the working directory.
-     */
-    void printModifiedButNotStagedFiles() {
-        ArrayList<String> modified = new ArrayList<>();
-        List<String> workingFileNames = Utils.plainFilenamesIn(Gitlet.CWD);
-        Set<String> trackedFileNames = _tracked.keySet();
-        for (String trackedFileName: trackedFileNames) {
-            if (workingFileNames.contains(trackedFileName)
-                    && !_added.containsKey(trackedFileName)
-                    && (checkFileModified(trackedFileName,
-                    _tracked.get(trackedFileName)) == 1)) {
-                modified.add(trackedFileName + " (modified)");
-            }
-        }
-        Collections.sort(modified);
-        for (String fileName : modified) {
-            System.out.println(fileName);
-        }
-    }
-
-    /**
-     * Prints files present in the working directory but neither staged for
-     * addition nor tracked.
-     * This includes files that have been staged for removal, but then
-     * re-created without Gitlet's knowledge.
-     */
-    void printUntrackedFiles() {
-        ArrayList<String> untracked = new ArrayList<>();
-        List<String> workingFileNames = Utils.plainFilenamesIn(Gitlet.CWD);
-        for (String fileName: workingFileNames) {
-            if (!getAdded().containsKey(fileName)
-                    && !getTracked().containsKey(fileName)) {
-                untracked.add(fileName);
-            }
-        }
-        Collections.sort(untracked);
-        for (String fileName : untracked) {
-            System.out.println(fileName);
-        }
-        System.out.println();
-    }
-
-    /**
-     * Returns int determining if a file with FILENAME and BLOBHASH has been
-     * deleted or modified.
-     *  -1: deleted.
-     *  0: not modified (hash changed).
-     *  1: modified.
-     */
-    private int checkFileModified(String fileName, String blobHash) {
-        File file = new File(fileName);
-        String fileHash = Utils.sha1(fileName, Utils.readContents(file));
-        int modified = 0;
-        if (!file.exists()) {
-            modified = -1;
-        } else if (!fileHash.equals(blobHash)) {
-            modified = 1;
-        }
-        return modified;
-    }
-
     /** String name of branch. */
     private String _branchName;
 
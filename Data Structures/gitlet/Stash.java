@@ -0,0 +1,195 @@
+package gitlet;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/** The stash: a stack of uncommitted states set aside.
+ *  Each entry is a pair of commits that no branch points to. The first
+ *  holds the staged files on top of the head commit of the time, and the
+ *  second, whose parent it is, the working files on top of that. Only the
+ *  working files whose hash differs from the staged version are read and
+ *  stored, so that stashing a large tree with few changes writes only the
+ *  changed blobs; every other file refers to the blob already stored. The
+ *  stack lives in .gitlet/stash as the hashes of the second commits, one
+ *  per line, newest first. The commits of entries are kept apart from the
+ *  history, in .gitlet/stash-commits, so that global-log and find do not
+ *  list them, though Commit.load still finds them. gc keeps what the
+ *  entries reach and deletes the commits of dropped entries.
+ *  @author Erin Lee
+ */
+class Stash {
+
+    /** File of the stack of entries. */
+    static final File STASH_FILE = Utils.join(Gitlet.GITLET_FOLDER, "stash");
+
+    /** Folder of the commits of entries. */
+    static final File COMMITS_FOLDER =
+            Utils.join(Gitlet.GITLET_FOLDER, "stash-commits");
+
+    /**
+     * A stash holding ENTRIES, newest first.
+     */
+    private Stash(List<String> entries) {
+        _entries = entries;
+    }
+
+    /**
+     * Returns the stash of this repository.
+     */
+    static Stash load() {
+        List<String> entries = new ArrayList<>();
+        if (Utils.exists(STASH_FILE)) {
+            String contents = Utils.readContentsAsString(STASH_FILE);
+            if (!contents.isEmpty()) {
+                entries.addAll(Arrays.asList(contents.split("\n")));
+            }
+        }
+        return new Stash(entries);
+    }
+
+    /**
+     * Saves the stack, removing the file once it is empty.
+     */
+    void save() {
+        if (_entries.isEmpty()) {
+            Utils.delete(STASH_FILE);
+            return;
+        }
+        StringBuilder contents = new StringBuilder();
+        for (String entry : _entries) {
+            contents.append(entry).append('\n');
+        }
+        Utils.writeContents(STASH_FILE, contents.toString());
+    }
+
+    /**
+     * Returns the hashes of the entries, newest first.
+     */
+    List<String> getEntries() {
+        return _entries;
+    }
+
+    /**
+     * Returns both commits of every entry.
+     */
+    List<Commit> getCommits() {
+        List<Commit> commits = new ArrayList<>();
+        for (String entry : _entries) {
+            Commit work = Commit.load(entry);
+            commits.add(work);
+            commits.add(Commit.load(work.getParent()));
+        }
+        return commits;
+    }
+
+    /**
+     * Sets aside the staged and working changes of STAGE, on the branch
+     * BRANCH, as seen in the working directory TREE, and brings both back
+     * to the head commit. Returns false, changing nothing, if there are no
+     * changes.
+     */
+    boolean push(Branch branch, Stage stage, WorkingTree tree) {
+        Commit head = Commit.load(branch.getHead());
+        Map<String, String> headFileInfos = head.getFileInfos();
+        TreeMap<String, String> indexFileInfos = stage.getFileInfos();
+        TreeMap<String, String> workFileInfos =
+                new TreeMap<>(indexFileInfos);
+        SparseCheckout sparse = SparseCheckout.load();
+        for (Map.Entry<String, String> file : indexFileInfos.entrySet()) {
+            String fileName = file.getKey();
+            if (!sparse.includes(fileName)) {
+                continue;
+            }
+            if (tree.getHash(fileName) == null) {
+                workFileInfos.remove(fileName);
+            } else if (!tree.matches(fileName, file.getValue())) {
+                Blob blob = new Blob(new File(Gitlet.CWD, fileName));
+                blob.save();
+                workFileInfos.put(fileName, blob.getHash());
+            }
+        }
+        if (indexFileInfos.equals(headFileInfos)
+                && workFileInfos.equals(indexFileInfos)) {
+            return false;
+        }
+
+        String about = branch.getName() + ": "
+                + head.getHash().substring(0, 7) + " " + head.getMessage();
+        COMMITS_FOLDER.mkdir();
+        Stage changes = new Stage(null);
+        changes.stageTree(headFileInfos, indexFileInfos);
+        Commit index = new Commit("index on " + about, changes,
+                head.getHash());
+        index.save(COMMITS_FOLDER);
+        changes = new Stage(null);
+        changes.stageTree(indexFileInfos, workFileInfos);
+        Commit work = new Commit("WIP on " + about, changes,
+                index.getHash());
+        work.save(COMMITS_FOLDER);
+        _entries.add(0, work.getHash());
+
+        stage.stageTree(workFileInfos, workFileInfos);
+        stage.moveTo(headFileInfos);
+        return true;
+    }
+
+    /**
+     * Applies the newest entry to STAGE, which must be clean, and the
+     * working directory, merging it with the head commit HEAD if that has
+     * moved since. The entry's staged files are staged again if HEAD has
+     * not moved; otherwise only files new to HEAD are. The entry is dropped
+     * unless the merge conflicts. Returns true if it conflicts.
+     */
+    boolean pop(Commit head, Stage stage, WorkingTree tree) {
+        Commit work = Commit.load(_entries.get(0));
+        Commit index = Commit.load(work.getParent());
+        Commit base = Commit.load(index.getParent());
+        Map<String, String> headFileInfos = head.getFileInfos();
+        TreeMerge merge = new TreeMerge(base.getFileInfos(), headFileInfos,
+                work.getFileInfos());
+        TreeMap<String, String> fileInfos = merge.getFileInfos();
+
+        Set<String> fileNames = new TreeSet<>(fileInfos.keySet());
+        fileNames.addAll(headFileInfos.keySet());
+        SparseCheckout sparse = SparseCheckout.load();
+        for (String fileName : fileNames) {
+            String hash = fileInfos.get(fileName);
+            String headHash = headFileInfos.get(fileName);
+            if (!Objects.equals(hash, headHash) && sparse.includes(fileName)
+                    && tree.contains(fileName)
+                    && !tree.getHash(fileName).equals(headHash)) {
+                throw new GitletException("There is a local change in the "
+                    + "way; commit it or stash it first.");
+            }
+        }
+
+        Map<String, String> staged;
+        if (base.getHash().equals(head.getHash())) {
+            staged = index.getFileInfos();
+        } else {
+            staged = new TreeMap<>(headFileInfos);
+            for (Map.Entry<String, String> file : fileInfos.entrySet()) {
+                staged.putIfAbsent(file.getKey(), file.getValue());
+            }
+        }
+        stage.checkUntracked(fileInfos);
+        merge.saveBlobs();
+        stage.moveTo(fileInfos);
+        stage.stageTree(headFileInfos, staged);
+        if (merge.isConflicted()) {
+            return true;
+        }
+        _entries.remove(0);
+        return false;
+    }
+
+    /** Hashes of the entries, newest first. */
+    private final List<String> _entries;
+}
@@ -0,0 +1,305 @@
+package gitlet;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/** The state of every file known to status, computed once.
+ *  The working tree, the staged additions and removals and the head
+ *  commit's files are walked together in name order, and each file gets a
+ *  staged state and a working-tree state, as in `git status --porcelain`.
+ *  All sections of the status report are then read off the same entries.
+ *  @author Erin Lee
+ */
+class StatusSnapshot {
+
+    /** State letter meaning unchanged. */
+    static final char UNCHANGED = ' ';
+
+    /** State letter of a file added to the index. */
+    static final char ADDED = 'A';
+
+    /** State letter of a modified file. */
+    static final char MODIFIED = 'M';
+
+    /** State letter of a deleted or removed file. */
+    static final char DELETED = 'D';
+
+    /** State letter of a renamed file. */
+    static final char RENAMED = 'R';
+
+    /** State letter of a copied file. */
+    static final char COPIED = 'C';
+
+    /** The state of one file. */
+    static class Entry {
+        /** Name of the file. */
+        private final String _fileName;
+        /** State of the staged version relative to the head commit. */
+        private char _staged;
+        /** State of the working version relative to the staged one. */
+        private char _working;
+        /** True if the file is neither staged nor tracked. */
+        private boolean _untracked;
+        /** Source of a staged rename or copy, or null. */
+        private String _source;
+
+        /** An entry for FILENAME. */
+        Entry(String fileName) {
+            _fileName = fileName;
+            _staged = UNCHANGED;
+            _working = UNCHANGED;
+        }
+
+        /** Returns the name of the file. */
+        String getFileName() {
+            return _fileName;
+        }
+
+        /** Returns the state of the staged version. */
+        char getStaged() {
+            return _staged;
+        }
+
+        /** Returns the state of the working version. */
+        char getWorking() {
+            return _working;
+        }
+
+        /** Returns true if the file is untracked. */
+        boolean isUntracked() {
+            return _untracked;
+        }
+
+        /** Returns the source of a staged rename or copy, or null. */
+        String getSource() {
+            return _source;
+        }
+    }
+
+    /**
+     * The snapshot of STAGE, whose tracked files are those of the head
+     * commit, against the working directory TREE.
+     */
+    StatusSnapshot(Stage stage, WorkingTree tree) {
+        _entries = new ArrayList<>();
+        Map<String, String> tracked = stage.getTracked();
+        TreeMap<String, String> added = stage.getAdded();
+        TreeMap<String, String> removed = stage.getRemoved();
+
+        SparseCheckout sparse = SparseCheckout.load();
+        List<Iterator<String>> sources = new ArrayList<>();
+        sources.add(tree.getFileNames().iterator());
+        sources.add(new TreeSet<>(tracked.keySet()).iterator());
+        sources.add(added.keySet().iterator());
+        sources.add(removed.keySet().iterator());
+        String[] heads = new String[sources.size()];
+        for (int i = 0; i < heads.length; i += 1) {
+            heads[i] = next(sources.get(i));
+        }
+
+        while (true) {
+            String fileName = null;
+            for (String head : heads) {
+                if (head != null
+                        && (fileName == null || head.compareTo(fileName) < 0)) {
+                    fileName = head;
+                }
+            }
+            if (fileName == null) {
+                break;
+            }
+            for (int i = 0; i < heads.length; i += 1) {
+                if (fileName.equals(heads[i])) {
+                    heads[i] = next(sources.get(i));
+                }
+            }
+            Entry entry = classify(fileName, tree, tracked.get(fileName),
+                    added.get(fileName), removed.containsKey(fileName),
+                    sparse.includes(fileName));
+            if (entry != null) {
+                _entries.add(entry);
+            }
+        }
+        findSources(stage);
+    }
+
+    /**
+     * Returns the entry of FILENAME given its hash HEADHASH in the head
+     * commit, its staged hash ADDEDHASH, whether it is staged for removal,
+     * REMOVED, and the working directory TREE. The working file is only
+     * looked at if the sparse-checkout patterns include it, INCLUDED.
+     * Returns null if there is nothing to report.
+     */
+    private static Entry classify(String fileName, WorkingTree tree,
+                                  String headHash, String addedHash,
+                                  boolean removed, boolean included) {
+        Entry entry = new Entry(fileName);
+        boolean present = tree.contains(fileName);
+        String stagedHash;
+        if (removed) {
+            entry._staged = DELETED;
+            stagedHash = null;
+        } else if (addedHash != null) {
+            entry._staged = headHash == null ? ADDED : MODIFIED;
+            stagedHash = addedHash;
+        } else {
+            stagedHash = headHash;
+        }
+
+        if (!included) {
+            return entry._staged == UNCHANGED ? null : entry;
+        }
+        if (stagedHash == null) {
+            entry._untracked = present;
+        } else if (!present) {
+            entry._working = DELETED;
+        } else if (!tree.matches(fileName, stagedHash)) {
+            entry._working = MODIFIED;
+        }
+        if (entry._staged == UNCHANGED && entry._working == UNCHANGED
+                && !entry._untracked) {
+            return null;
+        }
+        return entry;
+    }
+
+    /**
+     * Marks the staged additions of STAGE that are renames or copies.
+     */
+    private void findSources(Stage stage) {
+        RenameDetector detector = new RenameDetector();
+        TreeMap<String, String> renames =
+                detector.findRenames(stage.getRemoved(), stage.getAdded());
+        TreeMap<String, String> kept = new TreeMap<>(stage.getTracked());
+        kept.keySet().removeAll(stage.getRemoved().keySet());
+        TreeMap<String, String> copies = detector.findCopies(
+                kept, stage.getFileInfos(), renames.keySet());
+        for (Entry entry : _entries) {
+            if (entry._staged != ADDED) {
+                continue;
+            }
+            if (renames.containsKey(entry._fileName)) {
+                entry._staged = RENAMED;
+                entry._source = renames.get(entry._fileName);
+            } else if (copies.containsKey(entry._fileName)) {
+                entry._staged = COPIED;
+                entry._source = copies.get(entry._fileName);
+            }
+        }
+    }
+
+    /**
+     * Returns the entries with something to report, in name order.
+     */
+    List<Entry> getEntries() {
+        return _entries;
+    }
+
+    /**
+     * Prints the files staged for addition. Renames and copies are listed
+     * by name alone; only the porcelain format names their source.
+     */
+    void printStagedFiles() {
+        for (Entry entry : _entries) {
+            if (entry._staged != UNCHANGED && entry._staged != DELETED) {
+                System.out.println(entry._fileName);
+            }
+        }
+    }
+
+    /**
+     * Prints the files staged for removal.
+     */
+    void printRemovedFiles() {
+        for (Entry entry : _entries) {
+            if (entry._staged == DELETED) {
+                System.out.println(entry._fileName);
+            }
+        }
+    }
+
+    /**
+     * Prints the files that are staged or tracked but deleted from the
+     * working directory without being staged for removal.
+     */
+    void printDeletedButNotStagedFiles() {
+        for (Entry entry : _entries) {
+            if (entry._working == DELETED) {
+                System.out.println(entry._fileName + " (deleted)");
+            }
+        }
+    }
+
+    /**
+     * Prints the files whose working version differs from the staged or
+     * tracked one.
+     */
+    void printModifiedButNotStagedFiles() {
+        for (Entry entry : _entries) {
+            if (entry._working == MODIFIED) {
+                System.out.println(entry._fileName + " (modified)");
+            }
+        }
+    }
+
+    /**
+     * Prints the files in the working directory that are neither staged for
+     * addition nor tracked, including files staged for removal and then
+     * re-created.
+     */
+    void printUntrackedFiles() {
+        for (Entry entry : _entries) {
+            if (entry._untracked) {
+                System.out.println(entry._fileName);
+            }
+        }
+    }
+
+    /**
+     * Prints every entry in a stable format for scripts: two state letters,
+     * staged then working, a space and the file name, with "?? " for
+     * untracked files and "OLD -> NEW" for renames and copies. Files renamed
+     * away appear only as the source of their rename.
+     */
+    void printPorcelain() {
+        Set<String> renamedAway = new TreeSet<>();
+        for (Entry entry : _entries) {
+            if (entry._staged == RENAMED) {
+                renamedAway.add(entry._source);
+            }
+        }
+        for (Entry entry : _entries) {
+            if (entry._staged == DELETED
+                    && renamedAway.contains(entry._fileName)) {
+                if (entry._untracked) {
+                    System.out.println("?? " + entry._fileName);
+                }
+                continue;
+            }
+            if (entry._staged != UNCHANGED || entry._working != UNCHANGED) {
+                String name = entry._source == null ? entry._fileName
+                        : entry._source + " -> " + entry._fileName;
+                System.out.println("" + entry._staged + entry._working
+                        + " " + name);
+            }
+            if (entry._untracked) {
+                System.out.println("?? " + entry._fileName);
+            }
+        }
+    }
+
+    /**
+     * Returns the next element of ITERATOR, or null if there is none.
+     */
+    private static String next(Iterator<String> iterator) {
+        return iterator.hasNext() ? iterator.next() : null;
+    }
+
+    /** Entries with something to report, in name order. */
+    private final List<Entry> _entries;
+}
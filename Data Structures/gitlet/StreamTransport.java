@@ -0,0 +1,201 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.List;
+
+/** A connection to a remote served by another process, over its standard
+ *  input and output or over a loopback socket. Each request is a name and
+ *  a list of operands; each reply starts with whether the request
+ *  succeeded, followed by either its results or an error message (see
+ *  PackServer). Objects travel as one pack per request.
+ *  @author Erin Lee
+ */
+class StreamTransport implements Transport {
+
+    /**
+     * A connection reading replies from INPUT and writing requests to
+     * OUTPUT, which ends by closing RESOURCE, a Process or Socket.
+     */
+    private StreamTransport(InputStream input, OutputStream output,
+                            Object resource) {
+        _in = new DataInputStream(new BufferedInputStream(input));
+        _out = new DataOutputStream(new BufferedOutputStream(output));
+        _resource = resource;
+    }
+
+    /**
+     * Returns a connection to a new gitlet serve process, run with this
+     * process's Java and class path in the working directory of the .gitlet
+     * folder GITLETFOLDER.
+     */
+    static StreamTransport exec(File gitletFolder) {
+        List<String> classPath = new ArrayList<>();
+        for (String entry : System.getProperty("java.class.path")
+                .split(File.pathSeparator)) {
+            classPath.add(new File(entry).getAbsolutePath());
+        }
+        ProcessBuilder builder = new ProcessBuilder(
+                Utils.join(new File(System.getProperty("java.home")), "bin",
+                        "java").getPath(),
+                "-cp", String.join(File.pathSeparator, classPath),
+                "gitlet.Main", "serve");
+        builder.directory(gitletFolder.getAbsoluteFile().getParentFile());
+        builder.redirectError(ProcessBuilder.Redirect.INHERIT);
+        try {
+            Process process = builder.start();
+            return new StreamTransport(process.getInputStream(),
+                    process.getOutputStream(), process);
+        } catch (IOException excp) {
+            throw new GitletException("Could not start the remote server.");
+        }
+    }
+
+    /**
+     * Returns a connection to the gitlet serve process listening on PORT of
+     * the loopback interface.
+     */
+    static StreamTransport connect(int port) {
+        try {
+            Socket socket = new Socket(InetAddress.getLoopbackAddress(), port);
+            return new StreamTransport(socket.getInputStream(),
+                    socket.getOutputStream(), socket);
+        } catch (IOException excp) {
+            throw new GitletException("Could not connect to the remote.");
+        }
+    }
+
+    @Override
+    public HashAlgorithm hashAlgorithm() {
+        try {
+            send("hash");
+            receive();
+            return HashAlgorithm.forName(_in.readUTF());
+        } catch (IOException excp) {
+            throw lost();
+        }
+    }
+
+    @Override
+    public String readHead(String branchName) {
+        try {
+            send("head", branchName);
+            receive();
+            String head = _in.readUTF();
+            return head.isEmpty() ? null : head;
+        } catch (IOException excp) {
+            throw lost();
+        }
+    }
+
+    @Override
+    public void fetch(String head, String base, boolean partial) {
+        try {
+            send("fetch", head, base == null ? "" : base,
+                    partial ? "partial" : "");
+            receive();
+            Pack.read(_in, Gitlet.GITLET_FOLDER);
+        } catch (IOException excp) {
+            throw lost();
+        }
+    }
+
+    @Override
+    public void fetchBlobs(Collection<String> hashes) {
+        try {
+            send("blobs", hashes.toArray(new String[hashes.size()]));
+            receive();
+            Pack.read(_in, Gitlet.GITLET_FOLDER);
+        } catch (IOException excp) {
+            throw lost();
+        }
+    }
+
+    @Override
+    public void push(ObjectIndex index, BitSet objects, String branchName,
+                     String expectedHead, String head) {
+        List<String> paths = new ArrayList<>();
+        for (int i = objects.nextSetBit(0); i >= 0;
+             i = objects.nextSetBit(i + 1)) {
+            paths.add(index.path(i));
+        }
+        try {
+            send("push", branchName,
+                    expectedHead == null ? "" : expectedHead, head);
+            Pack.write(Gitlet.GITLET_FOLDER, paths, _out);
+            receive();
+        } catch (IOException excp) {
+            throw lost();
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            send("quit");
+            _out.flush();
+        } catch (IOException excp) {
+            /* The server is gone already. */
+        }
+        try {
+            if (_resource instanceof Socket) {
+                ((Socket) _resource).close();
+            } else {
+                Process process = (Process) _resource;
+                process.getOutputStream().close();
+                process.waitFor();
+            }
+        } catch (IOException | InterruptedException excp) {
+            /* Nothing is left to clean up. */
+        }
+    }
+
+    /**
+     * Writes the request NAME with OPERANDS, without flushing.
+     */
+    private void send(String name, String... operands) throws IOException {
+        _out.writeUTF(name);
+        _out.writeInt(operands.length);
+        for (String operand : operands) {
+            _out.writeUTF(operand);
+        }
+    }
+
+    /**
+     * Flushes the pending request and reads the start of its reply,
+     * throwing the server's error if it failed.
+     */
+    private void receive() throws IOException {
+        _out.flush();
+        if (!_in.readBoolean()) {
+            throw new GitletException(_in.readUTF());
+        }
+    }
+
+    /**
+     * Returns the error of a broken connection.
+     */
+    private static GitletException lost() {
+        return new GitletException("Lost the connection to the remote.");
+    }
+
+    /** Replies from the server. */
+    private final DataInputStream _in;
+
+    /** Requests to the server. */
+    private final DataOutputStream _out;
+
+    /** The server process or socket. */
+    private final Object _resource;
+}
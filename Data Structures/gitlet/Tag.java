@@ -0,0 +1,239 @@
+package gitlet;
+
+import java.io.File;
+import java.io.Serializable;
+import java.util.Date;
+import java.util.Map;
+import java.util.TreeMap;
+
+/** Tags of a Gitlet repository.
+ *  A tag names a commit and, unlike a branch, never moves. All tags are
+ *  kept in .gitlet/packed-tags, a table in the format of packed-refs (see
+ *  PackedRefs) found by binary search. A lightweight tag's entry is the
+ *  hash of its commit. An annotated tag is also an object, stored under
+ *  .gitlet/tags, holding a message and the time it was made; its entry is
+ *  "TAG^COMMIT", the hash of that object followed by the hash of the
+ *  commit it peels to, so that resolving any tag to its commit never loads
+ *  the tag object.
+ *  @author Erin Lee
+ */
+class Tag implements Serializable {
+
+    /** Version of the serialized form. */
+    private static final long serialVersionUID = 1L;
+
+    /** Table of tags. */
+    static final File TAGS_FILE = Utils.join(Gitlet.GITLET_FOLDER,
+            "packed-tags");
+
+    /** Folder of annotated tag objects. */
+    static final File TAGS_FOLDER = Utils.join(Gitlet.GITLET_FOLDER, "tags");
+
+    /** Separates the tag object from the peeled commit in an entry. */
+    private static final char PEELED = '^';
+
+    /**
+     * An annotated tag NAME of the commit TARGET with MESSAGE.
+     */
+    Tag(String name, String target, String message) {
+        _name = name;
+        _target = target;
+        _message = message;
+        _timestamp = new Date();
+        _hash = HashAlgorithm.objects().hash("tag ", _name, "\0", _target,
+                "\0", _timestamp.toString(), "\0", _message);
+    }
+
+    /**
+     * Returns the hash of the tag object.
+     */
+    String getHash() {
+        return _hash;
+    }
+
+    /**
+     * Returns the name of the tag.
+     */
+    String getName() {
+        return _name;
+    }
+
+    /**
+     * Returns the hash of the tagged commit.
+     */
+    String getTarget() {
+        return _target;
+    }
+
+    /**
+     * Returns the message of the tag.
+     */
+    String getMessage() {
+        return _message;
+    }
+
+    /**
+     * Saves the tag object.
+     */
+    void save() {
+        TAGS_FOLDER.mkdir();
+        Utils.writeObject(Utils.join(TAGS_FOLDER, _hash), this);
+    }
+
+    /**
+     * Returns the annotated tag object with HASH, or null if there is none.
+     */
+    static Tag load(String hash) {
+        File file = Utils.join(TAGS_FOLDER, hash);
+        if (!file.exists()) {
+            return null;
+        }
+        return Utils.readObject(file, Tag.class);
+    }
+
+    /**
+     * Returns the hash of the commit the tag NAME points to, or null if
+     * there is no such tag.
+     */
+    static String peel(String name) {
+        return peel(TAGS_FILE, name);
+    }
+
+    /**
+     * Returns the hash of the commit the tag NAME in the table TABLE points
+     * to, or null if there is no such tag.
+     */
+    static String peel(File table, String name) {
+        return peeled(PackedRefs.lookup(table, name));
+    }
+
+    /**
+     * Returns the hash of the annotated tag object NAME is, or null if NAME
+     * is lightweight or no tag.
+     */
+    static String objectOf(String name) {
+        return objectOf(TAGS_FILE, name);
+    }
+
+    /**
+     * Returns the hash of the annotated tag object NAME is in the table
+     * TABLE, or null if NAME is lightweight or no tag.
+     */
+    static String objectOf(File table, String name) {
+        String entry = PackedRefs.lookup(table, name);
+        if (entry == null || entry.indexOf(PEELED) < 0) {
+            return null;
+        }
+        return entry.substring(0, entry.indexOf(PEELED));
+    }
+
+    /**
+     * Returns every tag, mapping names to the commits they point to, sorted
+     * by name.
+     */
+    static TreeMap<String, String> peelAll() {
+        return peelAll(TAGS_FILE);
+    }
+
+    /**
+     * Returns every tag in the table TABLE, mapping names to the commits
+     * they point to, sorted by name.
+     */
+    static TreeMap<String, String> peelAll(File table) {
+        TreeMap<String, String> tags = PackedRefs.readTable(table);
+        for (Map.Entry<String, String> tag : tags.entrySet()) {
+            tag.setValue(peeled(tag.getValue()));
+        }
+        return tags;
+    }
+
+    /**
+     * Creates the lightweight tag NAME of the commit TARGET.
+     */
+    static void create(String name, String target) {
+        create(TAGS_FILE, name, target);
+    }
+
+    /**
+     * Creates the lightweight tag NAME of the commit TARGET in the table
+     * TABLE.
+     */
+    static void create(File table, String name, String target) {
+        put(table, name, target);
+    }
+
+    /**
+     * Creates the tag named by the annotated tag object TAG, which is
+     * saved.
+     */
+    static void create(Tag tag) {
+        create(TAGS_FILE, tag);
+        tag.save();
+    }
+
+    /**
+     * Enters the annotated tag object TAG in the table TABLE, without saving
+     * the object.
+     */
+    static void create(File table, Tag tag) {
+        put(table, tag.getName(), tag.getHash() + PEELED + tag.getTarget());
+    }
+
+    /**
+     * Deletes the tag NAME. Returns false if there is no such tag.
+     */
+    static boolean remove(String name) {
+        return remove(TAGS_FILE, name);
+    }
+
+    /**
+     * Deletes the tag NAME from the table TABLE. Returns false if there is
+     * no such tag.
+     */
+    static boolean remove(File table, String name) {
+        TreeMap<String, String> tags = PackedRefs.readTable(table);
+        if (tags.remove(name) == null) {
+            return false;
+        }
+        PackedRefs.writeTable(table, tags);
+        return true;
+    }
+
+    /**
+     * Adds the entry ENTRY for the new tag NAME to the table TABLE.
+     */
+    private static void put(File table, String name, String entry) {
+        TreeMap<String, String> tags = PackedRefs.readTable(table);
+        if (tags.containsKey(name)) {
+            throw new GitletException("A tag with that name already exists.");
+        }
+        tags.put(name, entry);
+        PackedRefs.writeTable(table, tags);
+    }
+
+    /**
+     * Returns the commit the table entry ENTRY points to, or null if ENTRY
+     * is null.
+     */
+    private static String peeled(String entry) {
+        if (entry == null) {
+            return null;
+        }
+        return entry.substring(entry.indexOf(PEELED) + 1);
+    }
+
+    /** Name of the tag. */
+    private String _name;
+
+    /** Hash of the tagged commit. */
+    private String _target;
+
+    /** Message of the tag. */
+    private String _message;
+
+    /** Time the tag was made. */
+    private Date _timestamp;
+
+    /** Hash of the tag object. */
+    private String _hash;
+}
@@ -0,0 +1,150 @@
+package gitlet;
+
+import java.io.PrintStream;
+import java.util.Map;
+import java.util.TreeMap;
+
+/** Timings of the phases of a Gitlet command.
+ *  With java gitlet.Main --trace COMMAND ..., the time, calls and bytes of
+ *  each instrumented phase (reading and writing objects, hashing, listing
+ *  directories, taking the lock, committing the journal) are added up
+ *  while the command runs and printed on standard error when it ends, as a
+ *  table or, with --trace=json, as one JSON object. When tracing is off,
+ *  each instrumented call costs a single test of a static field. Time not
+ *  spent in any phase is reported as other; the journal's checksum is
+ *  hashed inside its commit, so those two phases overlap slightly.
+ *  @author Erin Lee
+ */
+class Trace {
+
+    /** Phase of deserializing objects read from files. */
+    static final String READ_OBJECT = "readObject";
+
+    /** Phase of serializing objects and writing them to files. */
+    static final String WRITE_OBJECT = "writeObject";
+
+    /** Phase of hashing. */
+    static final String HASH = "hash";
+
+    /** Phase of listing directories. */
+    static final String LIST_FILES = "listFiles";
+
+    /** Phase of taking the repository lock and recovering the journal. */
+    static final String LOCK = "lock";
+
+    /** Phase of committing the journal. */
+    static final String JOURNAL = "journal";
+
+    /** Slot of the number of calls in a phase's totals. */
+    private static final int CALLS = 0;
+
+    /** Slot of the time taken, in nanoseconds, in a phase's totals. */
+    private static final int NANOS = 1;
+
+    /** Slot of the bytes handled in a phase's totals. */
+    private static final int BYTES = 2;
+
+    /**
+     * Not instantiable.
+     */
+    private Trace() {
+    }
+
+    /**
+     * Starts tracing COMMAND, reporting as JSON if JSON.
+     */
+    static void enable(String command, boolean json) {
+        _command = command;
+        _json = json;
+        _phases = new TreeMap<>();
+        _start = System.nanoTime();
+        _enabled = true;
+    }
+
+    /**
+     * Returns the time a phase starts at, to be passed to end, or 0 if
+     * tracing is off.
+     */
+    static long start() {
+        return _enabled ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Adds to PHASE a call that started at START and handled BYTES bytes.
+     */
+    static void end(String phase, long start, long bytes) {
+        if (_enabled) {
+            long nanos = System.nanoTime() - start;
+            synchronized (Trace.class) {
+                long[] totals =
+                        _phases.computeIfAbsent(phase, k -> new long[3]);
+                totals[CALLS] += 1;
+                totals[NANOS] += nanos;
+                totals[BYTES] += bytes;
+            }
+        }
+    }
+
+    /**
+     * Prints the totals of the traced command on OUT and stops tracing.
+     */
+    static void report(PrintStream out) {
+        if (!_enabled) {
+            return;
+        }
+        _enabled = false;
+        long total = System.nanoTime() - _start;
+        if (_json) {
+            out.println(toJson(total));
+            return;
+        }
+        long other = total;
+        out.printf("%-14s %8s %12s %14s%n", "phase", "calls", "ms", "bytes");
+        for (Map.Entry<String, long[]> phase : _phases.entrySet()) {
+            long[] totals = phase.getValue();
+            out.printf("%-14s %8d %12.3f %14d%n", phase.getKey(),
+                    totals[CALLS], totals[NANOS] / 1e6, totals[BYTES]);
+            other -= totals[NANOS];
+        }
+        out.printf("%-14s %8s %12.3f%n", "other", "", other / 1e6);
+        out.printf("%-14s %8s %12.3f%n", _command, "", total / 1e6);
+    }
+
+    /**
+     * Returns the totals of the traced command, which took TOTAL
+     * nanoseconds, as a JSON object.
+     */
+    private static String toJson(long total) {
+        StringBuilder json = new StringBuilder();
+        json.append("{\"command\":\"")
+                .append(_command.replace("\\", "\\\\").replace("\"", "\\\""))
+                .append("\",\"nanos\":").append(total)
+                .append(",\"phases\":{");
+        String separator = "";
+        for (Map.Entry<String, long[]> phase : _phases.entrySet()) {
+            long[] totals = phase.getValue();
+            json.append(separator).append('"').append(phase.getKey())
+                    .append("\":{\"calls\":").append(totals[CALLS])
+                    .append(",\"nanos\":").append(totals[NANOS])
+                    .append(",\"bytes\":").append(totals[BYTES])
+                    .append('}');
+            separator = ",";
+        }
+        return json.append("}}").toString();
+    }
+
+    /** True while a command is traced. */
+    private static volatile boolean _enabled;
+
+    /** True to report as JSON. */
+    private static boolean _json;
+
+    /** Name of the traced command. */
+    private static String _command;
+
+    /** Time the traced command started, from System.nanoTime. */
+    private static long _start;
+
+    /** Totals of each phase: calls, nanoseconds and bytes. */
+    private static TreeMap<String, long[]> _phases;
+}
@@ -0,0 +1,90 @@
+package gitlet;
+
+import java.io.File;
+import java.util.BitSet;
+import java.util.Collection;
+
+/** A connection to the repository of a remote.
+ *  A remote whose directory is a path to a .gitlet folder is reached
+ *  through the file system (see LocalTransport). One whose directory is
+ *  "exec:PATH" is served by a gitlet serve process started in the working
+ *  directory of the .gitlet folder PATH, over its standard input and
+ *  output, and one whose directory is "socket:PORT" by a gitlet serve
+ *  --port=PORT process already listening on the loopback interface (see
+ *  StreamTransport and PackServer). Either way, pushes and fetches send
+ *  one pack of objects each (see Pack).
+ *  @author Erin Lee
+ */
+interface Transport extends AutoCloseable {
+
+    /** Prefix of the directory of a remote served over a pipe. */
+    String EXEC = "exec:";
+
+    /** Prefix of the directory of a remote served over a socket. */
+    String SOCKET = "socket:";
+
+    /**
+     * Returns a connection to the repository of REMOTE.
+     */
+    static Transport open(Remote remote) {
+        String directory = remote.getDirectory();
+        if (directory.startsWith(EXEC)) {
+            File gitletFolder = new File(directory.substring(EXEC.length()));
+            if (!gitletFolder.isDirectory()) {
+                throw new GitletException("Remote directory not found.");
+            }
+            return StreamTransport.exec(gitletFolder);
+        }
+        if (directory.startsWith(SOCKET)) {
+            try {
+                return StreamTransport.connect(Integer.parseInt(
+                        directory.substring(SOCKET.length())));
+            } catch (NumberFormatException excp) {
+                throw new GitletException("Remote directory not found.");
+            }
+        }
+        if (!remote.getGitletFolder().exists()) {
+            throw new GitletException("Remote directory not found.");
+        }
+        return new LocalTransport(remote);
+    }
+
+    /**
+     * Returns the hash that names the remote's objects.
+     */
+    HashAlgorithm hashAlgorithm();
+
+    /**
+     * Returns the head of the remote's branch BRANCHNAME, or null if it has
+     * no such branch.
+     */
+    String readHead(String branchName);
+
+    /**
+     * Copies the objects reachable from the remote commit HEAD but not
+     * from the commit BASE, which may be null or unknown to the remote,
+     * into this repository. If PARTIAL, only commits are copied.
+     */
+    void fetch(String head, String base, boolean partial);
+
+    /**
+     * Copies the blobs HASHES the remote has, with their chunks, into this
+     * repository.
+     */
+    void fetchBlobs(Collection<String> hashes);
+
+    /**
+     * Copies the objects OBJECTS of this repository's INDEX to the remote,
+     * then moves the remote's branch BRANCHNAME from EXPECTEDHEAD, null if
+     * it must not exist yet, to HEAD and checks HEAD out in the remote's
+     * working directory.
+     */
+    void push(ObjectIndex index, BitSet objects, String branchName,
+              String expectedHead, String head);
+
+    /**
+     * Ends the connection.
+     */
+    @Override
+    void close();
+}
@@ -0,0 +1,241 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/** A three-way merge of file trees, done in memory.
+ *  Trees map file names to blob hashes. The merge of two trees that
+ *  diverged from a base follows the rules of gitlet merge, renames
+ *  included, but reads blobs only to build conflicted files and never
+ *  touches the working directory, so that commits can be replayed one
+ *  after another and only the last result checked out.
+ *  @author Erin Lee
+ */
+class TreeMerge {
+
+    /**
+     * The merge of the trees CURRENT and GIVEN, which diverged from BASE.
+     * Conflicted files get blobs holding both versions between conflict
+     * markers, kept in memory until saveBlobs.
+     */
+    TreeMerge(Map<String, String> base, Map<String, String> current,
+              Map<String, String> given) {
+        _base = base;
+        _current = current;
+        _given = given;
+        _fileInfos = new TreeMap<>(current);
+        _conflicted = new TreeMap<>();
+        _blobs = new ArrayList<>();
+        Set<String> handled = mergeRenames();
+        mergeGiven(handled);
+        mergeCurrent(handled);
+    }
+
+    /**
+     * Returns the merged tree.
+     */
+    TreeMap<String, String> getFileInfos() {
+        return _fileInfos;
+    }
+
+    /**
+     * Returns the conflicted files, each mapped to the hashes of the merged,
+     * current and given versions; the hash of a deleted version is null.
+     */
+    TreeMap<String, String[]> getConflicted() {
+        return _conflicted;
+    }
+
+    /**
+     * Returns true if some file is conflicted.
+     */
+    boolean isConflicted() {
+        return !_conflicted.isEmpty();
+    }
+
+    /**
+     * Saves the blobs of the conflicted files. Callers do so only once the
+     * merged commit is made, so that a merge given up before then leaves
+     * no blobs behind.
+     */
+    void saveBlobs() {
+        for (Blob blob : _blobs) {
+            blob.save();
+        }
+    }
+
+    /**
+     * Merges the files that one side renamed while the other modified them
+     * under the old name, putting the result under the new name. Returns the
+     * file names dealt with.
+     */
+    private Set<String> mergeRenames() {
+        Set<String> handled = new HashSet<>();
+        RenameDetector detector = new RenameDetector();
+
+        Map<String, String> givenRenames =
+                detector.findRenames(_base, _given);
+        for (Map.Entry<String, String> rename : givenRenames.entrySet()) {
+            String newName = rename.getKey();
+            String oldName = rename.getValue();
+            String baseHash = _base.get(oldName);
+            String currentHash = _current.get(oldName);
+            String givenHash = _given.get(newName);
+            if (currentHash == null || currentHash.equals(baseHash)
+                    || _current.containsKey(newName)) {
+                continue;
+            }
+            if (givenHash.equals(baseHash) || givenHash.equals(currentHash)) {
+                _fileInfos.put(newName, currentHash);
+            } else {
+                conflict(newName, currentHash, givenHash);
+            }
+            _fileInfos.remove(oldName);
+            handled.add(newName);
+            handled.add(oldName);
+        }
+
+        Map<String, String> currentRenames =
+                detector.findRenames(_base, _current);
+        for (Map.Entry<String, String> rename : currentRenames.entrySet()) {
+            String newName = rename.getKey();
+            String oldName = rename.getValue();
+            String baseHash = _base.get(oldName);
+            String currentHash = _current.get(newName);
+            String givenHash = _given.get(oldName);
+            if (givenHash == null || givenHash.equals(baseHash)
+                    || _given.containsKey(newName)
+                    || handled.contains(oldName)) {
+                continue;
+            }
+            if (currentHash.equals(baseHash)) {
+                _fileInfos.put(newName, givenHash);
+            } else if (!currentHash.equals(givenHash)) {
+                conflict(newName, currentHash, givenHash);
+            }
+            handled.add(newName);
+            handled.add(oldName);
+        }
+        return handled;
+    }
+
+    /**
+     * Takes the changes of the given side to its files, other than those
+     * HANDLED already.
+     */
+    private void mergeGiven(Set<String> handled) {
+        for (Map.Entry<String, String> file : _given.entrySet()) {
+            String fileName = file.getKey();
+            String givenHash = file.getValue();
+            String currentHash = _current.get(fileName);
+            String baseHash = _base.get(fileName);
+            if (handled.contains(fileName) || givenHash.equals(currentHash)
+                    || givenHash.equals(baseHash)) {
+                continue;
+            }
+            if (currentHash == null ? baseHash == null
+                    : currentHash.equals(baseHash)) {
+                _fileInfos.put(fileName, givenHash);
+            } else {
+                conflict(fileName, currentHash, givenHash);
+            }
+        }
+    }
+
+    /**
+     * Takes the deletions by the given side of files of the current side,
+     * other than those HANDLED already.
+     */
+    private void mergeCurrent(Set<String> handled) {
+        for (Map.Entry<String, String> file : _current.entrySet()) {
+            String fileName = file.getKey();
+            String currentHash = file.getValue();
+            String baseHash = _base.get(fileName);
+            if (handled.contains(fileName) || _given.containsKey(fileName)
+                    || baseHash == null) {
+                continue;
+            }
+            if (currentHash.equals(baseHash)) {
+                _fileInfos.remove(fileName);
+            } else {
+                conflict(fileName, currentHash, null);
+            }
+        }
+    }
+
+    /**
+     * Puts under FILENAME a new blob, not yet saved, holding the versions
+     * CURRENTHASH and GIVENHASH, either of which may be null, between
+     * conflict markers.
+     */
+    private void conflict(String fileName, String currentHash,
+                          String givenHash) {
+        ByteArrayOutputStream contents = new ByteArrayOutputStream();
+        append(contents, "<<<<<<< HEAD\n");
+        appendBlob(contents, currentHash);
+        append(contents, "=======\n");
+        appendBlob(contents, givenHash);
+        append(contents, ">>>>>>>\n");
+
+        Blob blob = new Blob(contents.toByteArray());
+        _blobs.add(blob);
+        _fileInfos.put(fileName, blob.getHash());
+        _conflicted.put(fileName,
+                new String[] { blob.getHash(), currentHash, givenHash });
+    }
+
+    /**
+     * Appends to CONTENTS the conflict marker TEXT.
+     */
+    private static void append(ByteArrayOutputStream contents, String text) {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        contents.write(bytes, 0, bytes.length);
+    }
+
+    /**
+     * Appends to CONTENTS the contents of the blob FILEHASH, if there is
+     * one. Throws a GitletException if the blob is neither stored nor
+     * fetched from a promisor remote.
+     */
+    private static void appendBlob(ByteArrayOutputStream contents,
+                                   String fileHash) {
+        if (fileHash == null) {
+            return;
+        }
+        Blob blob = Blob.load(fileHash);
+        if (blob == null) {
+            throw new GitletException("Could not fetch blob " + fileHash
+                    + ".");
+        }
+        for (ByteBuffer buffer : blob.getBuffers()) {
+            byte[] bytes = new byte[buffer.remaining()];
+            buffer.duplicate().get(bytes);
+            contents.write(bytes, 0, bytes.length);
+        }
+    }
+
+    /** Tree the two sides diverged from. */
+    private final Map<String, String> _base;
+
+    /** Tree of the current side. */
+    private final Map<String, String> _current;
+
+    /** Tree of the given side. */
+    private final Map<String, String> _given;
+
+    /** Merged tree. */
+    private final TreeMap<String, String> _fileInfos;
+
+    /** Conflicted files: name to merged, current and given hashes. */
+    private final TreeMap<String, String[]> _conflicted;
+
+    /** Blobs of the conflicted files, not saved until saveBlobs. */
+    private final List<Blob> _blobs;
+}
@@ -3,6 +3,29 @@ package gitlet;
 import ucb.junit.textui;
 import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
 
 import static org.junit.Assert.*;
 
@@ -29,15 +52,1229 @@ public class UnitTest {
     }
 
 
+    /**
+     * Similar contents should score above the rename threshold, unrelated
+     * contents well below it.
+     */
     @Test
-    public void setup() {
+    public void sketchSimilarityTest() {
+        StringBuilder original = new StringBuilder();
+        StringBuilder edited = new StringBuilder();
+        StringBuilder unrelated = new StringBuilder();
+        for (int i = 0; i < 100; i += 1) {
+            original.append(i).append('\n');
+            edited.append(i == 50 ? "fifty" : i).append('\n');
+            unrelated.append("line ").append(i * 7).append('\n');
+        }
+        long[] a = RenameDetector.sketch(original.toString().getBytes());
+        long[] b = RenameDetector.sketch(edited.toString().getBytes());
+        long[] c = RenameDetector.sketch(unrelated.toString().getBytes());
+        assertEquals(100, RenameDetector.similarity(a, a));
+        assertTrue(RenameDetector.similarity(a, b)
+                >= RenameDetector.SIMILARITY_THRESHOLD);
+        assertTrue(RenameDetector.similarity(a, c)
+                < RenameDetector.SIMILARITY_THRESHOLD);
+    }
+
+    /**
+     * Blob hashes depend on contents only.
+     */
+    @Test
+    public void blobHashIgnoresNameTest() {
+        byte[] contents = "wug".getBytes();
+        assertEquals(new Blob(contents).getHash(),
+                Blob.hashContents(contents.clone()));
+    }
+
+    /**
+     * A file tracked under the id its blob had when hashes covered the file
+     * name as well still matches it, and adding it stores nothing new.
+     */
+    @Test
+    public void legacyBlobIdTest() {
+        Gitlet gitlet = repository();
+        File file = Utils.join(Gitlet.CWD, "legacy.txt");
+        byte[] contents = "legacy wug".getBytes();
+        Utils.writeContents(file, contents);
+        String legacy = Blob.legacyHash("legacy.txt", contents);
+        assertTrue(Blob.matches(legacy, "legacy.txt", contents));
+        assertFalse(Blob.matches(legacy, "other.txt", contents));
+        assertTrue(WorkingTree.scan().matches("legacy.txt", legacy));
+
+        String branchName = Branch.load().getName();
+        File stageFile = Utils.join(Gitlet.STAGE_FOLDER,
+                Branch.fileName(branchName));
+        byte[] savedStage = Utils.readContents(stageFile);
+        try {
+            Stage stage = Stage.load(branchName);
+            Map<String, String> tracked = new HashMap<>(stage.getTracked());
+            tracked.put("legacy.txt", legacy);
+            stage.stageTree(tracked, tracked);
+            stage.save();
+            gitlet.add("add", "legacy.txt");
+            assertTrue(Stage.load(branchName).getAdded().isEmpty());
+            assertFalse(Utils.join(Gitlet.OBJS_FOLDER,
+                    Blob.hashContents(contents)).exists());
+
+            Utils.writeContents(file, "changed");
+            assertFalse(WorkingTree.scan().matches("legacy.txt", legacy));
+        } finally {
+            Utils.writeContents(stageFile, savedStage);
+            file.delete();
+        }
+    }
+
+    /**
+     * Inserting bytes near the start of a large file should leave the later
+     * chunk boundaries where they were, shifted by the insertion.
+     */
+    @Test
+    public void chunkBoundariesResyncTest() {
+        Random random = new Random(61);
+        byte[] original = new byte[512 * 1024];
+        random.nextBytes(original);
+        byte[] edited = new byte[original.length + 5];
+        System.arraycopy(original, 0, edited, 0, 1000);
+        System.arraycopy(original, 1000, edited, 1005,
+                original.length - 1000);
+
+        List<Integer> before = Chunker.boundaries(original);
+        List<Integer> after = Chunker.boundaries(edited);
+        assertEquals(original.length, (int) before.get(before.size() - 1));
+        int shared = 0;
+        for (int end : before) {
+            assertTrue(end > 0);
+            if (after.contains(end + 5)) {
+                shared += 1;
+            }
+        }
+        assertTrue(shared >= before.size() - 2);
+    }
+
+    /**
+     * Updates of mutable repository files are visible to the running command
+     * but reach disk only when the journal commits.
+     */
+    @Test
+    public void journalHoldsRefUpdatesTest() {
+        File head = Utils.join(Gitlet.HEADS_FOLDER, "journal-test");
+        assertTrue(Journal.covers(head));
+        assertFalse(Journal.covers(Utils.join(Gitlet.OBJS_FOLDER, "x")));
+        assertFalse(Journal.covers(new File("f.txt")));
+
+        Journal journal = Journal.begin(Gitlet.GITLET_FOLDER);
+        Utils.writeContents(head, "abc");
+        assertTrue(Utils.exists(head));
+        assertEquals("abc", Utils.readContentsAsString(head));
+        assertFalse(head.exists());
+        Utils.delete(head);
+        assertFalse(Utils.exists(head));
+        journal.abort();
+        assertFalse(head.exists());
+    }
+
+    /**
+     * A committed journal rewrites the objects and files a crash lost, drops
+     * a torn record, and is emptied by a checkpoint.
+     */
+    @Test
+    public void journalReplayTest() throws IOException {
+        File work = Files.createTempDirectory("journal").toFile();
+        File folder = Utils.join(work, ".gitlet");
+        File head = Utils.join(folder, "HEAD");
+        File object = Utils.join(folder, "objects", "ab");
+        object.getParentFile().mkdirs();
+        Journal journal = Journal.begin(folder);
+        Utils.writeContents(object, "blob");
+        Utils.writeContents(head, "one");
+        assertTrue(object.exists());
+        assertFalse(head.exists());
+        journal.commit();
+        assertEquals("one", Utils.readContentsAsString(head));
+        assertFalse(Journal.pending(folder));
+
+        object.delete();
+        Utils.writeContents(head, "lost");
+        Journal.recover(folder);
+        assertEquals("blob", Utils.readContentsAsString(object));
+        assertEquals("one", Utils.readContentsAsString(head));
+
+        File log = Utils.join(folder, Journal.FILE_NAME);
+        long length = log.length();
+        try (FileOutputStream out = new FileOutputStream(log, true)) {
+            out.write(new byte[] {0, 0, 0, 9, 'C', 1});
+        }
+        assertTrue(Journal.pending(folder));
+        Journal.recover(folder);
+        assertEquals(length, log.length());
+        assertFalse(Journal.pending(folder));
+        Journal.checkpoint(folder);
+        assertEquals(0, log.length());
+        deleteTree(work);
+    }
+
+    /**
+     * A reader that begins while a synced commit is not yet applied sees
+     * the contents the commit wrote, where a plain journal sees the disk.
+     */
+    @Test
+    public void journalReaderTest() throws IOException {
+        File work = Files.createTempDirectory("journal").toFile();
+        File folder = Utils.join(work, ".gitlet");
+        folder.mkdir();
+        File head = Utils.join(folder, "HEAD");
+        for (String contents : new String[] { "one", "two" }) {
+            Journal journal = Journal.begin(folder);
+            Utils.writeContents(head, contents);
+            journal.commit();
+        }
+        Utils.replaceContents(head, "one".getBytes(StandardCharsets.UTF_8));
+        try (FileOutputStream out = new FileOutputStream(
+                Utils.join(folder, Journal.FILE_NAME), true)) {
+            out.write(new byte[] {0, 0, 0, 9, 'C', 1});
+        }
+        assertTrue(Journal.pending(folder));
+
+        Journal reader = Journal.beginReading(folder);
+        assertEquals("two", Utils.readContentsAsString(head));
+        reader.abort();
+        Journal plain = Journal.begin(folder);
+        assertEquals("one", Utils.readContentsAsString(head));
+        plain.abort();
+        deleteTree(work);
+    }
+
+    /**
+     * Compressed bitmaps decompress to the bitset they came from, and long
+     * runs take little space.
+     */
+    @Test
+    public void ewahRoundTripTest() {
+        BitSet bits = new BitSet();
+        bits.set(0, 5000);
+        bits.set(7001);
+        bits.set(9000, 9100);
+        bits.set(200000);
+        long[] compressed = Ewah.compress(bits);
+        assertTrue(compressed.length < 20);
+        assertEquals(bits, Ewah.decompress(compressed));
+        assertEquals(new BitSet(), Ewah.decompress(Ewah.compress(
+                new BitSet())));
+    }
+
+    /**
+     * Every packed branch is found by binary search, and names that used to
+     * collide when flattened get distinct files.
+     */
+    @Test
+    public void packedRefsLookupTest() throws IOException {
+        File folder = Files.createTempDirectory("refs").toFile();
+        TreeMap<String, String> refs = new TreeMap<>();
+        for (int i = 0; i < 500; i += 1) {
+            refs.put("r/b" + i, Utils.sha1("head" + i));
+        }
+        PackedRefs.write(folder, refs);
+        for (String name : refs.keySet()) {
+            assertEquals(refs.get(name), PackedRefs.read(folder, name));
+        }
+        assertEquals(null, PackedRefs.read(folder, "r/b"));
+        assertEquals(null, PackedRefs.read(folder, "zzz"));
+        assertEquals(refs, PackedRefs.readAll(folder));
+        Utils.join(folder, PackedRefs.FILE_NAME).delete();
+        folder.delete();
+
+        assertFalse(Branch.fileName("a/b").equals(Branch.fileName("a-b")));
+        assertEquals("x%2Fy", Branch.branchName(Branch.fileName("x%2Fy")));
+    }
+
+    /**
+     * Remote-tracking branches kept under their unescaped names by an
+     * older repository are renamed on first use, so they are found again.
+     */
+    @Test
+    public void escapedRefsMigrationTest() {
+        Gitlet gitlet = repository();
+        String head = Branch.load().getHead();
+        gitlet.addRemote("add-remote", "R9", "../r9/.gitlet");
+        File legacy = Utils.join(Gitlet.HEADS_FOLDER, "R9-master");
+        File other = Utils.join(Gitlet.HEADS_FOLDER, "R8-master");
+        try {
+            Config config = Config.load();
+            config.setEscapedRefs(false);
+            config.save();
+            Utils.writeContents(legacy, head);
+            Utils.writeContents(other, head);
+
+            Branch.migrate();
+            assertFalse(legacy.exists());
+            assertEquals(head, Branch.load("R9/master").getHead());
+            assertTrue(Branch.exists("R8-master"));
+            assertTrue(Config.load().hasEscapedRefs());
+        } finally {
+            Utils.join(Gitlet.HEADS_FOLDER,
+                    Branch.fileName("R9/master")).delete();
+            legacy.delete();
+            other.delete();
+            gitlet.rmRemote("rm-remote", "R9");
+        }
+    }
+
+    /**
+     * Lightweight and annotated tags peel to their commits, an annotated
+     * one without its object being loaded, and are deleted by name.
+     */
+    @Test
+    public void tagTableTest() throws IOException {
+        File folder = Files.createTempDirectory("tags").toFile();
+        File table = Utils.join(folder, "packed-tags");
+        String first = Utils.sha1("first");
+        String second = Utils.sha1("second");
+        Tag.create(table, "v1", first);
+        Tag annotated = new Tag("v2", second, "Second release");
+        Tag.create(table, annotated);
+        assertFalse(Utils.join(Tag.TAGS_FOLDER, annotated.getHash())
+                .exists());
+        assertEquals(first, Tag.peel(table, "v1"));
+        assertEquals(second, Tag.peel(table, "v2"));
+        assertEquals(null, Tag.objectOf(table, "v1"));
+        assertEquals(annotated.getHash(), Tag.objectOf(table, "v2"));
+        assertEquals(null, Tag.peel(table, "v"));
+        assertEquals("[v1, v2]", Tag.peelAll(table).keySet().toString());
+        try {
+            Tag.create(table, "v1", second);
+            fail("A tag was created twice.");
+        } catch (GitletException excp) {
+            assertEquals(first, Tag.peel(table, "v1"));
+        }
+
+        assertTrue(Tag.remove(table, "v1"));
+        assertFalse(Tag.remove(table, "v1"));
+        assertEquals(null, Tag.peel(table, "v1"));
+        assertEquals(second, Tag.peel(table, "v2"));
+        assertTrue(Tag.remove(table, "v2"));
+        assertFalse(table.exists());
+        folder.delete();
+    }
+
+    /**
+     * A tag names its commit in place of a hash, and log --decorate lists
+     * the current branch, then tags, then other branches.
+     */
+    @Test
+    public void tagDecorateTest() {
+        Gitlet gitlet = repository();
+        File file = Utils.join(Gitlet.CWD, "tagged.txt");
+        Utils.writeContents(file, String.valueOf(System.nanoTime()));
+        gitlet.add("add", "tagged.txt");
+        gitlet.commit("commit", "Tagged");
+        String head = Branch.load().getHead();
+        gitlet.tag("tag", "light-tag");
+        gitlet.tag("tag", "-a", "loud-tag", "-m", "Annotated");
+        gitlet.branch("branch", "tagged-side");
+        assertEquals(head, Commit.load("light-tag").getHash());
+        assertEquals(head, Commit.load("loud-tag").getHash());
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        PrintStream stdout = System.out;
+        System.setOut(new PrintStream(output, true));
+        try {
+            gitlet.log("log", "--decorate");
+        } finally {
+            System.setOut(stdout);
+        }
+        String line = output.toString().split("\\R")[1];
+        assertTrue(line.startsWith("commit " + head + " (HEAD -> "
+                + Branch.load().getName() + ", "));
+        assertTrue(line.indexOf("tag: light-tag, tag: loud-tag")
+                < line.indexOf("tagged-side"));
+        assertFalse(line.contains("tag: tagged-side"));
+
+        gitlet.tag("tag", "-d", "light-tag");
+        gitlet.tag("tag", "-d", "loud-tag");
+        gitlet.rmBranch("rm-branch", "tagged-side");
+        assertEquals(null, Commit.load("light-tag"));
+        assertEquals(null, Tag.peel("loud-tag"));
+    }
+
+    /**
+     * A reflog reads back newest first, with a long action cut to what a
+     * record holds, and a torn last record is skipped, then cut off by
+     * the next append.
+     */
+    @Test
+    public void reflogRoundTripTest() throws IOException {
+        File folder = Files.createTempDirectory("reflog").toFile();
+        List<Reflog.Entry> entries = new ArrayList<>();
+        entries.add(new Reflog.Entry(null, Utils.sha1("c0"), 1L, "commit"));
+        for (int i = 1; i < 5; i += 1) {
+            entries.add(new Reflog.Entry(Utils.sha1("c" + (i - 1)),
+                    Utils.sha1("c" + i), i, "commit " + i));
+        }
+        char[] action = new char[0x8000];
+        Arrays.fill(action, '\u00e9');
+        entries.add(new Reflog.Entry(Utils.sha1("c4"), Utils.sha1("c5"), 5L,
+                new String(action)));
+        for (Reflog.Entry entry : entries) {
+            Reflog.append(folder, "master", entry);
+        }
+
+        List<Reflog.Entry> read = Reflog.read(folder, "master", 4);
+        assertEquals(4, read.size());
+        assertEquals(0x7fff, read.get(0).getAction().length());
+        for (int i = 1; i < read.size(); i += 1) {
+            Reflog.Entry entry = entries.get(entries.size() - 1 - i);
+            assertEquals(entry.getOldHash(), read.get(i).getOldHash());
+            assertEquals(entry.getNewHash(), read.get(i).getNewHash());
+            assertEquals(entry.getTime(), read.get(i).getTime());
+            assertEquals(entry.getAction(), read.get(i).getAction());
+        }
+        read = Reflog.read(folder, "master", Integer.MAX_VALUE);
+        assertEquals(entries.size(), read.size());
+        assertEquals(null, read.get(read.size() - 1).getOldHash());
+
+        File log = Utils.join(folder, Reflog.LOGS, "heads",
+                Branch.fileName("master"));
+        long intact = log.length();
+        try (FileOutputStream out = new FileOutputStream(log, true)) {
+            out.write(new byte[] {20, 1, 2, 3, 0, 0, 0, 120});
+        }
+        assertEquals(entries.size(),
+                Reflog.read(folder, "master", Integer.MAX_VALUE).size());
+        Reflog.append(folder, "master", new Reflog.Entry(Utils.sha1("c5"),
+                Utils.sha1("c6"), 6L, "reset"));
+        read = Reflog.read(folder, "master", Integer.MAX_VALUE);
+        assertEquals(entries.size() + 1, read.size());
+        assertEquals("reset", read.get(0).getAction());
+        assertEquals(Utils.sha1("c5"), read.get(1).getNewHash());
+        assertTrue(log.length() > intact);
+
+        log.delete();
+        log.getParentFile().delete();
+        Utils.join(folder, Reflog.LOGS).delete();
+        folder.delete();
+    }
+
+    /**
+     * The hashes give their published results.
+     */
+    @Test
+    public void hashAlgorithmVectorsTest() {
+        assertEquals("a9993e364706816aba3e25717850c26c9cd0d89d",
+                HashAlgorithm.SHA1.hash("abc"));
+        assertEquals(Utils.sha1("a", "bc"), HashAlgorithm.SHA1.hash("a", "bc"));
+        assertEquals("ba7816bf8f01cfea414140de5dae2223"
+                + "b00361a396177a9cb410ff61f20015ad",
+                HashAlgorithm.SHA256.hash("abc"));
+        assertEquals("629942693e10f86792db0b82baeb5347",
+                HashAlgorithm.FAST.hash("hell"));
+        assertEquals("e34bbc7bbc071b6c7a433ca9c49a9347",
+                HashAlgorithm.FAST.hash("The quick brown fox ",
+                        "jumps over the lazy dog"));
+        assertEquals(32, HashAlgorithm.FAST.hash(new byte[0]).length());
+    }
+
+    /**
+     * Fsck accepts a chunk that hashes to its name and reports one that
+     * does not.
+     */
+    @Test
+    public void fsckFindsCorruptChunkTest() throws IOException {
+        File folder = Files.createTempDirectory("fsck").toFile();
+        File chunks = Utils.join(folder, ObjectIndex.CHUNKS);
+        chunks.mkdir();
+        File good = Utils.join(chunks, HashAlgorithm.objects().hash("abc"));
+        File bad = Utils.join(chunks, HashAlgorithm.objects().hash("xyz"));
+        Utils.writeContents(good, "abc");
+        Utils.writeContents(bad, "xy");
+
+        Fsck fsck = new Fsck(folder, false);
+        List<String> problems = fsck.run(false);
+        assertEquals(2, fsck.getChunks());
+        assertEquals(1, problems.size());
+        assertTrue(problems.get(0).contains(bad.getName()));
+
+        good.delete();
+        bad.delete();
+        chunks.delete();
+        Utils.join(folder, ObjectIndex.INDEX_NAME).delete();
+        folder.delete();
+    }
+
+    /**
+     * A stored commit hashes to its name even if its tracked files' table
+     * shrank before it was saved, and a changed message or parent is
+     * caught.
+     */
+    @Test
+    public void commitHashCheckTest() throws IOException,
+            ClassNotFoundException {
+        Stage stage = new Stage("master");
+        HashMap<String, String> tracked = stage.getTracked();
+        for (int i = 0; i < 40; i += 1) {
+            tracked.put("file" + i + ".txt", "hash" + i);
+        }
+        for (int i = 0; i < 33; i += 1) {
+            tracked.remove("file" + i + ".txt");
+        }
+        byte[] stored = Utils.serialize(
+                new Commit("original", stage, "first-parent"));
+        assertTrue(readCommit(stored).hasValidHash(HashAlgorithm.objects()));
+
+        String text = new String(stored, StandardCharsets.ISO_8859_1);
+        byte[] changed = text.replace("original", "0riginal")
+                .getBytes(StandardCharsets.ISO_8859_1);
+        assertFalse(readCommit(changed).hasValidHash(
+                HashAlgorithm.objects()));
+        changed = text.replace("first-parent", "other-parent")
+                .getBytes(StandardCharsets.ISO_8859_1);
+        assertTrue(readCommit(changed).coversParents());
+        assertFalse(readCommit(changed).hasValidHash(
+                HashAlgorithm.objects()));
+    }
+
+    /**
+     * A merge lists its first parent and then each given parent, a two
+     * parent merge keeps the form it has always been stored in, and the
+     * history walk reaches every parent at its fewest links.
+     */
+    @Test
+    public void commitParentsTest() throws IOException,
+            ClassNotFoundException {
+        File folder = Files.createTempDirectory("commits").toFile();
+        Stage stage = new Stage("master");
+        Commit root = new Commit("root", stage, null);
+        Commit first = new Commit("first", stage, root.getHash());
+        Commit second = new Commit("second", stage, root.getHash());
+        Commit third = new Commit("third", stage, root.getHash());
+        Commit next = new Commit("next", stage, first.getHash());
+        stage.setMergedBranchName("second");
+        Commit merge = new Commit(stage, first, Arrays.asList(second));
+        stage.setMergedBranchName("second, third");
+        Commit octopus = new Commit(stage, next,
+                Arrays.asList(merge, third));
+        for (Commit commit : Arrays.asList(root, first, second, third, next,
+                merge, octopus)) {
+            commit.save(folder);
+        }
+
+        assertFalse(first.isMerged());
+        assertEquals(Arrays.asList(root.getHash()), first.getParents());
+        Commit stored = readCommit(Utils.serialize(merge));
+        assertTrue(stored.isMerged());
+        assertEquals(Arrays.asList(first.getHash(), second.getHash()),
+                stored.getParents());
+        assertEquals(Arrays.asList(next.getHash(), merge.getHash(),
+                third.getHash()),
+                readCommit(Utils.serialize(octopus)).getParents());
+
+        Map<String, Integer> history = new HashMap<>();
+        MergeOperations.addToCommitHistory(history, octopus.getHash(), 1,
+                folder);
+        assertEquals(7, history.size());
+        assertEquals(Integer.valueOf(2), history.get(merge.getHash()));
+        assertEquals(Integer.valueOf(2), history.get(third.getHash()));
+        assertEquals(Integer.valueOf(3), history.get(first.getHash()));
+        assertEquals(Integer.valueOf(3), history.get(second.getHash()));
+        assertEquals(Integer.valueOf(3), history.get(root.getHash()));
+
+        for (String hash : Utils.plainFilenamesIn(folder)) {
+            Utils.join(folder, hash).delete();
+        }
+        folder.delete();
+    }
+
+    /**
+     * Merging two branches at once makes one commit with three parents,
+     * holding the files of all of them, from the split point they share.
+     */
+    @Test
+    public void octopusMergeTest() {
+        Gitlet gitlet = repository();
+        String current = Branch.load().getName();
+        Utils.writeContents(Utils.join(Gitlet.CWD, "octopus.txt"),
+                String.valueOf(System.nanoTime()));
+        gitlet.add("add", "octopus.txt");
+        gitlet.commit("commit", "Octopus base");
+        String base = Branch.load().getHead();
+        List<String> heads = new ArrayList<>();
+        heads.add(null);
+        for (String name : Arrays.asList("octopus-one", "octopus-two")) {
+            gitlet.branch("branch", name);
+            gitlet.checkout("checkout", name);
+            Utils.writeContents(Utils.join(Gitlet.CWD, name + ".txt"), name);
+            gitlet.add("add", name + ".txt");
+            gitlet.commit("commit", "Add " + name);
+            heads.add(Branch.load().getHead());
+            gitlet.checkout("checkout", current);
+        }
+        Utils.writeContents(Utils.join(Gitlet.CWD, "octopus.txt"), "current");
+        gitlet.add("add", "octopus.txt");
+        gitlet.commit("commit", "Octopus current");
+        heads.set(0, Branch.load().getHead());
+        List<Commit> lastCommits = new ArrayList<>();
+        for (String head : heads) {
+            lastCommits.add(Commit.load(head));
+        }
+        assertEquals(base,
+                MergeOperations.getSplitPointHeadMerged(lastCommits));
+
+        gitlet.merge("merge", "octopus-one", "octopus-two");
+        Commit merge = Commit.load(Branch.load().getHead());
+        assertEquals(heads, merge.getParents());
+        assertEquals("current", Utils.readContentsAsString(
+                Utils.join(Gitlet.CWD, "octopus.txt")));
+        assertEquals("octopus-one", Utils.readContentsAsString(
+                Utils.join(Gitlet.CWD, "octopus-one.txt")));
+        assertEquals("octopus-two", Utils.readContentsAsString(
+                Utils.join(Gitlet.CWD, "octopus-two.txt")));
+        gitlet.rmBranch("rm-branch", "octopus-one");
+        gitlet.rmBranch("rm-branch", "octopus-two");
+    }
+
+    /**
+     * A rebase stops at the first commit that conflicts, leaving the later
+     * ones to be cherry-picked, and names them.
+     */
+    @Test
+    public void rebaseStopsAtConflictTest() {
+        Gitlet gitlet = repository();
+        String current = Branch.load().getName();
+        File file = Utils.join(Gitlet.CWD, "rebase.txt");
+        Utils.writeContents(file, String.valueOf(System.nanoTime()));
+        gitlet.add("add", "rebase.txt");
+        gitlet.commit("commit", "Rebase base");
+        gitlet.branch("branch", "rebase-upstream");
+        gitlet.checkout("checkout", "rebase-upstream");
+        Utils.writeContents(file, "upstream");
+        gitlet.add("add", "rebase.txt");
+        gitlet.commit("commit", "Rebase upstream");
+        String upstream = Branch.load().getHead();
+        gitlet.checkout("checkout", current);
+        Utils.writeContents(file, "mine");
+        gitlet.add("add", "rebase.txt");
+        gitlet.commit("commit", "Rebase conflict");
+        Utils.writeContents(Utils.join(Gitlet.CWD, "rebase-two.txt"), "two");
+        gitlet.add("add", "rebase-two.txt");
+        gitlet.commit("commit", "Rebase later");
+        String later = Branch.load().getHead();
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        PrintStream stdout = System.out;
+        System.setOut(new PrintStream(output, true));
+        try {
+            gitlet.rebase("rebase", "rebase-upstream");
+        } finally {
+            System.setOut(stdout);
+        }
+        assertTrue(output.toString().contains("Encountered a merge conflict."));
+        assertTrue(output.toString().contains(later));
+        Commit head = Commit.load(Branch.load().getHead());
+        assertEquals("Rebase conflict", head.getMessage());
+        assertEquals(upstream, head.getParent());
+        assertFalse(head.containsFile("rebase-two.txt"));
+        gitlet.rmBranch("rm-branch", "rebase-upstream");
+    }
+
+    /**
+     * A conflicting merge writes its conflicted file with both versions
+     * between markers, while an octopus merge that conflicts and a rebase
+     * stopped by an untracked file write nothing at all.
+     */
+    @Test
+    public void mergeConflictWritesTest() {
+        Gitlet gitlet = repository();
+        String current = Branch.load().getName();
+        File file = Utils.join(Gitlet.CWD, "merged.txt");
+        Utils.writeContents(file, "base\n");
+        gitlet.add("add", "merged.txt");
+        gitlet.commit("commit", "Merge base");
+        for (String name : Arrays.asList("merge-one", "merge-two")) {
+            gitlet.branch("branch", name);
+            gitlet.checkout("checkout", name);
+            Utils.writeContents(file, name + "\n");
+            gitlet.add("add", "merged.txt");
+            gitlet.commit("commit", "Change on " + name);
+            gitlet.checkout("checkout", current);
+        }
+        Utils.writeContents(file, "current\n");
+        gitlet.add("add", "merged.txt");
+        gitlet.commit("commit", "Change on current");
+        String head = Branch.load().getHead();
+
+        List<String> objects = Utils.plainFilenamesIn(Gitlet.OBJS_FOLDER);
+        List<String> commits = Utils.plainFilenamesIn(Gitlet.COMMITS_FOLDER);
+        try {
+            gitlet.merge("merge", "merge-one", "merge-two");
+            fail("A conflicting octopus merge was made.");
+        } catch (GitletException excp) {
+            assertEquals(objects, Utils.plainFilenamesIn(Gitlet.OBJS_FOLDER));
+            assertEquals(commits,
+                    Utils.plainFilenamesIn(Gitlet.COMMITS_FOLDER));
+            assertEquals("current\n", Utils.readContentsAsString(file));
+        }
+
+        File untracked = Utils.join(Gitlet.CWD, "merge-new.txt");
+        gitlet.checkout("checkout", "merge-one");
+        Utils.writeContents(untracked, "new");
+        gitlet.add("add", "merge-new.txt");
+        gitlet.commit("commit", "Add on merge-one");
+        gitlet.checkout("checkout", current);
+        Utils.writeContents(untracked, "untracked");
+        objects = Utils.plainFilenamesIn(Gitlet.OBJS_FOLDER);
+        commits = Utils.plainFilenamesIn(Gitlet.COMMITS_FOLDER);
+        try {
+            gitlet.rebase("rebase", "merge-one");
+            fail("A rebase overwrote an untracked file.");
+        } catch (GitletException excp) {
+            assertEquals(objects, Utils.plainFilenamesIn(Gitlet.OBJS_FOLDER));
+            assertEquals(commits,
+                    Utils.plainFilenamesIn(Gitlet.COMMITS_FOLDER));
+            assertEquals(head, Branch.load().getHead());
+        }
+        untracked.delete();
+
+        PrintStream stdout = System.out;
+        System.setOut(new PrintStream(new ByteArrayOutputStream(), true));
+        try {
+            gitlet.merge("merge", "merge-two");
+        } finally {
+            System.setOut(stdout);
+        }
+        String contents = "<<<<<<< HEAD\ncurrent\n=======\nmerge-two\n"
+                + ">>>>>>>\n";
+        assertEquals(contents, Utils.readContentsAsString(file));
+        Commit merge = Commit.load(Branch.load().getHead());
+        assertEquals(head, merge.getParent());
+        String blob = merge.getFileHash("merged.txt");
+        assertArrayEquals(contents.getBytes(StandardCharsets.UTF_8),
+                Blob.load(blob).getFileContents());
+        gitlet.rmBranch("rm-branch", "merge-one");
+        gitlet.rmBranch("rm-branch", "merge-two");
+    }
+
+    /**
+     * Returns the commit serialized in STORED.
+     */
+    private static Commit readCommit(byte[] stored) throws IOException,
+            ClassNotFoundException {
+        try (ObjectInputStream in =
+                     new ObjectInputStream(new ByteArrayInputStream(stored))) {
+            return (Commit) in.readObject();
+        }
+    }
+
+    /**
+     * Changes from either side carry over, a rename follows the file, and
+     * the same file added on both sides is no conflict.
+     */
+    @Test
+    public void treeMergeTest() {
+        TreeMap<String, String> base = new TreeMap<>();
+        base.put("a", "1");
+        base.put("b", "2");
+        base.put("r", "7");
+        TreeMap<String, String> current = new TreeMap<>(base);
+        current.put("b", "3");
+        current.put("d", "6");
+        TreeMap<String, String> given = new TreeMap<>(base);
+        given.put("a", "4");
+        given.put("c", "5");
+        given.put("d", "6");
+        given.put("q", given.remove("r"));
+
+        TreeMerge merge = new TreeMerge(base, current, given);
+        TreeMap<String, String> expected = new TreeMap<>();
+        expected.put("a", "4");
+        expected.put("b", "3");
+        expected.put("c", "5");
+        expected.put("d", "6");
+        expected.put("q", "7");
+        assertEquals(expected, merge.getFileInfos());
+        assertFalse(merge.isConflicted());
+    }
+
+    /**
+     * Unchanged lines are matched to where they were, and added lines are
+     * not matched.
+     */
+    @Test
+    public void lineDiffMatchTest() {
+        String[] before = { "a", "b", "c", "d", "e", "f" };
+        String[] after = { "a", "x", "c", "d", "y", "e", "f", "b" };
+        assertArrayEquals(new int[] { 0, -1, 2, 3, -1, 4, 5, -1 },
+                LineDiff.match(before, after));
+        assertArrayEquals(new int[] { -1, -1 },
+                LineDiff.match(new String[0], new String[] { "p", "q" }));
+        assertArrayEquals(new int[0],
+                LineDiff.match(before, new String[0]));
+    }
+
+    /**
+     * Every pattern is counted, overlapping ones and ones split across
+     * buffers included.
+     */
+    @Test
+    public void pickaxeCountTest() {
+        Pickaxe pickaxe = new Pickaxe(Arrays.asList("he", "she", "his",
+                "hers"));
+        byte[] text = "ushers and hishe".getBytes();
+        assertArrayEquals(new long[] { 2, 2, 1, 1 },
+                pickaxe.count(ByteBuffer.wrap(text)));
+        assertArrayEquals(new long[] { 2, 2, 1, 1 }, pickaxe.count(
+                ByteBuffer.wrap(text, 0, 3).slice(),
+                ByteBuffer.wrap(text, 3, text.length - 3).slice()));
+    }
+
+    /**
+     * A pack carries objects to another repository, commits last, and an
+     * object outside the object folders, of a bad length or not hashing to
+     * its name is refused.
+     */
+    @Test
+    public void packRoundTripTest() throws IOException {
+        File from = Files.createTempDirectory("pack").toFile();
+        File to = Files.createTempDirectory("pack").toFile();
+        Utils.join(from, ObjectIndex.COMMITS).mkdir();
+        Utils.join(from, ObjectIndex.CHUNKS).mkdir();
+        Commit commit = new Commit("packed", new Stage("master"), null);
+        String commitPath = "commits/" + commit.getHash();
+        Utils.writeObject(Utils.join(from, commitPath), commit);
+        String chunkPath = "chunks/" + HashAlgorithm.of(to).hash("chunk");
+        Utils.writeContents(Utils.join(from, chunkPath), "chunk");
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        Pack.write(from, Arrays.asList(commitPath, chunkPath),
+                new DataOutputStream(bytes));
+        List<String> paths = Pack.read(new DataInputStream(
+                new ByteArrayInputStream(bytes.toByteArray())), to);
+        assertEquals(Arrays.asList(chunkPath, commitPath), paths);
+        assertEquals("chunk", Utils.readContentsAsString(
+                Utils.join(to, chunkPath)));
+        assertEquals(commit.getHash(), Utils.readObject(
+                Utils.join(to, commitPath), Commit.class).getHash());
+
+        String forged = "chunks/" + HashAlgorithm.of(to).hash("other");
+        for (Object[] object : new Object[][] {
+            {"../c1", 0}, {forged, 5}, {forged, -1}}) {
+            bytes.reset();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeUTF((String) object[0]);
+            out.writeInt((Integer) object[1]);
+            out.writeBytes("chunk");
+            out.writeUTF("");
+            try {
+                Pack.read(new DataInputStream(
+                        new ByteArrayInputStream(bytes.toByteArray())), to);
+                fail("bad object accepted");
+            } catch (GitletException excp) {
+                assertFalse(Utils.join(to, (String) object[0]).exists());
+            }
+        }
+        deleteTree(from);
+        deleteTree(to);
+    }
+
+    /**
+     * A stash entry holds the working changes apart from the history,
+     * listed newest first, and popping it brings them back.
+     */
+    @Test
+    public void stashPushPopListTest() {
+        Gitlet gitlet = repository();
+        File file = Utils.join(Gitlet.CWD, "stashed.txt");
+        Utils.writeContents(file, "one");
+        gitlet.add("add", "stashed.txt");
+        gitlet.commit("commit", "Stash base");
+
+        Utils.writeContents(file, "two");
+        gitlet.stash("stash");
+        assertEquals("one", Utils.readContentsAsString(file));
+        Utils.writeContents(file, "three");
+        gitlet.stash("stash", "push");
+        List<String> entries = Stash.load().getEntries();
+        assertEquals(2, entries.size());
+        for (String entry : entries) {
+            assertFalse(Utils.join(Gitlet.COMMITS_FOLDER, entry).exists());
+            assertTrue(Commit.getCommitHashes(
+                    Commit.load(entry).getMessage()).isEmpty());
+        }
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        PrintStream stdout = System.out;
+        System.setOut(new PrintStream(output, true));
+        try {
+            gitlet.stash("stash", "list");
+        } finally {
+            System.setOut(stdout);
+        }
+        String[] lines = output.toString().split("\\R");
+        assertEquals(2, lines.length);
+        assertTrue(lines[0].startsWith("stash@{0}: WIP on "));
+
+        gitlet.stash("stash", "pop");
+        assertEquals("three", Utils.readContentsAsString(file));
+        assertEquals(entries.subList(1, 2), Stash.load().getEntries());
+        Utils.writeContents(file, "one");
+        gitlet.stash("stash", "pop");
+        assertEquals("two", Utils.readContentsAsString(file));
+        assertTrue(Stash.load().getEntries().isEmpty());
+        Utils.writeContents(file, "one");
+    }
+
+    /**
+     * A running watcher reports the files changed since the last look, its
+     * cookies stay out of the working directory, and reading its log
+     * empties it.
+     */
+    @Test
+    public void fileMonitorTest() throws InterruptedException {
+        repository();
+        Thread watcher = new Thread(FileMonitor::watch);
+        watcher.start();
+        File file = Utils.join(Gitlet.CWD, "watched.txt");
+        try {
+            for (int i = 0; i < 500 && !FileMonitor.isRunning(); i += 1) {
+                Thread.sleep(10);
+            }
+            assertTrue(FileMonitor.isRunning());
+            FileMonitor.Changes first = FileMonitor.changesSince(null, 0);
+            assertTrue(first.isEverything());
+
+            Utils.writeContents(file, "watched");
+            FileMonitor.Changes changes = FileMonitor.changesSince(
+                    first.getSession(), first.getOffset());
+            assertFalse(changes.isEverything());
+            assertTrue(changes.getFileNames().contains("watched.txt"));
+            assertFalse(changes.getSession().equals(first.getSession()));
+            assertEquals(FileMonitor.LOG_FILE.length(), changes.getOffset());
+            for (String name : Utils.plainFilenamesIn(Gitlet.CWD)) {
+                assertFalse(name.contains("cookie"));
+            }
+        } finally {
+            watcher.interrupt();
+            watcher.join();
+            file.delete();
+            FileMonitor.LOG_FILE.delete();
+        }
+    }
+
+    /**
+     * Gc keeps what a branch reaches, down to the chunks of a large file,
+     * removes with --prune a blob that nothing reaches, and leaves branch
+     * heads unpacked.
+     */
+    @Test
+    public void gcPruneTest() {
+        Gitlet gitlet = repository();
+        File file = Utils.join(Gitlet.CWD, "gc.txt");
+        byte[] large = new byte[2 * Chunker.CHUNKING_THRESHOLD];
+        new Random(System.nanoTime()).nextBytes(large);
+        Utils.writeContents(file, large);
+        gitlet.add("add", "gc.txt");
+        gitlet.commit("commit", "Gc large");
+        String kept = Blob.hashContents(large);
+        String[] chunks = Blob.load(kept).getChunks();
+        assertTrue(chunks.length > 1);
+        Utils.writeContents(file, "dropped " + System.nanoTime());
+        gitlet.add("add", "gc.txt");
+        String dropped = Blob.hashContents(Utils.readContents(file));
+        Utils.writeContents(file, large);
+        gitlet.add("add", "gc.txt");
+        assertTrue(Utils.join(Gitlet.OBJS_FOLDER, dropped).exists());
+
+        PrintStream stdout = System.out;
+        System.setOut(new PrintStream(new ByteArrayOutputStream(), true));
+        try {
+            gitlet.gc("gc", "--prune");
+        } finally {
+            System.setOut(stdout);
+        }
+        assertFalse(Utils.join(Gitlet.OBJS_FOLDER, dropped).exists());
+        assertTrue(Utils.join(Gitlet.OBJS_FOLDER, kept).exists());
+        for (String chunk : chunks) {
+            assertTrue(Utils.join(Blob.chunksFolder(Gitlet.OBJS_FOLDER),
+                    chunk).exists());
+        }
+        assertTrue(Utils.join(Gitlet.HEADS_FOLDER,
+                Branch.fileName(Branch.load().getName())).exists());
+        assertArrayEquals(large, Blob.load(kept).getFileContents());
+    }
+
+    /**
+     * A reset to a commit whose blob is neither stored nor promised fails
+     * before it changes the working directory.
+     */
+    @Test
+    public void missingBlobCheckoutTest() {
+        Gitlet gitlet = repository();
+        File file = Utils.join(Gitlet.CWD, "promised.txt");
+        Utils.writeContents(file, "old " + System.nanoTime());
+        gitlet.add("add", "promised.txt");
+        gitlet.commit("commit", "Promised old");
+        String old = Branch.load().getHead();
+        String oldBlob = Commit.load(old).getFileHash("promised.txt");
+        Utils.writeContents(file, "new " + System.nanoTime());
+        gitlet.add("add", "promised.txt");
+        gitlet.commit("commit", "Promised new");
+        byte[] current = Utils.readContents(file);
+
+        File stored = Utils.join(Gitlet.OBJS_FOLDER, oldBlob);
+        byte[] blob = Utils.readContents(stored);
+        stored.delete();
+        try {
+            gitlet.reset("reset", old);
+            fail("A missing blob was checked out.");
+        } catch (GitletException excp) {
+            assertEquals("Could not fetch blob " + oldBlob + ".",
+                    excp.getMessage());
+        }
+        try {
+            gitlet.checkout("checkout", old, "--", "promised.txt");
+            fail("A missing blob was checked out.");
+        } catch (GitletException excp) {
+            assertArrayEquals(current, Utils.readContents(file));
+        } finally {
+            Utils.writeContents(stored, blob);
+        }
+        assertArrayEquals(current, Utils.readContents(file));
+        assertFalse(Branch.load().getHead().equals(old));
+    }
+
+    /**
+     * A partial clone fetches a blob it lacks from its promisor remote when
+     * a reset needs it.
+     */
+    @Test
+    public void promisorFetchTest() throws IOException {
+        Gitlet gitlet = repository();
+        File file = Utils.join(Gitlet.CWD, "fetched.txt");
+        Utils.writeContents(file, "old " + System.nanoTime());
+        gitlet.add("add", "fetched.txt");
+        gitlet.commit("commit", "Fetched old");
+        String old = Branch.load().getHead();
+        byte[] oldContents = Utils.readContents(file);
+        String oldBlob = Commit.load(old).getFileHash("fetched.txt");
+        Utils.writeContents(file, "new " + System.nanoTime());
+        gitlet.add("add", "fetched.txt");
+        gitlet.commit("commit", "Fetched new");
+
+        File server = Files.createTempDirectory("promisor").toFile();
+        File serverObjects = Utils.join(server, ".gitlet", "objects");
+        serverObjects.mkdirs();
+        File stored = Utils.join(Gitlet.OBJS_FOLDER, oldBlob);
+        Files.copy(stored.toPath(), Utils.join(serverObjects, oldBlob)
+                .toPath());
+        try {
+            gitlet.addRemote("add-remote", "origin",
+                    Utils.join(server, ".gitlet").getPath());
+            Config config = Config.load();
+            config.getRemotes().get("origin").setPromisor();
+            config.save();
+            stored.delete();
+
+            gitlet.reset("reset", old);
+            assertTrue(stored.exists());
+            assertArrayEquals(oldContents, Utils.readContents(file));
+        } finally {
+            deleteTree(server);
+        }
+    }
+
+    /**
+     * Status lists unstaged deletions before modifications and staged
+     * renames by name alone, while --porcelain shows the rename's source.
+     */
+    @Test
+    public void statusLayoutTest() {
+        Gitlet gitlet = repository();
+        String renamed = "renamed " + System.nanoTime() + "\n";
+        for (String name : Arrays.asList("status-a.txt", "status-b.txt",
+                "status-old.txt")) {
+            Utils.writeContents(Utils.join(Gitlet.CWD, name),
+                    name.equals("status-old.txt") ? renamed : name);
+            gitlet.add("add", name);
+        }
+        gitlet.commit("commit", "Status files");
+        Utils.writeContents(Utils.join(Gitlet.CWD, "status-a.txt"), "a2");
+        Utils.join(Gitlet.CWD, "status-b.txt").delete();
+        gitlet.rm("rm", "status-old.txt");
+        Utils.writeContents(Utils.join(Gitlet.CWD, "status-new.txt"),
+                renamed);
+        gitlet.add("add", "status-new.txt");
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        ByteArrayOutputStream porcelain = new ByteArrayOutputStream();
+        PrintStream stdout = System.out;
+        try {
+            System.setOut(new PrintStream(output, true));
+            gitlet.status("status");
+            System.setOut(new PrintStream(porcelain, true));
+            gitlet.status("status", "--porcelain");
+        } finally {
+            System.setOut(stdout);
+        }
+        String status = output.toString().replace(System.lineSeparator(),
+                "\n");
+        assertTrue(status.contains("=== Staged Files ===\n"
+                + "status-new.txt\n\n"
+                + "=== Removed Files ===\n"
+                + "status-old.txt\n\n"
+                + "=== Modifications Not Staged For Commit ===\n"
+                + "status-b.txt (deleted)\n"
+                + "status-a.txt (modified)\n\n"
+                + "=== Untracked Files ===\n"));
+        String lines = porcelain.toString().replace(System.lineSeparator(),
+                "\n");
+        assertTrue(lines.contains(" M status-a.txt\n"));
+        assertTrue(lines.contains(" D status-b.txt\n"));
+        assertTrue(lines.contains("R  status-old.txt -> status-new.txt\n"));
+    }
+
+    /**
+     * Files the sparse-checkout patterns exclude leave the working
+     * directory, are not reported missing, and come back when the patterns
+     * are disabled.
+     */
+    @Test
+    public void sparseCheckoutTest() {
+        Gitlet gitlet = repository();
+        File included = Utils.join(Gitlet.CWD, "sparse-in.txt");
+        File excluded = Utils.join(Gitlet.CWD, "sparse-out.txt");
+        Utils.writeContents(included, "in");
+        Utils.writeContents(excluded, "out");
+        gitlet.add("add", "sparse-in.txt");
+        gitlet.add("add", "sparse-out.txt");
+        gitlet.commit("commit", "Sparse files");
+
+        gitlet.sparseCheckout("sparse-checkout", "set", "sparse-in*");
+        assertTrue(included.exists());
+        assertFalse(excluded.exists());
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        PrintStream stdout = System.out;
+        System.setOut(new PrintStream(output, true));
+        try {
+            gitlet.status("status", "--porcelain");
+        } finally {
+            System.setOut(stdout);
+        }
+        assertEquals("", output.toString());
+
+        gitlet.sparseCheckout("sparse-checkout", "disable");
+        assertEquals("out", Utils.readContentsAsString(excluded));
+        assertEquals("in", Utils.readContentsAsString(included));
+    }
+
+    /**
+     * The contents of a chunked blob are read as read-only buffers mapped
+     * from its chunks, and checked out byte for byte.
+     */
+    @Test
+    public void mappedBlobReadTest() {
+        Gitlet gitlet = repository();
+        File file = Utils.join(Gitlet.CWD, "mapped.txt");
+        byte[] large = new byte[3 * Chunker.CHUNKING_THRESHOLD];
+        new Random(System.nanoTime()).nextBytes(large);
+        Utils.writeContents(file, large);
+        gitlet.add("add", "mapped.txt");
+        Blob blob = Blob.load(Blob.hashContents(large));
+
+        ByteBuffer[] buffers = blob.getBuffers();
+        assertEquals(blob.getChunks().length, buffers.length);
+        ByteArrayOutputStream contents = new ByteArrayOutputStream();
+        for (ByteBuffer buffer : buffers) {
+            assertTrue(buffer.isReadOnly());
+            assertTrue(buffer.isDirect());
+            byte[] bytes = new byte[buffer.remaining()];
+            buffer.get(bytes);
+            contents.write(bytes, 0, bytes.length);
+        }
+        assertArrayEquals(large, contents.toByteArray());
+
+        file.delete();
+        blob.writeTo(file);
+        assertArrayEquals(large, Utils.readContents(file));
+    }
+
+    /**
+     * A traced command reports the calls and bytes of its phases, as JSON
+     * when asked, and tracing stops with the report.
+     */
+    @Test
+    public void traceReportTest() {
+        Gitlet gitlet = repository();
+        Utils.writeContents(Utils.join(Gitlet.CWD, "traced.txt"),
+                "traced " + System.nanoTime());
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        Trace.enable("add", true);
+        try {
+            gitlet.add("add", "traced.txt");
+        } finally {
+            Trace.report(new PrintStream(output, true));
+        }
+        String json = output.toString().trim();
+        assertTrue(json.startsWith("{\"command\":\"add\",\"nanos\":"));
+        assertTrue(json.contains("\"hash\":{\"calls\":"));
+        assertTrue(json.contains("\"writeObject\":{\"calls\":"));
+        assertEquals(0, Trace.start());
+
+        output.reset();
+        PrintStream stdout = System.out;
+        System.setOut(new PrintStream(new ByteArrayOutputStream(), true));
+        Trace.enable("status", false);
+        try {
+            gitlet.status("status", "--porcelain");
+        } finally {
+            System.setOut(stdout);
+            Trace.report(new PrintStream(output, true));
+        }
+        String table = output.toString();
+        assertTrue(table.startsWith("phase"));
+        assertTrue(table.contains("listFiles"));
+        assertTrue(table.contains("other"));
+    }
+
+    /**
+     * Deletes FILE and, if it is a folder, everything in it.
+     */
+    private static void deleteTree(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteTree(child);
+            }
+        }
+        file.delete();
+    }
+
+    /**
+     * Returns the commands of a new repository in the current directory,
+     * which replaces the one an earlier test left there, along with the
+     * files that one tracked or staged, so that the tests do not depend on
+     * the order they run in.
+     */
+    private static Gitlet repository() {
+        if (Gitlet.GITLET_FOLDER.exists()) {
+            Stage stage = Stage.load(Branch.load().getName());
+            Set<String> fileNames = new TreeSet<>(stage.getTracked().keySet());
+            fileNames.addAll(stage.getFileInfos().keySet());
+            for (String fileName : fileNames) {
+                Utils.restrictedDelete(fileName);
+            }
+            deleteTree(Gitlet.GITLET_FOLDER);
+        }
         Gitlet gitlet = new Gitlet();
         gitlet.init();
+        return gitlet;
+    }
+
+    @Test
+    public void setup() {
+        Gitlet gitlet = repository();
         Utils.writeContents(Utils.join(Gitlet.CWD, "f.txt"), "wug.txt");
         Utils.writeContents(Utils.join(Gitlet.CWD, "g.txt"), "notwug.txt");
-        gitlet.add("g.txt");
-        gitlet.add("f.txt");
-        gitlet.commit("Two files");
+        gitlet.add("add", "g.txt");
+        gitlet.add("add", "f.txt");
+        gitlet.commit("commit", "Two files");
     }
 
 }
@@ -1,16 +1,21 @@
 package gitlet;
 
-import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FilenameFilter;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
@@ -28,23 +33,24 @@ class Utils {
 
     /* SHA-1 HASH VALUES. */
 
-    /**
-     * The length of a complete SHA-1 UID as a hexadecimal numeral.
-     */
-    static final int UID_LENGTH = 40;
-
     /**
      * Returns the SHA-1 hash of the concatenation of VALS, which may
      * be any mixture of byte arrays and Strings.
      */
     static String sha1(Object... vals) {
         try {
+            long start = Trace.start();
+            long length = 0;
             MessageDigest md = MessageDigest.getInstance("SHA-1");
             for (Object val : vals) {
                 if (val instanceof byte[]) {
                     md.update((byte[]) val);
+                    length += ((byte[]) val).length;
                 } else if (val instanceof String) {
-                    md.update(((String) val).getBytes(StandardCharsets.UTF_8));
+                    byte[] bytes = ((String) val)
+                            .getBytes(StandardCharsets.UTF_8);
+                    md.update(bytes);
+                    length += bytes.length;
                 } else {
                     throw new IllegalArgumentException("improper type to sha1");
                 }
@@ -53,6 +59,7 @@ class Utils {
             for (byte b : md.digest()) {
                 result.format("%02x", b);
             }
+            Trace.end(Trace.HASH, start, length);
             return result.toString();
         } catch (NoSuchAlgorithmException excp) {
             throw new IllegalArgumentException("System does not support SHA-1");
@@ -104,6 +111,14 @@ class Utils {
      * in case of problems.
      */
     static byte[] readContents(File file) {
+        Journal journal = Journal.of(file);
+        if (journal != null && journal.holds(file)) {
+            byte[] contents = journal.read(file);
+            if (contents == null) {
+                throw new IllegalArgumentException("must be a normal file");
+            }
+            return contents;
+        }
         if (!file.isFile()) {
             throw new IllegalArgumentException("must be a normal file");
         }
@@ -126,8 +141,10 @@ class Utils {
     /**
      * Write the result of concatenating the bytes in CONTENTS to FILE,
      * creating or overwriting it as needed.  Each object in CONTENTS may be
-     * either a String or a byte array.  Throws IllegalArgumentException
-     * in case of problems.
+     * either a String or a byte array.  The file is replaced atomically, and
+     * mutable repository files are held in the open journal, if any, until
+     * the command commits.  Throws IllegalArgumentException in case of
+     * problems.
      */
     static void writeContents(File file, Object... contents) {
         try {
@@ -135,8 +152,7 @@ class Utils {
                 throw new IllegalArgumentException(
                         "cannot overwrite directory");
             }
-            BufferedOutputStream str =
-                new BufferedOutputStream(Files.newOutputStream(file.toPath()));
+            ByteArrayOutputStream str = new ByteArrayOutputStream();
             for (Object obj : contents) {
                 if (obj instanceof byte[]) {
                     str.write((byte[]) obj);
@@ -144,35 +160,164 @@ class Utils {
                     str.write(((String) obj).getBytes(StandardCharsets.UTF_8));
                 }
             }
-            str.close();
+            Journal journal = Journal.of(file);
+            if (journal != null && Journal.covers(file)) {
+                journal.write(file, str.toByteArray());
+            } else {
+                replaceContents(file, str.toByteArray());
+                if (journal != null) {
+                    journal.created(file, str.toByteArray());
+                }
+            }
         } catch (IOException | ClassCastException excp) {
             throw new IllegalArgumentException(excp.getMessage());
         }
     }
 
     /**
-     * Return an object of type T read from FILE, casting it to EXPECTEDCLASS.
+     * Replace the contents of FILE with BYTES by writing a temporary file
+     * beside it and renaming it over FILE, so that readers see either the
+     * old or the new contents and never a partial write.  Nothing is
+     * synced: repository files are made durable through the journal (see
+     * Journal), and any other file by sync.
      * Throws IllegalArgumentException in case of problems.
      */
-    static <T extends Serializable> T readObject(File file,
-                                                 Class<T> expectedClass) {
+    static void replaceContents(File file, byte[] bytes) {
+        replaceContents(file, ByteBuffer.wrap(bytes));
+    }
+
+    /**
+     * Replace the contents of FILE with the remaining bytes of BUFFERS, as
+     * replaceContents(File, byte[]) does.  The buffers are handed to the
+     * channel as they are, so mapped buffers are never copied onto the
+     * heap.
+     */
+    static void replaceContents(File file, ByteBuffer... buffers) {
+        replaceContents(file, channel -> {
+            long remaining = 0;
+            for (ByteBuffer buffer : buffers) {
+                remaining += buffer.remaining();
+            }
+            while (remaining > 0) {
+                remaining -= channel.write(buffers);
+            }
+        });
+    }
+
+    /** Writer of the new contents of a file to a channel. */
+    interface ChannelWriter {
+        /** Writes the contents to CHANNEL. */
+        void writeTo(FileChannel channel) throws IOException;
+    }
+
+    /**
+     * Replace the contents of FILE with what WRITER writes, as
+     * replaceContents(File, byte[]) does.
+     */
+    static void replaceContents(File file, ChannelWriter writer) {
+        Path target = file.toPath().toAbsolutePath();
+        Path temp = target.resolveSibling("." + file.getName() + "."
+                + ProcessHandle.current().pid() + "."
+                + _tempCount++ + ".tmp");
         try {
-            ObjectInputStream in =
-                    new ObjectInputStream(new FileInputStream(file));
-            T result = expectedClass.cast(in.readObject());
-            in.close();
-            return result;
-        } catch (IOException | ClassCastException
-                | ClassNotFoundException excp) {
+            try (FileChannel channel = FileChannel.open(temp,
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                writer.writeTo(channel);
+            }
+            try {
+                Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE,
+                        StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException excp) {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException excp) {
+            temp.toFile().delete();
             throw new IllegalArgumentException(excp.getMessage());
         }
     }
 
+    /**
+     * Makes the contents of FILE, or the entries of FILE if it is a folder,
+     * durable.  Does nothing on systems that cannot sync a folder.
+     */
+    static void sync(File file) {
+        try (FileChannel channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException excp) {
+            /* Folders cannot be opened or synced here. */
+        }
+    }
+
+    /**
+     * Returns the contents of FILE as a read-only buffer mapped from the
+     * file, without reading them onto the heap.  FILE is not looked up in
+     * the journal, so it must be an immutable object or chunk, or a file
+     * only ever replaced whole, whose mapping is a snapshot.  Throws
+     * IllegalArgumentException in case of problems.
+     */
+    static ByteBuffer mapContents(File file) {
+        try (FileChannel channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                    channel.size());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /**
+     * Returns true if FILE exists, taking updates held in the open journal
+     * into account.
+     */
+    static boolean exists(File file) {
+        Journal journal = Journal.of(file);
+        if (journal != null && journal.holds(file)) {
+            return journal.read(file) != null;
+        }
+        return file.exists();
+    }
+
+    /**
+     * Deletes FILE, holding the deletion in the open journal if FILE is a
+     * mutable repository file.  Returns true if FILE existed.
+     */
+    static boolean delete(File file) {
+        boolean existed = exists(file);
+        Journal journal = Journal.of(file);
+        if (journal != null && Journal.covers(file)) {
+            journal.delete(file);
+        } else {
+            file.delete();
+        }
+        return existed;
+    }
+
+    /** Number of temporary files created so far by this process. */
+    private static int _tempCount;
+
+    /**
+     * Return an object of type T read from FILE, casting it to EXPECTEDCLASS.
+     * Throws IllegalArgumentException in case of problems.
+     */
+    static <T extends Serializable> T readObject(File file,
+                                                 Class<T> expectedClass) {
+        long start = Trace.start();
+        byte[] contents = readContents(file);
+        T result = deserialize(contents, expectedClass);
+        Trace.end(Trace.READ_OBJECT, start, contents.length);
+        return result;
+    }
+
     /**
      * Write OBJ to FILE.
      */
     static void writeObject(File file, Serializable obj) {
-        writeContents(file, serialize(obj));
+        long start = Trace.start();
+        byte[] contents = serialize(obj);
+        writeContents(file, contents);
+        Trace.end(Trace.WRITE_OBJECT, start, contents.length);
     }
 
     /* DIRECTORIES */
@@ -194,11 +339,13 @@ class Utils {
      * not denote a directory.
      */
     static List<String> plainFilenamesIn(File dir) {
+        long start = Trace.start();
         String[] files = dir.list(PLAIN_FILES);
         if (files == null) {
             return null;
         } else {
             Arrays.sort(files);
+            Trace.end(Trace.LIST_FILES, start, 0);
             return Arrays.asList(files);
         }
     }
@@ -250,6 +397,21 @@ class Utils {
         }
     }
 
+    /**
+     * Returns the object of type T serialized in BYTES, casting it to
+     * EXPECTEDCLASS.  Throws IllegalArgumentException in case of problems.
+     */
+    static <T extends Serializable> T deserialize(byte[] bytes,
+                                                  Class<T> expectedClass) {
+        try (ObjectInputStream in = new ObjectInputStream(
+                new ByteArrayInputStream(bytes))) {
+            return expectedClass.cast(in.readObject());
+        } catch (IOException | ClassCastException
+                | ClassNotFoundException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
 
 
     /* MESSAGES AND ERROR REPORTING */
@@ -0,0 +1,200 @@
+package gitlet;
+
+import java.io.File;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/** The files of the working directory, as seen by status. Files excluded
+ *  by the sparse-checkout patterns are left out.
+ *  Without a watcher, the directory is listed once and files are hashed
+ *  when first asked about. With a watcher running (see FileMonitor), the
+ *  names and hashes from the last status are kept in .gitlet and only the
+ *  files the watcher reported since then are looked at again.
+ *  @author Erin Lee
+ */
+class WorkingTree {
+
+    /** Names and hashes of working files saved by the last status. */
+    static final File CACHE_FILE =
+            new File(Gitlet.GITLET_FOLDER, "fsmonitor-cache");
+
+    /** What is saved in CACHE_FILE. */
+    private static class Cache implements Serializable {
+        /** Version of the serialized form. */
+        private static final long serialVersionUID = 1L;
+        /** Watcher session the cache is valid for. */
+        private String _session;
+        /** Position in the watcher's log the cache is up to date with. */
+        private long _offset;
+        /** Hash of every working file, keyed by name. */
+        private TreeMap<String, String> _hashes;
+    }
+
+    /**
+     * A working tree listing FILENAMES, whose hashes are computed on demand.
+     */
+    private WorkingTree(List<String> fileNames) {
+        _fileNames = fileNames;
+        _present = new HashSet<>(fileNames);
+        _hashes = new HashMap<>();
+    }
+
+    /**
+     * Returns the working tree, using the watcher's log if a watcher runs.
+     * Reading the log truncates it, so unless the tree is saved, the next
+     * status looks at every file again.
+     */
+    static WorkingTree load() {
+        if (!FileMonitor.isRunning()) {
+            return scan();
+        }
+        SparseCheckout sparse = SparseCheckout.load();
+        Cache cache = null;
+        if (CACHE_FILE.exists()) {
+            try {
+                cache = Utils.readObject(CACHE_FILE, Cache.class);
+            } catch (IllegalArgumentException excp) {
+                cache = null;
+            }
+        }
+        FileMonitor.Changes changes = FileMonitor.changesSince(
+                cache == null ? null : cache._session,
+                cache == null ? 0 : cache._offset);
+        if (changes.getSession() == null) {
+            return scan();
+        }
+
+        TreeMap<String, String> hashes;
+        if (cache == null || changes.isEverything()) {
+            hashes = new TreeMap<>();
+            for (String fileName : sparse.filter(
+                    Utils.plainFilenamesIn(Gitlet.CWD))) {
+                String hash = hashFile(fileName);
+                if (hash != null) {
+                    hashes.put(fileName, hash);
+                }
+            }
+        } else {
+            hashes = cache._hashes;
+            for (String fileName : changes.getFileNames()) {
+                String hash = sparse.includes(fileName) ? hashFile(fileName)
+                        : null;
+                if (hash == null) {
+                    hashes.remove(fileName);
+                } else {
+                    hashes.put(fileName, hash);
+                }
+            }
+        }
+
+        Cache updated = new Cache();
+        updated._session = changes.getSession();
+        updated._offset = changes.getOffset();
+        updated._hashes = hashes;
+        WorkingTree tree = new WorkingTree(new ArrayList<>(hashes.keySet()));
+        tree._hashes.putAll(hashes);
+        tree._cache = updated;
+        return tree;
+    }
+
+    /**
+     * Returns the working tree as found by listing the directory.
+     */
+    static WorkingTree scan() {
+        return new WorkingTree(SparseCheckout.load().filter(
+                Utils.plainFilenamesIn(Gitlet.CWD)));
+    }
+
+    /**
+     * Saves what was learned about the working tree for the next status, if
+     * a watcher is running. Status runs without the repository lock, so the
+     * cache is replaced on its own, atomically, rather than through the
+     * journal, which belongs to whichever command holds the lock. If two
+     * statuses race, the cache saved last wins; if that is the older one,
+     * it names an old generation of the watcher's session, and the next
+     * status only looks at every file again.
+     */
+    void save() {
+        if (_cache != null) {
+            Utils.replaceContents(CACHE_FILE, Utils.serialize(_cache));
+        }
+    }
+
+    /**
+     * Returns the names of the working files in lexicographic order.
+     */
+    List<String> getFileNames() {
+        return _fileNames;
+    }
+
+    /**
+     * Returns true if the working file FILENAME exists.
+     */
+    boolean contains(String fileName) {
+        return _present.contains(fileName);
+    }
+
+    /**
+     * Returns the blob hash of the working file FILENAME, or null if there
+     * is no such file.
+     */
+    String getHash(String fileName) {
+        String hash = _hashes.get(fileName);
+        if (hash == null && _cache == null && contains(fileName)) {
+            hash = hashFile(fileName);
+            if (hash != null) {
+                _hashes.put(fileName, hash);
+            }
+        }
+        return hash;
+    }
+
+    /**
+     * Returns true if the working file FILENAME holds the blob HASH, which
+     * may be a legacy id (see Blob). Files whose hash differs are read again
+     * to compare their legacy hash, which costs a read for each changed
+     * file, and for each file still tracked under a legacy id.
+     */
+    boolean matches(String fileName, String hash) {
+        String current = getHash(fileName);
+        if (current == null) {
+            return false;
+        }
+        if (current.equals(hash)) {
+            return true;
+        }
+        File file = new File(Gitlet.CWD, fileName);
+        return file.isFile() && hash.equals(
+                Blob.legacyHash(fileName, Utils.readContents(file)));
+    }
+
+    /**
+     * Returns the blob hash of the working file FILENAME, or null if there
+     * is no such file.
+     */
+    private static String hashFile(String fileName) {
+        File file = new File(Gitlet.CWD, fileName);
+        if (!file.isFile()) {
+            return null;
+        }
+        return Blob.hashContents(Utils.readContents(file));
+    }
+
+    /** Names of the working files, sorted. */
+    private List<String> _fileNames;
+
+    /** Names of the working files, for lookup. */
+    private Set<String> _present;
+
+    /** Hashes of working files known so far, keyed by name. */
+    private Map<String, String> _hashes;
+
+    /** Cache to save for the next status, or null without a watcher. */
+    private Cache _cache;
+}